@@ -0,0 +1,108 @@
+package au.edu.uq.itee.comp3506.assn2.entities;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The results of a batch of lookups, one per key, laid out in two primitive arrays:
+ * the values of key i are values[offsets[i]] up to, but not including, values[offsets[i + 1]].
+ * The values of each key are in time order, and the keys are in the order they were given,
+ * so the same key given twice has its results twice.
+ *
+ * Memory efficiency: O(k + r), k keys and r values over all keys.
+ *
+ * @author Wayne
+ */
+public class CallBatch {
+	private long[] keys;
+	private int[] offsets;
+	private long[] values;
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @param keys the keys of the batch.
+	 * @param offsets the start of the values of each key, followed by the number of values.
+	 * @param values the values of every key, one key after another.
+	 */
+	CallBatch(long[] keys, int[] offsets, long[] values) {
+		this.keys = keys;
+		this.offsets = offsets;
+		this.values = values;
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @return the number of keys.
+	 */
+	public int size() {
+		return keys.length;
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @param i the position of the key in the batch.
+	 * @return the key.
+	 */
+	public long key(int i) {
+		return keys[i];
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @param i the position of the key in the batch.
+	 * @return the number of values of the key.
+	 */
+	public int count(int i) {
+		return offsets[i + 1] - offsets[i];
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @param i the position of the key in the batch.
+	 * @param j the position of the value among the values of the key.
+	 * @return the value.
+	 */
+	public long value(int i, int j) {
+		if (j < 0 || j >= count(i)) {
+			throw new IndexOutOfBoundsException("Key " + i + " has " + count(i) + " values.");
+		}
+		return values[offsets[i] + j];
+	}
+
+	/**
+	 * Runtime efficiency: O(r), r is the number of values of the key.
+	 *
+	 * @param i the position of the key in the batch.
+	 * @return the values of the key as a list, as the single key lookups give them.
+	 */
+	public List<Long> get(int i) {
+		List<Long> list = new ArrayList<Long>(count(i));
+		for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+			list.add(values[j]);
+		}
+		return list;
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @return the start of the values of each key, with the total number of values at the end. Not a copy.
+	 */
+	public int[] offsets() {
+		return offsets;
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @return the values of every key. Not a copy.
+	 */
+	public long[] values() {
+		return values;
+	}
+}
@@ -1,23 +1,25 @@
 package au.edu.uq.itee.comp3506.assn2.entities;
 
+import java.util.AbstractList;
 import java.util.List;
 import java.time.LocalDateTime;
 
 /**
  * Represents a single phone call connection attempt.
  * 
+ * A call record is a light view of one row of a CallRecordStore,
+ * so creating one does not copy the fields of the call.
+ * 
  * @author Richard Thomas
  *
  */
 public class CallRecord {
-	private long dialler;
-	private long receiver;
-	private int diallerSwitch;
-	private int receiverSwitch;
-	private List<Integer> connectionPath;
-	private LocalDateTime timeStamp;
+	final CallRecordStore store;
+	final int id;
 
 	/**
+	 * Create a record which is kept in a store of its own.
+	 * 
 	 * @param dialler The phone number that initiated the call.
 	 * @param receiver The phone number that should have received the call.
 	 * @param diallerSwitch The identifier of the switch to which the dialler was connected.
@@ -28,36 +30,62 @@ public class CallRecord {
 	public CallRecord(long dialler, long receiver,
 	                  int diallerSwitch, int receiverSwitch,
 	                  List<Integer> connectionPath, LocalDateTime timeStamp) {
-		this.dialler = dialler;
-		this.receiver = receiver;
-		this.diallerSwitch = diallerSwitch;
-		this.receiverSwitch = receiverSwitch;
-		this.connectionPath = connectionPath;
-		this.timeStamp = timeStamp;
+		int[] path = new int[connectionPath.size()];
+		for (int i = 0; i < path.length; i++) {
+			path[i] = connectionPath.get(i);
+		}
+		this.store = new CallRecordStore();
+		this.id = store.add(dialler, receiver, diallerSwitch, receiverSwitch,
+				path, 0, path.length, CallRecordStore.toEpochMilli(timeStamp));
+	}
+
+	/**
+	 * @param store The store which holds the record.
+	 * @param id The identifier of the record in the store.
+	 */
+	CallRecord(CallRecordStore store, int id) {
+		this.store = store;
+		this.id = id;
 	}
 
 	public long getDialler() {
-		return dialler;
+		return store.getDialler(id);
 	}
 
 	public long getReceiver() {
-		return receiver;
+		return store.getReceiver(id);
 	}
 
 	public int getDiallerSwitch() {
-		return diallerSwitch;
+		return store.getDiallerSwitch(id);
 	}
 
 	public int getReceiverSwitch() {
-		return receiverSwitch;
+		return store.getReceiverSwitch(id);
 	}
 
+	/**
+	 * @return an unmodifiable view of the switches through which the call was routed.
+	 */
 	public List<Integer> getConnectionPath() {
-		return connectionPath;
+		return new AbstractList<Integer>() {
+			@Override
+			public Integer get(int i) {
+				if (i < 0 || i >= size()) {
+					throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size());
+				}
+				return store.getHop(id, i);
+			}
+
+			@Override
+			public int size() {
+				return store.getPathLength(id);
+			}
+		};
 	}
 
 	public LocalDateTime getTimeStamp() {
-		return timeStamp;
+		return CallRecordStore.toLocalDateTime(store.getTimeStamp(id));
 	}
 	
 	/**
@@ -66,7 +94,30 @@ public class CallRecord {
 	 * @return true if switchID is in the connection path of the call route; false otherwise.
 	 */
 	public boolean hasSwitch(int switchID) {
-		return connectionPath.indexOf(switchID) != -1;
+		for (int i = store.getPathLength(id) - 1; i >= 0; i--) {
+			if (store.getHop(id, i) == switchID) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Two records are equal if they are the same row of the same store.
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof CallRecord)) {
+			return false;
+		}
+		CallRecord other = (CallRecord) o;
+		return store == other.store && id == other.id;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * System.identityHashCode(store) + id;
 	}
 
 	/**
@@ -75,8 +126,8 @@ public class CallRecord {
 	 */
 	@Override
 	public String toString() {
-		return "CallRecord [dialler=" + dialler + ", receiver=" + receiver + ", diallerSwitch=" + diallerSwitch
-				+ ", receiverSwitch=" + receiverSwitch + ", connectionPath=" + connectionPath + ", timeStamp="
-				+ timeStamp + "]";
+		return "CallRecord [dialler=" + getDialler() + ", receiver=" + getReceiver() + ", diallerSwitch=" + getDiallerSwitch()
+				+ ", receiverSwitch=" + getReceiverSwitch() + ", connectionPath=" + getConnectionPath() + ", timeStamp="
+				+ getTimeStamp() + "]";
 	}
 }
\ No newline at end of file
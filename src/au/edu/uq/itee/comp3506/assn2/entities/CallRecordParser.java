@@ -0,0 +1,405 @@
+package au.edu.uq.itee.comp3506.assn2.entities;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+
+/**
+ * A parser which reads call record lines straight from a byte buffer.
+ * Tokens are kept as offsets into the buffer and numbers are decoded in place,
+ * so no intermediate strings are created for a line. Valid records are appended to a CallRecordStore.
+ *
+ * A parser keeps the fields of the last parsed line, so one instance should be used by one thread only.
+ *
+ * Memory efficiency: O(k), k is the number of tokens in the longest line.
+ *
+ * @author Wayne
+ */
+public class CallRecordParser {
+	private static final byte SPACE = ' ';
+	private static final byte NEW_LINE = '\n';
+	private static final byte RETURN = '\r';
+	private static final int TIME_STAMP_LENGTH = 23; // yyyy-MM-ddTHH:mm:ss.SSS
+	private static final long INVALID_TIME = Long.MIN_VALUE;
+	private static final int[] DAYS_IN_MONTH = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+	private SwitchRegistry switches;
+	private CallRecordStore store;
+	private ByteBuffer buffer;
+	private int[] tokenStart = new int[16];
+	private int[] tokenEnd = new int[16];
+	private int tokens; // Number of tokens in the line.
+
+	private long dialler;
+	private long receiver;
+	private int diallerSwitch;
+	private int receiverSwitch;
+	private int[] hops = new int[16]; // Decoded switches from token 1 to token (tokens - 3).
+	private long timeStamp; // Milliseconds since the epoch.
+
+	/**
+	 * Runtime efficiency: O(s), s is the number of switches.
+	 *
+	 * @param switchesTree the valid switches that every switch in a record must be part of.
+	 * @param store the store which valid records are added to.
+	 */
+	public CallRecordParser(SwitchAVLTree<Integer> switchesTree, CallRecordStore store) {
+		this(SwitchRegistry.of(switchesTree), store);
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @param switches the valid switches that every switch in a record must be part of.
+	 * @param store the store which valid records are added to.
+	 */
+	public CallRecordParser(SwitchRegistry switches, CallRecordStore store) {
+		this.switches = switches;
+		this.store = store;
+	}
+
+	/**
+	 * Parse every complete line between from and to, add each valid record to the store and hand it to the handler.
+	 * A line is complete if it is terminated by a new line, or if it ends at to and last is true.
+	 *
+	 * Runtime efficiency: O(n)
+	 *
+	 * @param buf the buffer which holds the lines.
+	 * @param from the first byte to be read.
+	 * @param to one after the last byte to be read.
+	 * @param last true if the bytes at the end of the range form a line without a new line.
+	 * @param handler called with each valid record.
+	 * @return the position of the first byte which was not consumed.
+	 */
+	public int parseLines(ByteBuffer buf, int from, int to, boolean last, RecordHandler handler) {
+		int lineStart = from;
+		for (int i = from; i < to; i++) {
+			if (buf.get(i) == NEW_LINE) {
+				if (parseLine(buf, lineStart, i)) {
+					handler.handle(add());
+				}
+				lineStart = i + 1;
+			}
+		}
+		if (last && lineStart < to) {
+			if (parseLine(buf, lineStart, to)) {
+				handler.handle(add());
+			}
+			lineStart = to;
+		}
+		return lineStart;
+	}
+
+	/**
+	 * Parse a single line, without its new line, and check whether it is a valid record.
+	 * A valid line can then be added to the store through add().
+	 *
+	 * Runtime efficiency: O(k), k is the length of the line.
+	 *
+	 * @param buf the buffer which holds the line.
+	 * @param from the first byte of the line.
+	 * @param to one after the last byte of the line.
+	 * @return true if the line is a valid record; false otherwise.
+	 */
+	public boolean parseLine(ByteBuffer buf, int from, int to) {
+		buffer = buf;
+		if (to > from && buf.get(to - 1) == RETURN) {
+			to--;
+		}
+		if (Metrics.ENABLED) {
+			return measuredParse(from, to);
+		}
+		tokenize(from, to);
+		return findCorruptRecords() && decode();
+	}
+
+	/**
+	 * parseLine with each stage timed.
+	 */
+	private boolean measuredParse(int from, int to) {
+		long start = System.nanoTime();
+		tokenize(from, to);
+		long tokenized = System.nanoTime();
+		boolean valid = findCorruptRecords();
+		long validated = System.nanoTime();
+		valid = valid && decode();
+		Metrics.TOKENIZE.record(tokenized - start);
+		Metrics.VALIDATE.record(validated - tokenized);
+		Metrics.DECODE.record(System.nanoTime() - validated);
+		Metrics.LINES.increment();
+		if (!valid) {
+			Metrics.CORRUPT_LINES.increment();
+		}
+		return valid;
+	}
+
+	/**
+	 * Add the last valid line to the store.
+	 *
+	 * Runtime efficiency: O(k) amortised, k is the number of switches in the connection path.
+	 *
+	 * @return the view of the new record.
+	 */
+	public CallRecord add() {
+		// The connection path is every switch between the dialler switch token and the receiver switch token.
+		int id = store.add(dialler, receiver, diallerSwitch, receiverSwitch, hops, 2, tokens - 5, timeStamp);
+		return store.get(id);
+	}
+
+	/**
+	 * Check a record which did not come from a line, such as one appended from a feed, by the same rules as
+	 * findCorruptRecords and decode: the phone numbers are not negative, every switch is a known 5 digit switch,
+	 * a connection path starts at the dialler's switch, and it does not repeat a switch twice in a row.
+	 *
+	 * Runtime efficiency: O(k), k is the number of switches in the connection path.
+	 *
+	 * @param switches the valid switches.
+	 * @param cr the record to be checked.
+	 * @return true if the record is valid; false otherwise.
+	 */
+	static boolean isValid(SwitchRegistry switches, CallRecord cr) {
+		CallRecordStore from = cr.store;
+		int id = cr.id;
+		if (from.getDialler(id) < 0 || from.getReceiver(id) < 0) {
+			return false;
+		}
+		if (!isSwitch(switches, from.getDiallerSwitch(id)) || !isSwitch(switches, from.getReceiverSwitch(id))) {
+			return false;
+		}
+		int length = from.getPathLength(id);
+		if (length > 0 && from.getHop(id, 0) != from.getDiallerSwitch(id)) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (!isSwitch(switches, from.getHop(id, i)) || (i > 0 && from.getHop(id, i) == from.getHop(id, i - 1))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isSwitch(SwitchRegistry switches, int switchID) {
+		return switchID >= 10000 && switchID <= 99999 && switches.contains(switchID);
+	}
+
+	/**
+	 * Split the line on spaces. Repeated spaces do not create empty tokens.
+	 */
+	private void tokenize(int from, int to) {
+		tokens = 0;
+		int i = from;
+		while (i < to) {
+			while (i < to && buffer.get(i) == SPACE) {
+				i++;
+			}
+			if (i == to) {
+				break;
+			}
+			if (tokens == tokenStart.length) {
+				tokenStart = grow(tokenStart);
+				tokenEnd = grow(tokenEnd);
+				hops = grow(hops);
+			}
+			tokenStart[tokens] = i;
+			while (i < to && buffer.get(i) != SPACE) {
+				i++;
+			}
+			tokenEnd[tokens++] = i;
+		}
+	}
+
+	private static int[] grow(int[] a) {
+		int[] b = new int[a.length * 2];
+		System.arraycopy(a, 0, b, 0, a.length);
+		return b;
+	}
+
+	/**
+	 * Same rules as the string based check that ReadData used before:
+	 * the dialler switch must be the first switch of the path, every switch must be a known 5 digit switch,
+	 * and a path may not repeat a switch twice in a row.
+	 * The decoded switches are kept in hops.
+	 */
+	private boolean findCorruptRecords() {
+		if (tokens > 5) {
+			if (length(0) != 10 && length(tokens - 2) != 10 && length(1) != 5 && length(tokens - 3) != 5) {
+				return false;
+			}
+			if (!sameToken(1, 2)) {
+				return false;
+			}
+			for (int i = 1; i < tokens - 2; i++) {
+				if (length(i) != 5 || !isSwitch(i)) {
+					return false;
+				} else if (tokens > 6 && i >= 2 && i <= tokens - 5) {
+					if (sameToken(i, i + 1)) {
+						return false;
+					}
+				}
+			}
+		} else if (tokens == 5) {
+			if (length(0) != 10 && length(3) != 10 && length(1) != 5 && length(2) != 5) {
+				return false;
+			}
+			for (int i = 1; i <= 2; i++) {
+				if (!isSwitch(i)) {
+					return false;
+				}
+			}
+		} else {
+			return false;
+		}
+		return true;
+	}
+
+	private boolean decode() {
+		dialler = decodeLong(0);
+		receiver = decodeLong(tokens - 2);
+		if (dialler < 0 || receiver < 0) {
+			return false;
+		}
+		diallerSwitch = hops[1];
+		receiverSwitch = hops[tokens - 3];
+		timeStamp = decodeTimeStamp(tokens - 1);
+		return timeStamp != INVALID_TIME;
+	}
+
+	private int length(int token) {
+		return tokenEnd[token] - tokenStart[token];
+	}
+
+	private boolean sameToken(int a, int b) {
+		int length = length(a);
+		if (length != length(b)) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (buffer.get(tokenStart[a] + i) != buffer.get(tokenStart[b] + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Decode a switch token into hops and check it against the valid switches.
+	 */
+	private boolean isSwitch(int token) {
+		int value = decodeInt(token);
+		if (value < 0) {
+			return false;
+		}
+		hops[token] = value;
+		return switches.contains(value);
+	}
+
+	/**
+	 * @return the value of the token, or -1 if it is not a number of at most 9 digits.
+	 */
+	private int decodeInt(int token) {
+		if (length(token) == 0 || length(token) > 9) {
+			return -1;
+		}
+		int value = 0;
+		for (int i = tokenStart[token]; i < tokenEnd[token]; i++) {
+			int digit = buffer.get(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return -1;
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	/**
+	 * @return the value of the token, or -1 if it is not a number of at most 18 digits.
+	 */
+	private long decodeLong(int token) {
+		if (length(token) == 0 || length(token) > 18) {
+			return -1;
+		}
+		long value = 0;
+		for (int i = tokenStart[token]; i < tokenEnd[token]; i++) {
+			int digit = buffer.get(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return -1;
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	/**
+	 * Decode digits at a fixed offset of a token.
+	 *
+	 * @return the value, or -1 if one of the bytes is not a digit.
+	 */
+	private int digits(int start, int count) {
+		int value = 0;
+		for (int i = start; i < start + count; i++) {
+			int digit = buffer.get(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return -1;
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	/**
+	 * Decode a time stamp in the form yyyy-MM-ddTHH:mm:ss.SSS without creating any object.
+	 * Any other form is handed to LocalDateTime.parse.
+	 *
+	 * @return milliseconds since the epoch, or INVALID_TIME if the token is not a valid time stamp.
+	 */
+	private long decodeTimeStamp(int token) {
+		int s = tokenStart[token];
+		if (length(token) == TIME_STAMP_LENGTH && buffer.get(s + 4) == '-' && buffer.get(s + 7) == '-'
+				&& buffer.get(s + 10) == 'T' && buffer.get(s + 13) == ':' && buffer.get(s + 16) == ':'
+				&& buffer.get(s + 19) == '.') {
+			int year = digits(s, 4);
+			int month = digits(s + 5, 2);
+			int day = digits(s + 8, 2);
+			int hour = digits(s + 11, 2);
+			int minute = digits(s + 14, 2);
+			int second = digits(s + 17, 2);
+			int milli = digits(s + 20, 3);
+			if ((year | month | day | hour | minute | second | milli) < 0) {
+				return INVALID_TIME;
+			}
+			return epochMilli(year, month, day, hour, minute, second, milli);
+		}
+		try {
+			byte[] text = new byte[length(token)];
+			for (int i = 0; i < text.length; i++) {
+				text[i] = buffer.get(s + i);
+			}
+			return CallRecordStore.toEpochMilli(LocalDateTime.parse(new String(text, StandardCharsets.ISO_8859_1)));
+		} catch (DateTimeException e) {
+			return INVALID_TIME;
+		}
+	}
+
+	/**
+	 * Days from the civil calendar date to the epoch, after H. Hinnant's days_from_civil.
+	 *
+	 * @return milliseconds since the epoch, or INVALID_TIME if a field is out of range.
+	 */
+	private static long epochMilli(int year, int month, int day, int hour, int minute, int second, int milli) {
+		if (month < 1 || month > 12 || day < 1 || hour > 23 || minute > 59 || second > 59) {
+			return INVALID_TIME;
+		}
+		boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+		if (day > DAYS_IN_MONTH[month - 1] + (month == 2 && leap ? 1 : 0)) {
+			return INVALID_TIME;
+		}
+		long y = month <= 2 ? year - 1 : year;
+		long era = Math.floorDiv(y, 400);
+		long yearOfEra = y - era * 400;
+		long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		long days = era * 146097 + dayOfEra - 719468;
+		return ((days * 24 + hour) * 60 + minute) * 60000L + second * 1000L + milli;
+	}
+}
@@ -0,0 +1,318 @@
+package au.edu.uq.itee.comp3506.assn2.entities;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * A columnar store of call records. Every field is kept in a primitive array,
+ * and the connection paths of all records are flattened into one array of switches with offsets.
+ * Records are addressed by an int identifier, which is their position in the store.
+ *
+ * The columns are split into pages of 65536 records, so growing the store never copies old pages
+ * and the flattened paths of a page never outgrow an int index.
+ * Time stamps are kept as milliseconds since 1970-01-01T00:00 in UTC.
+ *
+ * Memory efficiency: O(n + h), h is the total number of switches in all connection paths.
+ *
+ * @author Wayne
+ */
+public class CallRecordStore {
+	private static final int PAGE_BITS = 16;
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int PAGE_MASK = PAGE_SIZE - 1;
+	private static final int INITIAL_PAGES = 4;
+
+	private long[][] diallers = new long[INITIAL_PAGES][];
+	private long[][] receivers = new long[INITIAL_PAGES][];
+	private int[][] diallerSwitches = new int[INITIAL_PAGES][];
+	private int[][] receiverSwitches = new int[INITIAL_PAGES][];
+	private long[][] timeStamps = new long[INITIAL_PAGES][];
+	private int[][] pathOffsets = new int[INITIAL_PAGES][]; // Path of row i is hops[offsets[i]] to hops[offsets[i + 1] - 1].
+	private int[][] hops = new int[INITIAL_PAGES][];
+	private int size;
+
+	/**
+	 * Runtime efficiency: O(1)
+	 */
+	public CallRecordStore() {
+		size = 0;
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @return the number of records in the store.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Append a record.
+	 *
+	 * Runtime efficiency: O(k) amortised, k is the length of the connection path.
+	 *
+	 * @param dialler The phone number that initiated the call.
+	 * @param receiver The phone number that should have received the call.
+	 * @param diallerSwitch The identifier of the switch to which the dialler was connected.
+	 * @param receiverSwitch The identifier of the switch to which the receiver was connected.
+	 * @param path array holding the switches through which the call was routed.
+	 * @param from position of the first switch of the path in the array.
+	 * @param length number of switches in the path.
+	 * @param timeStamp milliseconds since the epoch at which the call was initiated.
+	 * @return the identifier of the new record.
+	 */
+	public int add(long dialler, long receiver, int diallerSwitch, int receiverSwitch,
+	               int[] path, int from, int length, long timeStamp) {
+		int page = size >>> PAGE_BITS;
+		int row = size & PAGE_MASK;
+		ensureCapacity(page, row, length);
+
+		diallers[page][row] = dialler;
+		receivers[page][row] = receiver;
+		diallerSwitches[page][row] = diallerSwitch;
+		receiverSwitches[page][row] = receiverSwitch;
+		timeStamps[page][row] = timeStamp;
+		int offset = pathOffsets[page][row];
+		System.arraycopy(path, from, hops[page], offset, length);
+		pathOffsets[page][row + 1] = offset + length;
+		return size++;
+	}
+
+	/**
+	 * Append a copy of a record, which may belong to another store.
+	 *
+	 * Runtime efficiency: O(k) amortised, k is the length of the connection path.
+	 *
+	 * @param cr the record to be copied.
+	 * @return the identifier of the new record.
+	 */
+	public int add(CallRecord cr) {
+		CallRecordStore from = cr.store;
+		int id = cr.id;
+		int page = id >>> PAGE_BITS;
+		int row = id & PAGE_MASK;
+		int offset = from.pathOffsets[page][row];
+		return add(from.diallers[page][row], from.receivers[page][row],
+				from.diallerSwitches[page][row], from.receiverSwitches[page][row],
+				from.hops[page], offset, from.pathOffsets[page][row + 1] - offset, from.timeStamps[page][row]);
+	}
+
+	private void ensureCapacity(int page, int row, int pathLength) {
+		if (row == 0) {
+			if (page == diallers.length) {
+				int pages = page * 2;
+				diallers = Arrays.copyOf(diallers, pages);
+				receivers = Arrays.copyOf(receivers, pages);
+				diallerSwitches = Arrays.copyOf(diallerSwitches, pages);
+				receiverSwitches = Arrays.copyOf(receiverSwitches, pages);
+				timeStamps = Arrays.copyOf(timeStamps, pages);
+				pathOffsets = Arrays.copyOf(pathOffsets, pages);
+				hops = Arrays.copyOf(hops, pages);
+			}
+			diallers[page] = new long[1];
+			receivers[page] = new long[1];
+			diallerSwitches[page] = new int[1];
+			receiverSwitches[page] = new int[1];
+			timeStamps[page] = new long[1];
+			pathOffsets[page] = new int[2];
+			hops[page] = new int[Math.max(4, pathLength)];
+		} else if (row == diallers[page].length) {
+			int rows = Math.min(row * 2, PAGE_SIZE);
+			diallers[page] = Arrays.copyOf(diallers[page], rows);
+			receivers[page] = Arrays.copyOf(receivers[page], rows);
+			diallerSwitches[page] = Arrays.copyOf(diallerSwitches[page], rows);
+			receiverSwitches[page] = Arrays.copyOf(receiverSwitches[page], rows);
+			timeStamps[page] = Arrays.copyOf(timeStamps[page], rows);
+			pathOffsets[page] = Arrays.copyOf(pathOffsets[page], rows + 1);
+		}
+		int needed = pathOffsets[page][row] + pathLength;
+		if (needed > hops[page].length) {
+			hops[page] = Arrays.copyOf(hops[page], Math.max(needed, hops[page].length * 2));
+		}
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @param id the identifier of a record.
+	 * @return a view of the record.
+	 */
+	public CallRecord get(int id) {
+		if (id < 0 || id >= size) {
+			throw new IndexOutOfBoundsException("Record " + id + " is not in the store.");
+		}
+		return new CallRecord(this, id);
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 */
+	public long getDialler(int id) {
+		return diallers[id >>> PAGE_BITS][id & PAGE_MASK];
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 */
+	public long getReceiver(int id) {
+		return receivers[id >>> PAGE_BITS][id & PAGE_MASK];
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 */
+	public int getDiallerSwitch(int id) {
+		return diallerSwitches[id >>> PAGE_BITS][id & PAGE_MASK];
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 */
+	public int getReceiverSwitch(int id) {
+		return receiverSwitches[id >>> PAGE_BITS][id & PAGE_MASK];
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @return milliseconds since the epoch at which the call was initiated.
+	 */
+	public long getTimeStamp(int id) {
+		return timeStamps[id >>> PAGE_BITS][id & PAGE_MASK];
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @return the number of switches in the connection path of the record.
+	 */
+	public int getPathLength(int id) {
+		int[] offsets = pathOffsets[id >>> PAGE_BITS];
+		int row = id & PAGE_MASK;
+		return offsets[row + 1] - offsets[row];
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @param id the identifier of a record.
+	 * @param i position in the connection path, from 0 to getPathLength(id) - 1.
+	 * @return the switch at that position.
+	 */
+	public int getHop(int id, int i) {
+		int page = id >>> PAGE_BITS;
+		return hops[page][pathOffsets[page][id & PAGE_MASK] + i];
+	}
+
+	/**
+	 * Write the store to a snapshot, one page at a time.
+	 *
+	 * Runtime efficiency: O(n + h)
+	 */
+	void write(IndexSnapshot.Output out) throws IOException {
+		out.putInt(size);
+		for (int page = 0; page <= (size - 1) >> PAGE_BITS; page++) {
+			int rows = Math.min(size - (page << PAGE_BITS), PAGE_SIZE);
+			out.putLongs(diallers[page], 0, rows);
+			out.putLongs(receivers[page], 0, rows);
+			out.putInts(diallerSwitches[page], 0, rows);
+			out.putInts(receiverSwitches[page], 0, rows);
+			out.putLongs(timeStamps[page], 0, rows);
+			out.putInts(pathOffsets[page], 0, rows + 1);
+			out.putInts(hops[page], 0, pathOffsets[page][rows]);
+		}
+	}
+
+	/**
+	 * Read a store written by write.
+	 *
+	 * Runtime efficiency: O(n + h)
+	 */
+	static CallRecordStore read(IndexSnapshot.Input in) throws IOException {
+		CallRecordStore store = new CallRecordStore();
+		int size = in.getCount();
+		int pages = Math.max(INITIAL_PAGES, ((size - 1) >> PAGE_BITS) + 1);
+		store.diallers = new long[pages][];
+		store.receivers = new long[pages][];
+		store.diallerSwitches = new int[pages][];
+		store.receiverSwitches = new int[pages][];
+		store.timeStamps = new long[pages][];
+		store.pathOffsets = new int[pages][];
+		store.hops = new int[pages][];
+		for (int page = 0; page <= (size - 1) >> PAGE_BITS; page++) {
+			int rows = Math.min(size - (page << PAGE_BITS), PAGE_SIZE);
+			in.getLongs(store.diallers[page] = new long[rows], 0, rows);
+			in.getLongs(store.receivers[page] = new long[rows], 0, rows);
+			in.getInts(store.diallerSwitches[page] = new int[rows], 0, rows);
+			in.getInts(store.receiverSwitches[page] = new int[rows], 0, rows);
+			in.getLongs(store.timeStamps[page] = new long[rows], 0, rows);
+			int[] offsets = new int[rows + 1];
+			in.getInts(offsets, 0, rows + 1);
+			for (int row = 0; row < rows; row++) {
+				if (offsets[row] > offsets[row + 1] || offsets[0] != 0) {
+					throw new IOException("Snapshot path offsets are damaged.");
+				}
+			}
+			store.pathOffsets[page] = offsets;
+			int[] pageHops = new int[Math.max(4, offsets[rows])];
+			in.getInts(pageHops, 0, offsets[rows]);
+			store.hops[page] = pageHops;
+		}
+		store.size = size;
+		return store;
+	}
+
+	/**
+	 * Convert a date and time to the form kept in the store. Anything finer than a millisecond is dropped.
+	 * Times too far from the epoch for a long, such as LocalDateTime.MIN and MAX, are clamped to
+	 * Long.MIN_VALUE and Long.MAX_VALUE, which are before and after every record.
+	 *
+	 * Runtime efficiency: O(1)
+	 *
+	 * @param time the date and time, taken to be in UTC.
+	 * @return milliseconds since the epoch.
+	 */
+	public static long toEpochMilli(LocalDateTime time) {
+		long seconds = time.toEpochSecond(ZoneOffset.UTC);
+		if (seconds < Long.MIN_VALUE / 1000) {
+			return Long.MIN_VALUE;
+		}
+		if (seconds > Long.MAX_VALUE / 1000) {
+			return Long.MAX_VALUE;
+		}
+		long millis = seconds * 1000;
+		int part = time.getNano() / 1000000;
+		return millis > Long.MAX_VALUE - part ? Long.MAX_VALUE : millis + part;
+	}
+
+	/**
+	 * Like toEpochMilli, but a time which falls between two milliseconds is rounded up.
+	 * Used for the start of a time period, so that no record before the start is included.
+	 *
+	 * Runtime efficiency: O(1)
+	 *
+	 * @param time the date and time, taken to be in UTC.
+	 * @return milliseconds since the epoch.
+	 */
+	public static long toEpochMilliCeil(LocalDateTime time) {
+		long epochMilli = toEpochMilli(time);
+		if (epochMilli == Long.MIN_VALUE || epochMilli == Long.MAX_VALUE) {
+			return epochMilli; // Clamped.
+		}
+		return time.getNano() % 1000000 == 0 ? epochMilli : epochMilli + 1;
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @param epochMilli milliseconds since the epoch.
+	 * @return the date and time in UTC.
+	 */
+	public static LocalDateTime toLocalDateTime(long epochMilli) {
+		return LocalDateTime.ofEpochSecond(Math.floorDiv(epochMilli, 1000L),
+				(int) Math.floorMod(epochMilli, 1000L) * 1000000, ZoneOffset.UTC);
+	}
+}
@@ -0,0 +1,163 @@
+package au.edu.uq.itee.comp3506.assn2.entities;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Reads a call record file by memory mapping it in new line aligned chunks and parsing the chunks in parallel.
+ * Each chunk is parsed into a CallRecordStore of its own. The valid records of each chunk are handed to the handler
+ * on the calling thread in file order, so the handler can copy them into a shared store and insert them into indexes
+ * which are not thread safe.
+ *
+ * At most a fixed number of chunks are parsed ahead of the handler,
+ * so memory stays bounded by the chunk size rather than the file size.
+ *
+ * Memory efficiency: O(c * p), c is the chunk size and p the parallelism of the pool.
+ *
+ * @author Wayne
+ */
+public class ChunkedRecordReader {
+	public static final int DEFAULT_CHUNK_SIZE = 8 << 20;
+	private static final int SCAN_SIZE = 4096;
+	private static final byte NEW_LINE = '\n';
+
+	private SwitchRegistry switches;
+	private ForkJoinPool pool;
+	private int chunkSize;
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @param switches the valid switches, shared by the parsers of every chunk.
+	 * @param pool the pool which parses the chunks.
+	 * @param chunkSize the number of bytes mapped for each chunk, before aligning to the next new line.
+	 */
+	public ChunkedRecordReader(SwitchRegistry switches, ForkJoinPool pool, int chunkSize) {
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("Chunk size must be positive.");
+		}
+		this.switches = switches;
+		this.pool = pool;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Runtime efficiency: O(s), s is the number of switches.
+	 *
+	 * @param switchesTree the valid switches.
+	 * @param pool the pool which parses the chunks.
+	 * @param chunkSize the number of bytes mapped for each chunk, before aligning to the next new line.
+	 */
+	public ChunkedRecordReader(SwitchAVLTree<Integer> switchesTree, ForkJoinPool pool, int chunkSize) {
+		this(SwitchRegistry.of(switchesTree), pool, chunkSize);
+	}
+
+	/**
+	 * Runtime efficiency: O(s), s is the number of switches.
+	 *
+	 * @param switchesTree the valid switches.
+	 */
+	public ChunkedRecordReader(SwitchAVLTree<Integer> switchesTree) {
+		this(switchesTree, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Parse every line of the file and hand the valid records to the handler in file order.
+	 *
+	 * Runtime efficiency: O(n / p) for parsing, plus the cost of the handler.
+	 *
+	 * @param filePath the call record file.
+	 * @param handler called on this thread with each valid record.
+	 * @throws IOException if the file cannot be mapped or read.
+	 */
+	public void read(String filePath, RecordHandler handler) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+			int window = Math.max(2, pool.getParallelism() * 2);
+			ArrayDeque<ForkJoinTask<CallRecordStore>> pending = new ArrayDeque<ForkJoinTask<CallRecordStore>>();
+			long size = channel.size();
+			long start = 0;
+
+			while (start < size || !pending.isEmpty()) {
+				while (start < size && pending.size() < window) {
+					long end = nextChunkStart(channel, start, size);
+					pending.add(pool.submit(new ChunkTask(channel, start, end)));
+					start = end;
+				}
+				CallRecordStore chunk = join(pending.poll());
+				for (int id = 0; id < chunk.size(); id++) {
+					handler.handle(chunk.get(id));
+				}
+			}
+		}
+	}
+
+	private static CallRecordStore join(ForkJoinTask<CallRecordStore> task) throws IOException {
+		try {
+			return task.join();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Find where the chunk after the one starting at start begins:
+	 * one after the first new line at or after start + chunkSize - 1.
+	 *
+	 * Runtime efficiency: O(k), k is the length of the line crossing the nominal boundary.
+	 */
+	private long nextChunkStart(FileChannel channel, long start, long size) throws IOException {
+		long position = start + chunkSize - 1;
+		ByteBuffer scan = ByteBuffer.allocate(SCAN_SIZE);
+		while (position < size) {
+			scan.clear();
+			int read = channel.read(scan, position);
+			if (read <= 0) {
+				break;
+			}
+			for (int i = 0; i < read; i++) {
+				if (scan.get(i) == NEW_LINE) {
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+		return size;
+	}
+
+	/**
+	 * Maps and parses the lines between two chunk boundaries.
+	 */
+	@SuppressWarnings("serial")
+	private class ChunkTask extends RecursiveTask<CallRecordStore> {
+		private FileChannel channel;
+		private long start;
+		private long end;
+
+		ChunkTask(FileChannel channel, long start, long end) {
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected CallRecordStore compute() {
+			CallRecordStore records = new CallRecordStore();
+			try {
+				MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+				new CallRecordParser(switches, records).parseLines(buf, 0, buf.limit(), true, c -> { });
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return records;
+		}
+	}
+}
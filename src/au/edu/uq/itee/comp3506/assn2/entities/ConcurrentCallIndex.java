@@ -0,0 +1,274 @@
+package au.edu.uq.itee.comp3506.assn2.entities;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * Thread safe access to the indexes of a ReadData, so new call records can be appended from the switch feed
+ * while queries run.
+ *
+ * Writers append a batch of records under an exclusive lock. Readers do not take a lock:
+ * each query runs optimistically and is then validated against the lock's version,
+ * so it sees the indexes either before or after a batch, never part way through one.
+ * Only a query which overlapped a batch is run again, under a shared lock.
+ * The store and the indexes only ever grow, so a query which overlapped a batch can at worst read stale
+ * or partly written entries; any exception it throws is discarded along with its result.
+ *
+ * Results are materialised inside the validated read. Records are copied into a store of their own,
+ * as a view of the shared store would read its columns after validation, without the lock,
+ * while a writer may be replacing its pages.
+ * Appended records are checked by the same rules as the lines of a file; see ReadData#append.
+ *
+ * Memory efficiency: O(1) on top of the indexes.
+ *
+ * @author Wayne
+ */
+public class ConcurrentCallIndex {
+	private static final int APPEND_BATCH = 256;
+
+	private final StampedLock lock = new StampedLock();
+	private final ReadData reader;
+	private final CallRecordStore store;
+	private final LongRecordIndex dialIndex;
+	private final LongRecordIndex receiveIndex;
+	private final TimeBPlusTree timeIndex;
+	private final SwitchConnectionCounter connectCounter;
+	private final SwitchConnectionCube connectCube;
+	private final FaultIndex faultIndex;
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @param reader a reader whose records have been read. It must not be modified except through this index.
+	 */
+	public ConcurrentCallIndex(ReadData reader) {
+		this.reader = reader;
+		store = reader.readRecordStore();
+		dialIndex = reader.readDialRecord();
+		receiveIndex = reader.readReceiveRecord();
+		timeIndex = reader.readTimeRecord();
+		connectCounter = reader.readConnectCounter();
+		connectCube = reader.readConnectRecord();
+		faultIndex = reader.readFaultRecord();
+	}
+
+	/**
+	 * Run a query without a lock, and again under the shared lock if a batch was appended meanwhile.
+	 * An exception of the query is thrown if no batch was appended while it ran, as it is then not caused
+	 * by reading an index which was changing.
+	 */
+	private <T> T read(Supplier<T> query) {
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0) {
+			T result = null;
+			RuntimeException failure = null;
+			try {
+				result = query.get();
+			} catch (RuntimeException e) {
+				failure = e;
+			}
+			if (lock.validate(stamp)) {
+				if (failure != null) {
+					throw failure;
+				}
+				return result;
+			}
+		}
+		stamp = lock.readLock();
+		try {
+			return query.get();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Copy records into a store of their own, so they can be read after the query without the lock.
+	 *
+	 * Runtime efficiency: O(r + h), r records with h switches in their connection paths.
+	 */
+	private static List<CallRecord> detach(List<CallRecord> records) {
+		CallRecordStore copy = new CallRecordStore();
+		List<CallRecord> detached = new ArrayList<CallRecord>(records.size());
+		for (CallRecord cr: records) {
+			detached.add(copy.get(copy.add(cr)));
+		}
+		return detached;
+	}
+
+	/**
+	 * Append a record and index it.
+	 *
+	 * Runtime efficiency: O(log n)
+	 *
+	 * @param cr the record to be added, which may belong to another store.
+	 * @return the record in the store.
+	 * @throws IllegalArgumentException if the record is corrupt or names an unknown switch.
+	 */
+	public CallRecord append(CallRecord cr) {
+		long stamp = lock.writeLock();
+		try {
+			return reader.append(cr);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Append a batch of records and index them. Readers see all of the batch or none of it.
+	 * Batches of a few hundred records keep readers from retrying too often.
+	 *
+	 * Runtime efficiency: O(b log n), b is the size of the batch.
+	 *
+	 * @param batch the records to be added, which may belong to another store.
+	 * @throws IllegalArgumentException if a record is corrupt or names an unknown switch; none of the batch is added.
+	 */
+	public void appendAll(List<CallRecord> batch) {
+		for (CallRecord cr: batch) {
+			if (!reader.isValid(cr)) {
+				throw new IllegalArgumentException("Record is corrupt or names an unknown switch.");
+			}
+		}
+		long stamp = lock.writeLock();
+		reader.beginBulk();
+		try {
+			for (CallRecord cr: batch) {
+				reader.append(cr);
+			}
+		} finally {
+			reader.endBulk();
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Read a further file of call records and append the valid ones.
+	 * The file is parsed without the lock, then appended in batches so readers are never held up for long.
+	 *
+	 * Runtime efficiency: O(m log n), m is the number of lines in the file.
+	 *
+	 * @param path the file of call records.
+	 * @return the number of valid records added.
+	 * @throws IOException if the file could not be read.
+	 */
+	public int appendRecords(Path path) throws IOException {
+		CallRecordStore parsed = reader.parseRecords(path);
+		for (int from = 0; from < parsed.size(); from += APPEND_BATCH) {
+			int to = Math.min(from + APPEND_BATCH, parsed.size());
+			long stamp = lock.writeLock();
+			reader.beginBulk();
+			try {
+				for (int id = from; id < to; id++) {
+					reader.append(parsed.get(id));
+				}
+			} finally {
+				reader.endBulk();
+				lock.unlockWrite(stamp);
+			}
+		}
+		return parsed.size();
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @return the number of records.
+	 */
+	public int size() {
+		return read(() -> store.size());
+	}
+
+	/**
+	 * Runtime efficiency: O(log m + r), m is the number of records of the dialler and r the number in the period.
+	 *
+	 * @see LongRecordIndex#findReceiver(long, long, long)
+	 */
+	public List<Long> called(long dialler, long startTime, long endTime) {
+		return read(() -> dialIndex.findReceiver(dialler, startTime, endTime));
+	}
+
+	/**
+	 * Runtime efficiency: O(log m + r), m is the number of records of the receiver and r the number in the period.
+	 *
+	 * @see LongRecordIndex#findDialler(long, long, long)
+	 */
+	public List<Long> callers(long receiver, long startTime, long endTime) {
+		return read(() -> receiveIndex.findDialler(receiver, startTime, endTime));
+	}
+
+	/**
+	 * Runtime efficiency: O(log f + r), f is the number of faulty calls of the dialler and r the number in the period.
+	 *
+	 * @see FaultIndex#findConnectionFault(long, long, long)
+	 */
+	public List<Integer> findConnectionFault(long dialler, long startTime, long endTime) {
+		return read(() -> faultIndex.findConnectionFault(dialler, startTime, endTime));
+	}
+
+	/**
+	 * Runtime efficiency: O(log f + r), f is the number of faulty calls to the receiver and r the number in the period.
+	 *
+	 * @see FaultIndex#findReceivingFault(long, long, long)
+	 */
+	public List<Integer> findReceivingFault(long receiver, long startTime, long endTime) {
+		return read(() -> faultIndex.findReceivingFault(receiver, startTime, endTime));
+	}
+
+	/**
+	 * Runtime efficiency: O(log f + r), f is the number of faulty calls at the switch and r the number in the period.
+	 *
+	 * @see FaultIndex#findFaultsAtSwitch(int, long, long)
+	 */
+	public List<CallRecord> faultsAtSwitch(int switchID, long startTime, long endTime) {
+		return read(() -> detach(faultIndex.findFaultsAtSwitch(switchID, startTime, endTime)));
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @see SwitchConnectionCounter#maxConnections()
+	 */
+	public int maxConnections() {
+		return connectCounter.maxConnections();
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @see SwitchConnectionCounter#minConnections()
+	 */
+	public int minConnections() {
+		return connectCounter.minConnections();
+	}
+
+	/**
+	 * Runtime efficiency: O(s (q + log B) + e), s switches, q pages of time buckets, e records in partly covered buckets.
+	 *
+	 * @see SwitchConnectionCube#maxConnections(long, long)
+	 */
+	public int maxConnections(long startTime, long endTime) {
+		return read(() -> connectCube.maxConnections(startTime, endTime));
+	}
+
+	/**
+	 * Runtime efficiency: O(s (q + log B) + e), s switches, q pages of time buckets, e records in partly covered buckets.
+	 *
+	 * @see SwitchConnectionCube#minConnections(long, long)
+	 */
+	public int minConnections(long startTime, long endTime) {
+		return read(() -> connectCube.minConnections(startTime, endTime));
+	}
+
+	/**
+	 * Runtime efficiency: O(log n + m), m is the number of calls in the period.
+	 *
+	 * @see TimeBPlusTree#callsMade(long, long)
+	 */
+	public List<CallRecord> callsMade(long startTime, long endTime) {
+		return read(() -> detach(timeIndex.callsMade(startTime, endTime)));
+	}
+}
@@ -0,0 +1,121 @@
+package au.edu.uq.itee.comp3506.assn2.entities;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Finds the switch with the most or the fewest connections among a range of switches, optionally on a fork-join pool.
+ * The range is split in halves until a part holds at most a grain of switches, each part finds its local winner,
+ * and the winners are reduced pairwise. Switches without a connection are ignored, and ties go to the smallest
+ * switch identifier, so the result does not depend on how the range was split.
+ *
+ * A winner is packed into a long with the count in the high half, so the reduction is a single comparison:
+ * for the most connections the low half is Integer.MAX_VALUE minus the switch, and the largest key wins;
+ * for the fewest it is the switch itself, and the smallest key wins.
+ *
+ * Memory efficiency: O(log(s / g)) tasks at a time, s switches and grain g.
+ *
+ * @author Wayne
+ */
+@SuppressWarnings("serial")
+class ConnectionSearch extends RecursiveTask<Long> {
+	private static final long NONE_MOST = 0;
+	private static final long NONE_FEWEST = Long.MAX_VALUE;
+
+	/**
+	 * The switches of a search, by position in the range.
+	 */
+	interface Counts {
+		/**
+		 * @return the identifier of the switch at position i.
+		 */
+		int switchAt(int i);
+
+		/**
+		 * @return the number of connections of the switch at position i.
+		 */
+		int count(int i);
+	}
+
+	private Counts counts;
+	private boolean most;
+	private int grain;
+	private int from;
+	private int to;
+
+	private ConnectionSearch(Counts counts, boolean most, int grain, int from, int to) {
+		this.counts = counts;
+		this.most = most;
+		this.grain = grain;
+		this.from = from;
+		this.to = to;
+	}
+
+	/**
+	 * Runtime efficiency: O(s c / p + log s), c is the cost of counting one switch and p the parallelism of the pool.
+	 *
+	 * @param counts the switches.
+	 * @param size the number of switches.
+	 * @param pool the pool which counts the parts of the range, or null to count on this thread.
+	 * @param grain the most switches a task counts without splitting.
+	 * @return the switch with the most connections, or 0 if no switch has a connection.
+	 */
+	static int most(Counts counts, int size, ForkJoinPool pool, int grain) {
+		long key = search(new ConnectionSearch(counts, true, grain, 0, size), pool);
+		return key == NONE_MOST ? 0 : Integer.MAX_VALUE - (int) key;
+	}
+
+	/**
+	 * Runtime efficiency: O(s c / p + log s), c is the cost of counting one switch and p the parallelism of the pool.
+	 *
+	 * @param counts the switches.
+	 * @param size the number of switches.
+	 * @param pool the pool which counts the parts of the range, or null to count on this thread.
+	 * @param grain the most switches a task counts without splitting.
+	 * @return the switch with the fewest connections, or 0 if no switch has a connection.
+	 */
+	static int fewest(Counts counts, int size, ForkJoinPool pool, int grain) {
+		long key = search(new ConnectionSearch(counts, false, grain, 0, size), pool);
+		return key == NONE_FEWEST ? 0 : (int) key;
+	}
+
+	private static long search(ConnectionSearch task, ForkJoinPool pool) {
+		if (pool == null || task.to - task.from <= task.grain) {
+			return task.scan();
+		}
+		return pool.invoke(task);
+	}
+
+	@Override
+	protected Long compute() {
+		if (to - from <= grain) {
+			return scan();
+		}
+		int middle = (from + to) >>> 1;
+		ConnectionSearch right = new ConnectionSearch(counts, most, grain, middle, to);
+		right.fork();
+		long left = new ConnectionSearch(counts, most, grain, from, middle).compute();
+		long other = right.join();
+		return most ? Math.max(left, other) : Math.min(left, other);
+	}
+
+	/**
+	 * Find the winner of the range on this thread.
+	 */
+	private long scan() {
+		long best = most ? NONE_MOST : NONE_FEWEST;
+		for (int i = from; i < to; i++) {
+			int count = counts.count(i);
+			if (count == 0) {
+				continue;
+			}
+			int switchID = counts.switchAt(i);
+			if (most) {
+				best = Math.max(best, (long) count << 32 | (Integer.MAX_VALUE - switchID));
+			} else {
+				best = Math.min(best, (long) count << 32 | switchID);
+			}
+		}
+		return best;
+	}
+}
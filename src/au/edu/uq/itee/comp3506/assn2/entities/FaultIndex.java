@@ -0,0 +1,249 @@
+package au.edu.uq.itee.comp3506.assn2.entities;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Index of the faulty calls only. Every record is classified once as it is indexed,
+ * and the faulty ones are kept by dialler, by receiver and by the faulty switch, sorted by time stamp.
+ * Fault lookups therefore cost time proportional to the number of faults, not the number of calls.
+ *
+ * A call is faulty if its connection path is empty, in which case the dialler's switch is at fault,
+ * or if the last switch of its path is not the receiver's switch, in which case that last switch is at fault.
+ *
+ * Memory efficiency: O(f), f is the number of faulty calls.
+ *
+ * @author Wayne
+ */
+public class FaultIndex {
+	public static final int NO_FAULT = -1;
+
+	private CallRecordStore store;
+	private LongRecordIndex byDialler;
+	private LongRecordIndex byReceiver;
+	private LongRecordIndex bySwitch;
+	private int size;
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @param store the store which holds the indexed records.
+	 */
+	public FaultIndex(CallRecordStore store) {
+		this.store = store;
+		byDialler = new LongRecordIndex(store);
+		byReceiver = new LongRecordIndex(store);
+		bySwitch = new LongRecordIndex(store);
+		size = 0;
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @param store the store which holds the record.
+	 * @param id the identifier of the record in the store.
+	 * @return the identifier of the faulty switch of the call, or NO_FAULT if the call was connected.
+	 */
+	public static int faultySwitch(CallRecordStore store, int id) {
+		int length = store.getPathLength(id);
+		if (length == 0) {
+			return store.getDiallerSwitch(id);
+		}
+		int lastConnection = store.getHop(id, length - 1);
+		return lastConnection != store.getReceiverSwitch(id) ? lastConnection : NO_FAULT;
+	}
+
+	/**
+	 * Classify a record and index it if it is faulty.
+	 *
+	 * Runtime efficiency: O(1) amortised if records arrive in time order.
+	 *
+	 * @param id the identifier of the record in the store.
+	 */
+	public void insert(int id) {
+		int faultySwitch = faultySwitch(store, id);
+		if (faultySwitch == NO_FAULT) {
+			return;
+		}
+		byDialler.insert(store.getDialler(id), id);
+		byReceiver.insert(store.getReceiver(id), id);
+		bySwitch.insert(faultySwitch, id);
+		size++;
+	}
+
+	/**
+	 * Classify a record and, if it is faulty, add it without keeping the faults of its keys in time order,
+	 * for bulk loads which call sort once every record has been added.
+	 *
+	 * Runtime efficiency: O(1) amortised.
+	 *
+	 * @param id the identifier of the record in the store.
+	 */
+	public void append(int id) {
+		int faultySwitch = faultySwitch(store, id);
+		if (faultySwitch == NO_FAULT) {
+			return;
+		}
+		byDialler.append(store.getDialler(id), id);
+		byReceiver.append(store.getReceiver(id), id);
+		bySwitch.append(faultySwitch, id);
+		size++;
+	}
+
+	/**
+	 * Sort the faults of every key which were appended out of time order.
+	 *
+	 * Runtime efficiency: O(u log u), u is the number of faults of the unsorted keys.
+	 */
+	public void sort() {
+		byDialler.sort();
+		byReceiver.sort();
+		bySwitch.sort();
+	}
+
+	/**
+	 * Shrink the postings of every key to their size, once no more records will be inserted.
+	 *
+	 * Runtime efficiency: O(f)
+	 */
+	void trim() {
+		byDialler.trim();
+		byReceiver.trim();
+		bySwitch.trim();
+	}
+
+	/**
+	 * Write the faults by dialler, by receiver and by switch to a snapshot.
+	 *
+	 * Runtime efficiency: O(f)
+	 */
+	void write(IndexSnapshot.Output out) throws IOException {
+		out.putInt(size);
+		byDialler.write(out);
+		byReceiver.write(out);
+		bySwitch.write(out);
+	}
+
+	/**
+	 * Read an index written by write.
+	 *
+	 * Runtime efficiency: O(f)
+	 */
+	static FaultIndex read(CallRecordStore store, IndexSnapshot.Input in) throws IOException {
+		FaultIndex index = new FaultIndex(store);
+		index.size = in.getCount();
+		index.byDialler = LongRecordIndex.read(store, in);
+		index.byReceiver = LongRecordIndex.read(store, in);
+		index.bySwitch = LongRecordIndex.read(store, in);
+		return index;
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @return the number of faulty calls.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Identifies switch failures when a dialler tries to make a call.
+	 *
+	 * Runtime efficiency: O(f), f is the number of faulty calls of the dialler.
+	 *
+	 * @param dialler The phone number that initiated the calls.
+	 * @return The list of identifiers of the faulty switches or an empty list if no fault was found.
+	 */
+	public List<Integer> findConnectionFault(long dialler) {
+		return byDialler.findFault(dialler);
+	}
+
+	/**
+	 * Identifies switch failures when a dialler tries to make a call over a specified period of time.
+	 *
+	 * Runtime efficiency: O(log f + r), f is the number of faulty calls of the dialler and r the number in the period.
+	 *
+	 * @param dialler The phone number that initiated the calls.
+	 * @param startTime Start of time period, in milliseconds since the epoch.
+	 * @param endTime End of time period, in milliseconds since the epoch.
+	 * @return The list of identifiers of the faulty switches;
+	 *         or an empty list if no fault was found between start and end time.
+	 */
+	public List<Integer> findConnectionFault(long dialler, long startTime, long endTime) {
+		return byDialler.findFault(dialler, startTime, endTime);
+	}
+
+	/**
+	 * Identifies switch failures when each of a batch of diallers tries to make a call over a specified period of time.
+	 *
+	 * Runtime efficiency: O(k log k + k log f + r), k diallers, f faulty calls of a dialler, r faulty calls in the period.
+	 *
+	 * @param diallers The phone numbers that initiated the calls.
+	 * @param startTime Start of time period, in milliseconds since the epoch.
+	 * @param endTime End of time period, in milliseconds since the epoch.
+	 * @param pool the pool which looks up the diallers, or null to look them up on this thread.
+	 * @return The identifiers of the faulty switches of each dialler between start and end time.
+	 */
+	public CallBatch findConnectionFaults(long[] diallers, long startTime, long endTime, ForkJoinPool pool) {
+		return byDialler.findBatch(diallers, startTime, endTime, LongRecordIndex.FAULTY_SWITCH, pool);
+	}
+
+	/**
+	 * Identifies switch failures when a receiver should have received a call.
+	 *
+	 * Runtime efficiency: O(f), f is the number of faulty calls to the receiver.
+	 *
+	 * @param receiver The phone number that should have received the calls.
+	 * @return The list of identifiers of the faulty switches or an empty list if no fault was found.
+	 */
+	public List<Integer> findReceivingFault(long receiver) {
+		return byReceiver.findFault(receiver);
+	}
+
+	/**
+	 * Identifies switch failures when a receiver should have received a call over a specified period of time.
+	 *
+	 * Runtime efficiency: O(log f + r), f is the number of faulty calls to the receiver and r the number in the period.
+	 *
+	 * @param receiver The phone number that should have received the calls.
+	 * @param startTime Start of time period, in milliseconds since the epoch.
+	 * @param endTime End of time period, in milliseconds since the epoch.
+	 * @return The list of identifiers of the faulty switches;
+	 *         or an empty list if no fault was found between start and end time.
+	 */
+	public List<Integer> findReceivingFault(long receiver, long startTime, long endTime) {
+		return byReceiver.findFault(receiver, startTime, endTime);
+	}
+
+	/**
+	 * Identifies switch failures when each of a batch of receivers should have received a call
+	 * over a specified period of time.
+	 *
+	 * Runtime efficiency: O(k log k + k log f + r), k receivers, f faulty calls to a receiver, r faulty calls in the period.
+	 *
+	 * @param receivers The phone numbers that should have received the calls.
+	 * @param startTime Start of time period, in milliseconds since the epoch.
+	 * @param endTime End of time period, in milliseconds since the epoch.
+	 * @param pool the pool which looks up the receivers, or null to look them up on this thread.
+	 * @return The identifiers of the faulty switches of each receiver between start and end time.
+	 */
+	public CallBatch findReceivingFaults(long[] receivers, long startTime, long endTime, ForkJoinPool pool) {
+		return byReceiver.findBatch(receivers, startTime, endTime, LongRecordIndex.FAULTY_SWITCH, pool);
+	}
+
+	/**
+	 * Find every call which failed at a switch over a specified period of time.
+	 *
+	 * Runtime efficiency: O(log f + r), f is the number of faulty calls at the switch and r the number in the period.
+	 *
+	 * @param switchID The identifier of the switch.
+	 * @param startTime Start of time period, in milliseconds since the epoch.
+	 * @param endTime End of time period, in milliseconds since the epoch.
+	 * @return List of the calls which failed at the switch between start and end time, in time order.
+	 */
+	public List<CallRecord> findFaultsAtSwitch(int switchID, long startTime, long endTime) {
+		return bySwitch.findRecords(switchID, startTime, endTime);
+	}
+}
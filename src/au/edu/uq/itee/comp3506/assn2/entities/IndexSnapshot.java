@@ -0,0 +1,425 @@
+package au.edu.uq.itee.comp3506.assn2.entities;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot of the switches, the record store and every index of a ReadData,
+ * so a restarted process can load them instead of parsing the text files again.
+ *
+ * The file starts with a header: a magic number, the format version, the length and modification time
+ * of every source file the snapshot was built from, and a table giving the offset, length and CRC-32 of each section.
+ * The header ends with its own CRC-32. A snapshot is rejected if any of these does not match,
+ * so a snapshot of older source files, of another version or with damaged bytes is never loaded.
+ * The sections are read through memory mapped windows. All values are big-endian.
+ *
+ * Every index is stored, so loading copies the sections into place without indexing any record again.
+ *
+ * @author Wayne
+ */
+public class IndexSnapshot {
+	static final int MAGIC = 0x43524958; // "CRIX"
+	static final int VERSION = 2;
+
+	static final int SWITCHES = 1;
+	static final int RECORDS = 2;
+	static final int TIME = 3;
+	static final int DIAL = 4;
+	static final int RECEIVE = 5;
+	static final int CONNECT = 6;
+	static final int CUBE = 7;
+	static final int FAULT = 8;
+	private static final int[] SECTIONS = {SWITCHES, RECORDS, TIME, DIAL, RECEIVE, CONNECT, CUBE, FAULT};
+
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final long WINDOW_SIZE = 1L << 30; // Largest part of a section mapped at once.
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @return the size of the header in bytes.
+	 */
+	private static int headerSize(int sources) {
+		return 4 + 4 + 4 + sources * 16 + 4 + SECTIONS.length * 28 + 8;
+	}
+
+	/**
+	 * Write a snapshot of the records and indexes of a reader. The snapshot is written to a temporary file
+	 * which then replaces the target, so a failed write never leaves a partial snapshot behind.
+	 *
+	 * Runtime efficiency: O(n + h + k + c), h is the total length of the connection paths, k the number of keys
+	 * and c the size of the connection cube.
+	 *
+	 * @param snapshot the file to be written.
+	 * @param reader a reader whose records have been read.
+	 * @param sources the files the records were read from.
+	 * @throws IOException if the snapshot could not be written.
+	 */
+	public static void write(Path snapshot, ReadData reader, Path... sources) throws IOException {
+		Path temporary = Paths.get(snapshot.toString() + ".tmp");
+		long[] offsets = new long[SECTIONS.length];
+		long[] lengths = new long[SECTIONS.length];
+		long[] checksums = new long[SECTIONS.length];
+
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			Output out = new Output(channel, headerSize(sources.length));
+			for (int i = 0; i < SECTIONS.length; i++) {
+				offsets[i] = out.start();
+				switch (SECTIONS[i]) {
+				case SWITCHES:
+					List<Integer> switches = reader.switchesTree.keys();
+					out.putInt(switches.size());
+					for (int switchID: switches) {
+						out.putInt(switchID);
+					}
+					break;
+				case RECORDS:
+					reader.store.write(out);
+					break;
+				case TIME:
+					reader.timeIndex.write(out);
+					break;
+				case DIAL:
+					reader.dialIndex.write(out);
+					break;
+				case RECEIVE:
+					reader.receiveIndex.write(out);
+					break;
+				case CONNECT:
+					reader.connectCounter.write(out);
+					break;
+				case CUBE:
+					reader.connectCube.write(out);
+					break;
+				case FAULT:
+					reader.faultIndex.write(out);
+					break;
+				}
+				lengths[i] = out.finish();
+				checksums[i] = out.checksum();
+			}
+
+			ByteBuffer header = ByteBuffer.allocate(headerSize(sources.length));
+			header.putInt(MAGIC);
+			header.putInt(VERSION);
+			header.putInt(sources.length);
+			for (Path source: sources) {
+				header.putLong(Files.size(source));
+				header.putLong(Files.getLastModifiedTime(source).toMillis());
+			}
+			header.putInt(SECTIONS.length);
+			for (int i = 0; i < SECTIONS.length; i++) {
+				header.putInt(SECTIONS[i]);
+				header.putLong(offsets[i]);
+				header.putLong(lengths[i]);
+				header.putLong(checksums[i]);
+			}
+			CRC32 crc = new CRC32();
+			crc.update(header.array(), 0, header.position());
+			header.putLong(crc.getValue());
+			header.flip();
+			while (header.hasRemaining()) {
+				channel.write(header, header.position()); // The header is at the start of the file.
+			}
+			channel.force(true);
+		}
+		Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Load a snapshot into a reader, replacing its records and indexes.
+	 * The reader is only changed once the whole snapshot has been read.
+	 *
+	 * Runtime efficiency: O(n + h + k + c + s log s), s is the number of switches.
+	 *
+	 * @param snapshot the file to be read.
+	 * @param reader the reader to be filled.
+	 * @param sources the files the records would be read from, which must be unchanged since the snapshot was written.
+	 * @throws IOException if the snapshot is missing, stale, of another version or damaged.
+	 */
+	public static void read(Path snapshot, ReadData reader, Path... sources) throws IOException {
+		try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+			int headerSize = headerSize(sources.length);
+			if (channel.size() < headerSize) {
+				throw new IOException("Snapshot is truncated.");
+			}
+			ByteBuffer header = ByteBuffer.allocate(headerSize);
+			while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+				// Read until the header is full.
+			}
+			header.flip();
+			if (header.getInt() != MAGIC) {
+				throw new IOException("Not a snapshot.");
+			}
+			if (header.getInt() != VERSION) {
+				throw new IOException("Snapshot has another version.");
+			}
+			if (header.getInt() != sources.length) {
+				throw new IOException("Snapshot was built from other files.");
+			}
+			CRC32 crc = new CRC32();
+			crc.update(header.array(), 0, headerSize - 8);
+			if (header.getLong(headerSize - 8) != crc.getValue()) {
+				throw new IOException("Snapshot header is damaged.");
+			}
+			for (Path source: sources) {
+				if (header.getLong() != Files.size(source)
+						|| header.getLong() != Files.getLastModifiedTime(source).toMillis()) {
+					throw new IOException("Snapshot is stale.");
+				}
+			}
+			if (header.getInt() != SECTIONS.length) {
+				throw new IOException("Snapshot has other sections.");
+			}
+
+			SwitchAVLTree<Integer> switchesTree = null;
+			CallRecordStore store = null;
+			TimeBPlusTree timeIndex = null;
+			LongRecordIndex dialIndex = null;
+			LongRecordIndex receiveIndex = null;
+			SwitchConnectionCounter connectCounter = null;
+			SwitchConnectionCube connectCube = null;
+			FaultIndex faultIndex = null;
+			for (int i = 0; i < SECTIONS.length; i++) {
+				int kind = header.getInt();
+				long offset = header.getLong();
+				long length = header.getLong();
+				long checksum = header.getLong();
+				if (kind != SECTIONS[i] || offset < headerSize || length < 0 || offset + length > channel.size()) {
+					throw new IOException("Snapshot section table is damaged.");
+				}
+				if (checksum(channel, offset, length) != checksum) {
+					throw new IOException("Snapshot section " + kind + " is damaged.");
+				}
+				Input in = new Input(channel, offset, length);
+				switch (kind) {
+				case SWITCHES:
+					switchesTree = new SwitchAVLTree<Integer>();
+					int switches = in.getCount();
+					for (int j = 0; j < switches; j++) {
+						switchesTree.insert(in.getInt());
+					}
+					break;
+				case RECORDS:
+					store = CallRecordStore.read(in);
+					break;
+				case TIME:
+					timeIndex = TimeBPlusTree.read(store, in);
+					break;
+				case DIAL:
+					dialIndex = LongRecordIndex.read(store, in);
+					break;
+				case RECEIVE:
+					receiveIndex = LongRecordIndex.read(store, in);
+					break;
+				case CONNECT:
+					connectCounter = SwitchConnectionCounter.read(in);
+					break;
+				case CUBE:
+					connectCube = SwitchConnectionCube.read(store, timeIndex, in);
+					break;
+				case FAULT:
+					faultIndex = FaultIndex.read(store, in);
+					break;
+				}
+			}
+
+			reader.switchesTree = switchesTree;
+			reader.switchRegistry = SwitchRegistry.of(switchesTree);
+			reader.store = store;
+			reader.timeIndex = timeIndex;
+			reader.dialIndex = dialIndex;
+			reader.receiveIndex = receiveIndex;
+			reader.connectCounter = connectCounter;
+			reader.connectCube = connectCube;
+			reader.faultIndex = faultIndex;
+		}
+	}
+
+	/**
+	 * @return the record identifier, checked to be in the store.
+	 */
+	static int checkId(CallRecordStore store, int id) throws IOException {
+		if (id < 0 || id >= store.size()) {
+			throw new IOException("Snapshot record identifier is out of range.");
+		}
+		return id;
+	}
+
+	/**
+	 * Runtime efficiency: O(l), l is the length of the section.
+	 *
+	 * @return the CRC-32 of a section.
+	 */
+	private static long checksum(FileChannel channel, long offset, long length) throws IOException {
+		CRC32 crc = new CRC32();
+		for (long at = offset; at < offset + length; at += WINDOW_SIZE) {
+			crc.update(channel.map(FileChannel.MapMode.READ_ONLY, at, Math.min(WINDOW_SIZE, offset + length - at)));
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Writes the sections through a buffer, keeping the length and CRC-32 of the current section.
+	 */
+	static final class Output {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		private final CRC32 crc = new CRC32();
+		private long position; // Position in the file of the start of the buffer.
+		private long start; // Position in the file of the start of the section.
+
+		Output(FileChannel channel, long position) {
+			this.channel = channel;
+			this.position = position;
+		}
+
+		/**
+		 * Start a section.
+		 *
+		 * @return the position of the section in the file.
+		 */
+		long start() {
+			crc.reset();
+			start = position;
+			return start;
+		}
+
+		/**
+		 * Finish a section.
+		 *
+		 * @return the length of the section.
+		 */
+		long finish() throws IOException {
+			flush();
+			return position - start;
+		}
+
+		/**
+		 * @return the CRC-32 of the finished section.
+		 */
+		long checksum() {
+			return crc.getValue();
+		}
+
+		private void flush() throws IOException {
+			buffer.flip();
+			crc.update(buffer.duplicate());
+			while (buffer.hasRemaining()) {
+				position += channel.write(buffer, position);
+			}
+			buffer.clear();
+		}
+
+		void putInt(int value) throws IOException {
+			if (buffer.remaining() < 4) {
+				flush();
+			}
+			buffer.putInt(value);
+		}
+
+		void putLong(long value) throws IOException {
+			if (buffer.remaining() < 8) {
+				flush();
+			}
+			buffer.putLong(value);
+		}
+
+		void putInts(int[] values, int from, int length) throws IOException {
+			for (int i = from; i < from + length; i++) {
+				putInt(values[i]);
+			}
+		}
+
+		void putLongs(long[] values, int from, int length) throws IOException {
+			for (int i = from; i < from + length; i++) {
+				putLong(values[i]);
+			}
+		}
+	}
+
+	/**
+	 * Reads a section through memory mapped windows of at most WINDOW_SIZE bytes.
+	 */
+	static final class Input {
+		private final FileChannel channel;
+		private final long end;
+		private long position; // Position in the file of the start of the window.
+		private MappedByteBuffer window;
+
+		Input(FileChannel channel, long offset, long length) throws IOException {
+			this.channel = channel;
+			end = offset + length;
+			position = offset;
+			window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(WINDOW_SIZE, length));
+		}
+
+		/**
+		 * Make sure at least n bytes can be read from the window, mapping the next window if needed.
+		 */
+		private void ensure(int n) throws IOException {
+			if (window.remaining() >= n) {
+				return;
+			}
+			long at = position + window.position();
+			if (end - at < n) {
+				throw new IOException("Snapshot section is truncated.");
+			}
+			window = channel.map(FileChannel.MapMode.READ_ONLY, at, Math.min(WINDOW_SIZE, end - at));
+			position = at;
+		}
+
+		int getInt() throws IOException {
+			ensure(4);
+			return window.getInt();
+		}
+
+		long getLong() throws IOException {
+			ensure(8);
+			return window.getLong();
+		}
+
+		/**
+		 * @return a count, checked to be no more than the number of ints left in the section.
+		 */
+		int getCount() throws IOException {
+			int count = getInt();
+			if (count < 0 || count > (end - position - window.position()) / 4) {
+				throw new IOException("Snapshot count is out of range.");
+			}
+			return count;
+		}
+
+		void getInts(int[] values, int from, int length) throws IOException {
+			while (length > 0) {
+				ensure(4);
+				int n = Math.min(length, window.remaining() / 4);
+				window.asIntBuffer().get(values, from, n);
+				window.position(window.position() + n * 4);
+				from += n;
+				length -= n;
+			}
+		}
+
+		void getLongs(long[] values, int from, int length) throws IOException {
+			while (length > 0) {
+				ensure(8);
+				int n = Math.min(length, window.remaining() / 8);
+				window.asLongBuffer().get(values, from, n);
+				window.position(window.position() + n * 8);
+				from += n;
+				length -= n;
+			}
+		}
+	}
+}
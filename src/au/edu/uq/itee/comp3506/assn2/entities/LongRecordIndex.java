@@ -0,0 +1,697 @@
+package au.edu.uq.itee.comp3506.assn2.entities;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * An open addressing hash index from a long key, such as a phone number, to the identifiers of its records
+ * in a CallRecordStore. Each key keeps its record identifiers in one int array,
+ * so a lookup is a single probe sequence followed by a scan of contiguous memory, without boxing.
+ * The identifiers of a key are kept sorted by time stamp, with the time stamps packed in a parallel long array,
+ * so a lookup over a period binary searches to its start and stops at its end.
+ * Records with the same time stamp are kept in the order they were inserted.
+ * Bulk loads, whose records arrive in no particular time order, append each record unsorted and sort every key
+ * once at the end with sort; a key still unsorted is sorted on its first lookup.
+ * Lookups are only safe on several threads at once when no key is left unsorted.
+ *
+ * Many keys can be looked up in one batch, which walks the table in slot order and can be split across a pool.
+ *
+ * Memory efficiency: O(k + n), k is the number of keys and n the number of records.
+ *
+ * @author Wayne
+ */
+public class LongRecordIndex {
+	public static final int RECEIVER = 0;
+	public static final int DIALLER = 1;
+	public static final int FAULTY_SWITCH = 2;
+	private static final int INITIAL_CAPACITY = 16; // Must be a power of two.
+	private static final int INITIAL_POSTINGS = 2;
+	private static final int BATCH_GRAIN = 4096; // Keys looked up by one task of a parallel batch.
+	private static final int SORT_CAPACITY = 1 << 16; // Smaller tables stay in cache, so batches are not sorted.
+
+	private CallRecordStore store;
+	private long[] keys;
+	private int[][] postings; // A null entry marks an empty slot.
+	private long[][] times; // Time stamp of each identifier in postings.
+	private int[] sizes; // Number of identifiers used in each postings array.
+	private boolean[] unsorted; // Whether the postings of each slot were appended out of time order.
+	private int unsortedKeys;
+	private int count; // Number of keys.
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @param store the store which holds the indexed records.
+	 */
+	public LongRecordIndex(CallRecordStore store) {
+		this.store = store;
+		keys = new long[INITIAL_CAPACITY];
+		postings = new int[INITIAL_CAPACITY][];
+		times = new long[INITIAL_CAPACITY][];
+		sizes = new int[INITIAL_CAPACITY];
+		unsorted = new boolean[INITIAL_CAPACITY];
+		unsortedKeys = 0;
+		count = 0;
+	}
+
+	private static int hash(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+
+	/**
+	 * @return the slot which holds the key, or the empty slot where it would be inserted.
+	 */
+	private int slot(long key) {
+		int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		while (postings[i] != null && keys[i] != key) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	/**
+	 * Add a record to the key, keeping the records of the key in time order.
+	 *
+	 * Runtime efficiency: O(1) amortised if records arrive in time order,
+	 * otherwise O(m), m is the number of records of the key.
+	 *
+	 * @param key the key of the record.
+	 * @param id the identifier of the record in the store.
+	 */
+	public void insert(long key, int id) {
+		int i = reserve(key);
+		if (unsorted[i]) {
+			sortPostings(i);
+		}
+		long time = store.getTimeStamp(id);
+		int[] ids = postings[i];
+		long[] stamps = times[i];
+		int size = sizes[i];
+		int j = size;
+		if (size > 0 && stamps[size - 1] > time) {
+			j = upperBound(stamps, size, time);
+			System.arraycopy(ids, j, ids, j + 1, size - j);
+			System.arraycopy(stamps, j, stamps, j + 1, size - j);
+		}
+		ids[j] = id;
+		stamps[j] = time;
+		sizes[i]++;
+	}
+
+	/**
+	 * Add a record to the end of the key's records without keeping them in time order,
+	 * for bulk loads which call sort once every record has been added.
+	 *
+	 * Runtime efficiency: O(1) amortised.
+	 *
+	 * @param key the key of the record.
+	 * @param id the identifier of the record in the store.
+	 */
+	public void append(long key, int id) {
+		int i = reserve(key);
+		long time = store.getTimeStamp(id);
+		int size = sizes[i];
+		if (size > 0 && !unsorted[i] && times[i][size - 1] > time) {
+			unsorted[i] = true;
+			unsortedKeys++;
+		}
+		postings[i][size] = id;
+		times[i][size] = time;
+		sizes[i]++;
+	}
+
+	/**
+	 * Find the slot of a key, adding the key if it is new, with room for one more record.
+	 *
+	 * Runtime efficiency: O(1) amortised.
+	 */
+	private int reserve(long key) {
+		int i = slot(key);
+		if (postings[i] == null) {
+			if ((count + 1) * 2 > keys.length) {
+				rehash();
+				i = slot(key);
+			}
+			keys[i] = key;
+			postings[i] = new int[INITIAL_POSTINGS];
+			times[i] = new long[INITIAL_POSTINGS];
+			count++;
+		} else if (sizes[i] == postings[i].length) {
+			postings[i] = Arrays.copyOf(postings[i], sizes[i] * 2);
+			times[i] = Arrays.copyOf(times[i], sizes[i] * 2);
+		}
+		return i;
+	}
+
+	/**
+	 * Sort the records of every key which were appended out of time order.
+	 *
+	 * Runtime efficiency: O(u log u), u is the number of records of the unsorted keys.
+	 */
+	public void sort() {
+		for (int i = 0; unsortedKeys > 0 && i < keys.length; i++) {
+			if (unsorted[i]) {
+				sortPostings(i);
+			}
+		}
+	}
+
+	/**
+	 * Sort the records of a slot by time stamp, keeping records with the same time stamp in the order they were added.
+	 *
+	 * Runtime efficiency: O(m log m), m is the number of records of the key.
+	 */
+	private void sortPostings(int i) {
+		int size = sizes[i];
+		int[] ids = postings[i];
+		long[] stamps = times[i];
+		long min = Long.MAX_VALUE;
+		long max = Long.MIN_VALUE;
+		for (int j = 0; j < size; j++) {
+			min = Math.min(min, stamps[j]);
+			max = Math.max(max, stamps[j]);
+		}
+		int[] order = new int[size];
+		int positionBits = 32 - Integer.numberOfLeadingZeros(Math.max(size - 1, 1));
+		if (max - min >= 0 && max - min < 1L << (63 - positionBits)) {
+			// Pack the time since the earliest record above the position, so a primitive sort is stable.
+			long[] packed = new long[size];
+			for (int j = 0; j < size; j++) {
+				packed[j] = (stamps[j] - min) << positionBits | j;
+			}
+			Arrays.sort(packed);
+			long mask = (1L << positionBits) - 1;
+			for (int j = 0; j < size; j++) {
+				order[j] = (int) (packed[j] & mask);
+			}
+		} else {
+			// Time stamps too far apart to pack; sorting objects is stable.
+			Integer[] boxed = new Integer[size];
+			for (int j = 0; j < size; j++) {
+				boxed[j] = j;
+			}
+			Arrays.sort(boxed, (x, y) -> Long.compare(stamps[x], stamps[y]));
+			for (int j = 0; j < size; j++) {
+				order[j] = boxed[j];
+			}
+		}
+		int[] sortedIds = new int[ids.length];
+		long[] sortedStamps = new long[stamps.length];
+		for (int j = 0; j < size; j++) {
+			sortedIds[j] = ids[order[j]];
+			sortedStamps[j] = stamps[order[j]];
+		}
+		postings[i] = sortedIds;
+		times[i] = sortedStamps;
+		unsorted[i] = false;
+		unsortedKeys--;
+	}
+
+	/**
+	 * @return the number of the first size time stamps which are smaller than time.
+	 */
+	private static int lowerBound(long[] stamps, int size, long time) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (stamps[mid] < time) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return the number of the first size time stamps which are smaller than or equal to time.
+	 */
+	private static int upperBound(long[] stamps, int size, long time) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (stamps[mid] <= time) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private void rehash() {
+		long[] oldKeys = keys;
+		int[][] oldPostings = postings;
+		long[][] oldTimes = times;
+		int[] oldSizes = sizes;
+		boolean[] oldUnsorted = unsorted;
+		keys = new long[oldKeys.length * 2];
+		postings = new int[oldKeys.length * 2][];
+		times = new long[oldKeys.length * 2][];
+		sizes = new int[oldKeys.length * 2];
+		unsorted = new boolean[oldKeys.length * 2];
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldPostings[j] != null) {
+				int i = slot(oldKeys[j]);
+				keys[i] = oldKeys[j];
+				postings[i] = oldPostings[j];
+				times[i] = oldTimes[j];
+				sizes[i] = oldSizes[j];
+				unsorted[i] = oldUnsorted[j];
+			}
+		}
+	}
+
+	/**
+	 * Shrink the postings of every key to their size, once no more records will be inserted.
+	 *
+	 * Runtime efficiency: O(k + n)
+	 */
+	void trim() {
+		sort();
+		for (int i = 0; i < keys.length; i++) {
+			if (postings[i] != null && sizes[i] < postings[i].length) {
+				postings[i] = Arrays.copyOf(postings[i], sizes[i]);
+				times[i] = Arrays.copyOf(times[i], sizes[i]);
+			}
+		}
+	}
+
+	/**
+	 * Write the keys and their record identifiers to a snapshot.
+	 *
+	 * Runtime efficiency: O(k + n)
+	 */
+	void write(IndexSnapshot.Output out) throws IOException {
+		sort();
+		out.putInt(count);
+		for (int i = 0; i < keys.length; i++) {
+			if (postings[i] != null) {
+				out.putLong(keys[i]);
+				out.putInt(sizes[i]);
+				out.putInts(postings[i], 0, sizes[i]);
+			}
+		}
+	}
+
+	/**
+	 * Read an index written by write.
+	 *
+	 * Runtime efficiency: O(k + n)
+	 */
+	static LongRecordIndex read(CallRecordStore store, IndexSnapshot.Input in) throws IOException {
+		LongRecordIndex index = new LongRecordIndex(store);
+		int count = in.getCount();
+		for (int j = 0; j < count; j++) {
+			long key = in.getLong();
+			int size = in.getCount();
+			int i = index.slot(key);
+			if (index.postings[i] != null || size == 0) {
+				throw new IOException("Snapshot index is damaged.");
+			}
+			if ((index.count + 1) * 2 > index.keys.length) {
+				index.rehash();
+				i = index.slot(key);
+			}
+			int[] ids = new int[size];
+			long[] stamps = new long[size];
+			in.getInts(ids, 0, size);
+			for (int k = 0; k < size; k++) {
+				stamps[k] = store.getTimeStamp(IndexSnapshot.checkId(store, ids[k]));
+			}
+			index.keys[i] = key;
+			index.postings[i] = ids;
+			index.times[i] = stamps;
+			index.sizes[i] = size;
+			index.count++;
+		}
+		return index;
+	}
+
+	/**
+	 * Record the time of a lookup since begin and the number of records of its key.
+	 */
+	private static void measure(long begin, int length) {
+		Metrics.POSTING_QUERY.record(System.nanoTime() - begin);
+		Metrics.POSTING_LENGTH.record(length);
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @return the number of distinct keys.
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @param key the key to be searched.
+	 * @return the number of records of the key.
+	 */
+	public int count(long key) {
+		int i = slot(key);
+		return postings[i] == null ? 0 : sizes[i];
+	}
+
+	/**
+	 * Find all receiving phone numbers called from a single dialing phone number.
+	 *
+	 * Runtime efficiency: O(m), m is the number of records of the dialler.
+	 *
+	 * @param dialler The phone number that initiated the calls.
+	 * @return List of all the phone numbers called by dialer.
+	 *         The list will contain duplicates of the receiver if the dialer called the receiver multiple times.
+	 */
+	public List<Long> findReceiver(long dialler) {
+		return findReceiver(dialler, Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Find all receiving phone numbers called from a single dialing phone number over a specified period of time.
+	 *
+	 * Runtime efficiency: O(log m + r), m is the number of records of the dialler and r the number in the period.
+	 *
+	 * @param dialler The phone number that initiated the calls.
+	 * @param startTime Start of time period, in milliseconds since the epoch.
+	 * @param endTime End of time period, in milliseconds since the epoch.
+	 * @return List of all the phone numbers called by dialer between start and end time.
+	 *         The list will contain duplicates of the receiver if the dialer called the receiver multiple times.
+	 */
+	public List<Long> findReceiver(long dialler, long startTime, long endTime) {
+		long begin = Metrics.ENABLED ? System.nanoTime() : 0;
+		int i = slot(dialler);
+		if (postings[i] == null) {
+			if (Metrics.ENABLED) {
+				measure(begin, 0);
+			}
+			return new ArrayList<Long>(0);
+		}
+		if (unsorted[i]) {
+			sortPostings(i);
+		}
+		int[] ids = postings[i];
+		int from = lowerBound(times[i], sizes[i], startTime);
+		int to = upperBound(times[i], sizes[i], endTime);
+		List<Long> receiver = new ArrayList<Long>(Math.max(to - from, 0));
+		for (int j = from; j < to; j++) {
+			receiver.add(store.getReceiver(ids[j]));
+		}
+		if (Metrics.ENABLED) {
+			measure(begin, sizes[i]);
+		}
+		return receiver;
+	}
+
+	/**
+	 * Find all phone numbers that dialed a single receiving phone number.
+	 *
+	 * Runtime efficiency: O(m), m is the number of records of the receiver.
+	 *
+	 * @param receiver The phone number that received the calls.
+	 * @return List of all the phone numbers that called the receiver.
+	 *         The list will contain duplicates of the caller if they called the receiver multiple times.
+	 */
+	public List<Long> findDialler(long receiver) {
+		return findDialler(receiver, Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Find all phone numbers that dialed a single receiving phone number over a specified period of time.
+	 *
+	 * Runtime efficiency: O(log m + r), m is the number of records of the receiver and r the number in the period.
+	 *
+	 * @param receiver The phone number that received the calls.
+	 * @param startTime Start of time period, in milliseconds since the epoch.
+	 * @param endTime End of time period, in milliseconds since the epoch.
+	 * @return List of all the phone numbers that called the receiver between start and end time.
+	 *         The list will contain duplicates of the caller if they called the receiver multiple times.
+	 */
+	public List<Long> findDialler(long receiver, long startTime, long endTime) {
+		long begin = Metrics.ENABLED ? System.nanoTime() : 0;
+		int i = slot(receiver);
+		if (postings[i] == null) {
+			if (Metrics.ENABLED) {
+				measure(begin, 0);
+			}
+			return new ArrayList<Long>(0);
+		}
+		if (unsorted[i]) {
+			sortPostings(i);
+		}
+		int[] ids = postings[i];
+		int from = lowerBound(times[i], sizes[i], startTime);
+		int to = upperBound(times[i], sizes[i], endTime);
+		List<Long> dialler = new ArrayList<Long>(Math.max(to - from, 0));
+		for (int j = from; j < to; j++) {
+			dialler.add(store.getDialler(ids[j]));
+		}
+		if (Metrics.ENABLED) {
+			measure(begin, sizes[i]);
+		}
+		return dialler;
+	}
+
+	/**
+	 * Determine the faulty switch of every connection attempt of the key.
+	 * In the dial index this is a dialler's connection faults, in the receive index a receiver's receiving faults.
+	 *
+	 * Runtime efficiency: O(m), m is the number of records of the key.
+	 *
+	 * @param key The phone number of the calls.
+	 * @return The list of identifiers of the faulty switches or an empty list if no fault was found.
+	 */
+	public List<Integer> findFault(long key) {
+		return findFault(key, Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Determine the faulty switch of every connection attempt of the key over a specified period of time.
+	 *
+	 * Runtime efficiency: O(log m + r), m is the number of records of the key and r the number in the period.
+	 *
+	 * @param key The phone number of the calls.
+	 * @param startTime Start of time period, in milliseconds since the epoch.
+	 * @param endTime End of time period, in milliseconds since the epoch.
+	 * @return The list of identifiers of the faulty switches;
+	 *         or an empty list if no fault was found between start and end time.
+	 */
+	public List<Integer> findFault(long key, long startTime, long endTime) {
+		long begin = Metrics.ENABLED ? System.nanoTime() : 0;
+		int i = slot(key);
+		List<Integer> faults = new ArrayList<Integer>();
+		if (postings[i] == null) {
+			if (Metrics.ENABLED) {
+				measure(begin, 0);
+			}
+			return faults;
+		}
+		if (unsorted[i]) {
+			sortPostings(i);
+		}
+		int[] ids = postings[i];
+		int to = upperBound(times[i], sizes[i], endTime);
+		for (int j = lowerBound(times[i], sizes[i], startTime); j < to; j++) {
+			int faultySwitch = FaultIndex.faultySwitch(store, ids[j]);
+			if (faultySwitch != FaultIndex.NO_FAULT) {
+				faults.add(faultySwitch);
+			}
+		}
+		if (Metrics.ENABLED) {
+			measure(begin, sizes[i]);
+		}
+		return faults;
+	}
+
+	/**
+	 * Find the records of the key over a specified period of time.
+	 *
+	 * Runtime efficiency: O(log m + r), m is the number of records of the key and r the number in the period.
+	 *
+	 * @param key the key to be searched.
+	 * @param startTime Start of time period, in milliseconds since the epoch.
+	 * @param endTime End of time period, in milliseconds since the epoch.
+	 * @return List of the records of the key between start and end time, in time order.
+	 */
+	public List<CallRecord> findRecords(long key, long startTime, long endTime) {
+		long begin = Metrics.ENABLED ? System.nanoTime() : 0;
+		int i = slot(key);
+		if (postings[i] == null) {
+			if (Metrics.ENABLED) {
+				measure(begin, 0);
+			}
+			return new ArrayList<CallRecord>(0);
+		}
+		if (unsorted[i]) {
+			sortPostings(i);
+		}
+		int[] ids = postings[i];
+		int from = lowerBound(times[i], sizes[i], startTime);
+		int to = upperBound(times[i], sizes[i], endTime);
+		List<CallRecord> records = new ArrayList<CallRecord>(Math.max(to - from, 0));
+		for (int j = from; j < to; j++) {
+			records.add(store.get(ids[j]));
+		}
+		if (Metrics.ENABLED) {
+			measure(begin, sizes[i]);
+		}
+		return records;
+	}
+
+	/**
+	 * Look up every key of a batch over a specified period of time. The keys are sorted by the slot
+	 * they hash to and looked up in that order, so the table is read from front to back rather than at random;
+	 * tables small enough to stay in cache are read in the order of the batch instead.
+	 * The records of each key are read once to count them and once to copy them out.
+	 * With a pool, the sorted keys are split into ranges which are looked up in parallel.
+	 *
+	 * Runtime efficiency: O(k log k + k log m + r), k keys, m records of a key and r records in the period;
+	 * the lookups and copying are divided by the parallelism of the pool.
+	 *
+	 * @param batch the keys, which may repeat.
+	 * @param startTime Start of time period, in milliseconds since the epoch.
+	 * @param endTime End of time period, in milliseconds since the epoch.
+	 * @param field the value of each record: RECEIVER, DIALLER or FAULTY_SWITCH; records without a fault
+	 *              are left out for FAULTY_SWITCH.
+	 * @param pool the pool which looks up the keys, or null to look them up on this thread.
+	 * @return the values of the records of each key between start and end time, in the order of the keys.
+	 */
+	public CallBatch findBatch(long[] batch, long startTime, long endTime, int field, ForkJoinPool pool) {
+		if (field < RECEIVER || field > FAULTY_SWITCH) {
+			throw new IllegalArgumentException("Unknown field " + field + ".");
+		}
+		sort();
+		int n = batch.length;
+		int mask = keys.length - 1;
+		boolean sort = keys.length > SORT_CAPACITY;
+		long[] order = new long[n]; // Home slot in the high half, position in the batch in the low half.
+		for (int p = 0; p < n; p++) {
+			order[p] = sort ? (long) (hash(batch[p]) & mask) << 32 | p : p;
+		}
+		if (sort && pool == null) {
+			Arrays.sort(order);
+		} else if (sort) {
+			Arrays.parallelSort(order);
+		}
+
+		int[] slots = new int[n];
+		int[] from = new int[n];
+		int[] offsets = new int[n + 1];
+		forEachKey(pool, n, (lo, hi) -> {
+			for (int k = lo; k < hi; k++) {
+				int p = (int) order[k];
+				int i = slot(batch[p]);
+				slots[p] = i;
+				if (postings[i] == null) {
+					continue;
+				}
+				from[p] = lowerBound(times[i], sizes[i], startTime);
+				int to = upperBound(times[i], sizes[i], endTime);
+				offsets[p] = field == FAULTY_SWITCH ? countFaults(postings[i], from[p], to) : Math.max(to - from[p], 0);
+			}
+		});
+
+		long total = 0;
+		for (int p = 0; p < n; p++) {
+			int count = offsets[p];
+			offsets[p] = (int) total;
+			total += count;
+		}
+		if (total > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("The results of the batch do not fit in an array.");
+		}
+		offsets[n] = (int) total;
+
+		long[] values = new long[(int) total];
+		forEachKey(pool, n, (lo, hi) -> {
+			for (int k = lo; k < hi; k++) {
+				int p = (int) order[k];
+				int i = slots[p];
+				if (postings[i] == null) {
+					continue;
+				}
+				int[] ids = postings[i];
+				int v = offsets[p];
+				for (int j = from[p]; v < offsets[p + 1]; j++) {
+					switch (field) {
+					case RECEIVER:
+						values[v++] = store.getReceiver(ids[j]);
+						break;
+					case DIALLER:
+						values[v++] = store.getDialler(ids[j]);
+						break;
+					default:
+						int faultySwitch = FaultIndex.faultySwitch(store, ids[j]);
+						if (faultySwitch != FaultIndex.NO_FAULT) {
+							values[v++] = faultySwitch;
+						}
+					}
+				}
+			}
+		});
+		return new CallBatch(batch, offsets, values);
+	}
+
+	private int countFaults(int[] ids, int from, int to) {
+		int count = 0;
+		for (int j = from; j < to; j++) {
+			if (FaultIndex.faultySwitch(store, ids[j]) != FaultIndex.NO_FAULT) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Work on the keys of a batch from position lo up to, but not including, hi.
+	 */
+	private interface KeyRange {
+		void run(int lo, int hi);
+	}
+
+	/**
+	 * Run the work over n keys, split into ranges of at most BATCH_GRAIN keys on the pool if there is one.
+	 */
+	private static void forEachKey(ForkJoinPool pool, int n, KeyRange work) {
+		if (pool == null || n <= BATCH_GRAIN) {
+			work.run(0, n);
+		} else {
+			pool.invoke(new KeyRangeTask(work, 0, n));
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static class KeyRangeTask extends RecursiveAction {
+		private KeyRange work;
+		private int lo;
+		private int hi;
+
+		KeyRangeTask(KeyRange work, int lo, int hi) {
+			this.work = work;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo <= BATCH_GRAIN) {
+				work.run(lo, hi);
+				return;
+			}
+			int middle = (lo + hi) >>> 1;
+			invokeAll(new KeyRangeTask(work, lo, middle), new KeyRangeTask(work, middle, hi));
+		}
+	}
+}
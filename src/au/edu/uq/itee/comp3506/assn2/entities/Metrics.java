@@ -0,0 +1,342 @@
+package au.edu.uq.itee.comp3506.assn2.entities;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters, histograms and gauges of the ingest stages and the index queries.
+ *
+ * Metrics are turned on by starting the JVM with -Dassn2.metrics=true. Every measuring call site is guarded by
+ * the constant ENABLED, so when metrics are off the JIT removes the guarded code and they cost nothing.
+ * When on, they are published as the MBean au.edu.uq.itee.comp3506.assn2:type=Metrics,
+ * and can be read in code through snapshot().
+ *
+ * Histograms keep counts in log-linear buckets, as HdrHistogram does: values below 32 exactly,
+ * larger values within 1/32 of their size. Recording is lock free, so queries on several threads can share them.
+ *
+ * Memory efficiency: O(h), h is the number of histograms.
+ *
+ * @author Wayne
+ */
+public final class Metrics {
+	public static final boolean ENABLED = Boolean.getBoolean("assn2.metrics");
+	public static final String OBJECT_NAME = "au.edu.uq.itee.comp3506.assn2:type=Metrics";
+
+	private static final Map<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+	private static final Map<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+	private static final Map<String, Gauge<?>> gauges = new ConcurrentHashMap<String, Gauge<?>>();
+
+	public static final Counter LINES = counter("ingest.lines");
+	public static final Counter CORRUPT_LINES = counter("ingest.corrupt");
+	public static final Histogram TOKENIZE = histogram("ingest.tokenize.ns");
+	public static final Histogram VALIDATE = histogram("ingest.validate.ns");
+	public static final Histogram DECODE = histogram("ingest.decode.ns");
+	public static final Histogram INDEX = histogram("ingest.index.ns");
+	public static final Histogram POSTING_QUERY = histogram("postings.query.ns");
+	public static final Histogram POSTING_LENGTH = histogram("postings.length");
+	public static final Histogram CALLS_MADE = histogram("time.callsMade.ns");
+	public static final Histogram CONNECTIONS = histogram("connections.window.ns");
+	public static final Histogram AVL_SEARCH_NODES = histogram("avl.search.nodes");
+	public static final Histogram AVL_CALLS_MADE = histogram("avl.callsMade.ns");
+
+	static {
+		if (ENABLED) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), new ObjectName(OBJECT_NAME));
+			} catch (JMException e) {
+				// Such as when another copy of these classes registered first. The metrics are still counted
+				// and can be read through snapshot(), so the run goes on without the MBean.
+				System.err.println("Metrics are not published as " + OBJECT_NAME + ": " + e);
+			}
+		}
+	}
+
+	private Metrics() {
+	}
+
+	/**
+	 * A value read from an object which is held weakly.
+	 */
+	private static final class Gauge<T> {
+		private final WeakReference<T> source;
+		private final ToLongFunction<T> value;
+
+		Gauge(T source, ToLongFunction<T> value) {
+			this.source = new WeakReference<T>(source);
+			this.value = value;
+		}
+
+		/**
+		 * @return false if the object has been collected.
+		 */
+		boolean read(String name, Map<String, Long> snapshot) {
+			T t = source.get();
+			if (t == null) {
+				return false;
+			}
+			snapshot.put(name, value.applyAsLong(t));
+			return true;
+		}
+	}
+
+	/**
+	 * A count of events.
+	 */
+	public static final class Counter {
+		private final LongAdder count = new LongAdder();
+
+		/**
+		 * Runtime efficiency: O(1)
+		 */
+		public void increment() {
+			count.increment();
+		}
+
+		/**
+		 * Runtime efficiency: O(1)
+		 */
+		public void add(long n) {
+			count.add(n);
+		}
+
+		/**
+		 * Runtime efficiency: O(p), p is the number of threads which have counted.
+		 */
+		public long get() {
+			return count.sum();
+		}
+
+		void reset() {
+			count.reset();
+		}
+	}
+
+	/**
+	 * A distribution of non-negative values, such as latencies in nanoseconds.
+	 */
+	public static final class Histogram {
+		private static final int SUB_BITS = 5;
+		private static final int SUB_BUCKETS = 1 << SUB_BITS;
+		private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+		private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+		private final LongAdder total = new LongAdder();
+		private final LongAdder sum = new LongAdder();
+		private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+		private static int bucket(long value) {
+			if (value < SUB_BUCKETS) {
+				return (int) value;
+			}
+			int exponent = 63 - Long.numberOfLeadingZeros(value);
+			int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+			return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+		}
+
+		/**
+		 * @return the largest value which falls in the bucket.
+		 */
+		private static long highest(int bucket) {
+			if (bucket < SUB_BUCKETS) {
+				return bucket;
+			}
+			int shift = bucket / SUB_BUCKETS - 1;
+			long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+			return lowest + (1L << shift) - 1;
+		}
+
+		/**
+		 * Runtime efficiency: O(1)
+		 *
+		 * @param value the value to be recorded; negative values are recorded as 0.
+		 */
+		public void record(long value) {
+			value = Math.max(value, 0);
+			counts.incrementAndGet(bucket(value));
+			total.increment();
+			sum.add(value);
+			max.accumulate(value);
+		}
+
+		/**
+		 * Runtime efficiency: O(1)
+		 *
+		 * @return the number of values recorded.
+		 */
+		public long count() {
+			return total.sum();
+		}
+
+		/**
+		 * Runtime efficiency: O(1)
+		 *
+		 * @return the mean of the values, or 0 if none was recorded.
+		 */
+		public long mean() {
+			long n = total.sum();
+			return n == 0 ? 0 : sum.sum() / n;
+		}
+
+		/**
+		 * Runtime efficiency: O(1)
+		 *
+		 * @return the largest value recorded.
+		 */
+		public long max() {
+			return max.get();
+		}
+
+		/**
+		 * Runtime efficiency: O(b), b is the number of buckets.
+		 *
+		 * @param p the share of values, between 0 and 1.
+		 * @return a value which at least that share of the recorded values do not exceed, within 1/32.
+		 */
+		public long percentile(double p) {
+			long n = total.sum();
+			if (n == 0) {
+				return 0;
+			}
+			long rank = Math.max(1, (long) Math.ceil(p * n));
+			long seen = 0;
+			for (int b = 0; b < BUCKETS; b++) {
+				seen += counts.get(b);
+				if (seen >= rank) {
+					return Math.min(highest(b), max.get());
+				}
+			}
+			return max.get();
+		}
+
+		void reset() {
+			for (int b = 0; b < BUCKETS; b++) {
+				counts.set(b, 0);
+			}
+			total.reset();
+			sum.reset();
+			max.reset();
+		}
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @param name the name of the counter.
+	 * @return the counter of that name, created if it does not exist.
+	 */
+	public static Counter counter(String name) {
+		return counters.computeIfAbsent(name, n -> new Counter());
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @param name the name of the histogram.
+	 * @return the histogram of that name, created if it does not exist.
+	 */
+	public static Histogram histogram(String name) {
+		return histograms.computeIfAbsent(name, n -> new Histogram());
+	}
+
+	/**
+	 * Publish a value of an object which is read when a snapshot is taken, such as the height of a tree.
+	 * A gauge replaces any earlier gauge of the same name. The object is held weakly, so the gauge does not keep it
+	 * alive, and the gauge is dropped once the object is collected. The value should not capture the object itself.
+	 *
+	 * Runtime efficiency: O(1)
+	 *
+	 * @param name the name of the gauge.
+	 * @param source the object measured.
+	 * @param value reads the current value from the object.
+	 */
+	public static <T> void gauge(String name, T source, ToLongFunction<T> value) {
+		gauges.put(name, new Gauge<T>(source, value));
+	}
+
+	/**
+	 * Remove a gauge.
+	 *
+	 * Runtime efficiency: O(1)
+	 *
+	 * @param name the name of the gauge.
+	 */
+	public static void removeGauge(String name) {
+		gauges.remove(name);
+	}
+
+	/**
+	 * Read every metric. A histogram gives its count, mean, 50th, 90th, 99th and 99.9th percentiles and maximum,
+	 * under its name followed by .count, .mean, .p50 and so on.
+	 *
+	 * Runtime efficiency: O(h b + c + g), h histograms of b buckets, c counters and g gauges.
+	 *
+	 * @return the metrics by name.
+	 */
+	public static SortedMap<String, Long> snapshot() {
+		SortedMap<String, Long> snapshot = new TreeMap<String, Long>();
+		for (Map.Entry<String, Counter> e: counters.entrySet()) {
+			snapshot.put(e.getKey(), e.getValue().get());
+		}
+		for (Map.Entry<String, Gauge<?>> e: gauges.entrySet()) {
+			if (!e.getValue().read(e.getKey(), snapshot)) {
+				gauges.remove(e.getKey(), e.getValue());
+			}
+		}
+		for (Map.Entry<String, Histogram> e: histograms.entrySet()) {
+			Histogram h = e.getValue();
+			String name = e.getKey();
+			snapshot.put(name + ".count", h.count());
+			snapshot.put(name + ".mean", h.mean());
+			snapshot.put(name + ".p50", h.percentile(0.5));
+			snapshot.put(name + ".p90", h.percentile(0.9));
+			snapshot.put(name + ".p99", h.percentile(0.99));
+			snapshot.put(name + ".p999", h.percentile(0.999));
+			snapshot.put(name + ".max", h.max());
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Set every counter and histogram back to zero. Gauges are kept.
+	 *
+	 * Runtime efficiency: O(h b + c)
+	 */
+	public static void reset() {
+		for (Counter c: counters.values()) {
+			c.reset();
+		}
+		for (Histogram h: histograms.values()) {
+			h.reset();
+		}
+	}
+
+	/**
+	 * The management interface of the metrics.
+	 */
+	public interface MetricsMXBean {
+		Map<String, Long> getSnapshot();
+
+		void reset();
+	}
+
+	private static class Bean implements MetricsMXBean {
+		public Map<String, Long> getSnapshot() {
+			return snapshot();
+		}
+
+		public void reset() {
+			Metrics.reset();
+		}
+	}
+}
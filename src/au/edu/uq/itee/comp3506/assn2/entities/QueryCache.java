@@ -0,0 +1,307 @@
+package au.edu.uq.itee.comp3506.assn2.entities;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * A bounded cache of query results, keyed by the query, its phone number or switch, and its time window.
+ * The least recently used results are evicted once there are more than a number of results,
+ * or once the results hold more than a number of elements in total.
+ *
+ * Appended records invalidate only the results they could change: those of the record's dialler, receiver
+ * or faulty switch, and the whole-store queries, each only if the window covers the record's time stamp.
+ * Results are grouped by query and number so an append looks at no other results.
+ *
+ * The cache keeps its own list results, and every caller gets a modifiable list of its own, as from the queries.
+ * Not safe for concurrent use.
+ *
+ * Memory efficiency: O(c + w), c results holding w elements in total.
+ *
+ * @author Wayne
+ */
+public class QueryCache {
+	public static final int CALLED = 0;
+	public static final int CALLERS = 1;
+	public static final int CONNECTION_FAULT = 2;
+	public static final int RECEIVING_FAULT = 3;
+	public static final int FAULTS_AT_SWITCH = 4;
+	public static final int MAX_CONNECTIONS = 5;
+	public static final int MIN_CONNECTIONS = 6;
+	public static final int CALLS_MADE = 7;
+	public static final long ALL_TIME_START = Long.MIN_VALUE;
+	public static final long ALL_TIME_END = Long.MAX_VALUE;
+
+	private int maxEntries;
+	private long maxWeight;
+	private LinkedHashMap<Key, Object> results = new LinkedHashMap<Key, Object>(16, 0.75f, true);
+	private HashMap<Key, Set<Key>> groups = new HashMap<Key, Set<Key>>();
+	private long weight;
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long invalidations;
+
+	/**
+	 * A query with its arguments. Whole-store queries have key 0, and all time queries the widest window.
+	 * A group is the key with a window of 0 to 0, which stands for every window of the query and number.
+	 */
+	private static class Key {
+		final int query;
+		final long key;
+		final long start;
+		final long end;
+
+		Key(int query, long key, long start, long end) {
+			this.query = query;
+			this.key = key;
+			this.start = start;
+			this.end = end;
+		}
+
+		Key group() {
+			return new Key(query, key, 0, 0);
+		}
+
+		boolean covers(long time) {
+			return start <= time && time <= end;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key k = (Key) o;
+			return query == k.query && key == k.key && start == k.start && end == k.end;
+		}
+
+		@Override
+		public int hashCode() {
+			int h = query;
+			h = h * 31 + Long.hashCode(key);
+			h = h * 31 + Long.hashCode(start);
+			return h * 31 + Long.hashCode(end);
+		}
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @param maxEntries the most results to keep; 0 turns the cache off.
+	 * @param maxWeight the most list elements to keep over all results.
+	 */
+	public QueryCache(int maxEntries, long maxWeight) {
+		if (maxEntries < 0 || maxWeight < 0) {
+			throw new IllegalArgumentException("Cache bounds must not be negative.");
+		}
+		this.maxEntries = maxEntries;
+		this.maxWeight = maxWeight;
+	}
+
+	/**
+	 * Return the cached result of a query, or run it and cache the result.
+	 *
+	 * Runtime efficiency: O(r) on a hit, r is the size of the result; the query, O(r) and O(e) evictions on a miss.
+	 *
+	 * @param query which query, such as CALLED.
+	 * @param key the phone number or switch of the query, or 0 for whole-store queries.
+	 * @param start start of the window in milliseconds since the epoch, or ALL_TIME_START.
+	 * @param end end of the window in milliseconds since the epoch, or ALL_TIME_END.
+	 * @param run runs the query.
+	 * @return the result; a list result is a copy which the caller may change.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T get(int query, long key, long start, long end, Supplier<T> run) {
+		if (maxEntries == 0) {
+			misses++;
+			return run.get();
+		}
+		Key k = new Key(query, key, start, end);
+		Object result = results.get(k);
+		if (result != null) {
+			hits++;
+			return (T) copy(result);
+		}
+		misses++;
+		result = run.get();
+		if (weight(result) > maxWeight) {
+			return (T) result; // Would evict everything else.
+		}
+		results.put(k, result);
+		groups.computeIfAbsent(k.group(), g -> new LinkedHashSet<Key>()).add(k);
+		weight += weight(result);
+		evict();
+		return (T) copy(result);
+	}
+
+	/**
+	 * @return a new list of the same elements if the result is a list, otherwise the result.
+	 */
+	private static Object copy(Object result) {
+		return result instanceof List ? new ArrayList<Object>((List<?>) result) : result;
+	}
+
+	private static long weight(Object result) {
+		return result instanceof Collection ? 1 + ((Collection<?>) result).size() : 1;
+	}
+
+	/**
+	 * Evict least recently used results until the cache is within its bounds.
+	 */
+	private void evict() {
+		Iterator<Map.Entry<Key, Object>> it = results.entrySet().iterator();
+		while ((results.size() > maxEntries || weight > maxWeight) && it.hasNext()) {
+			Map.Entry<Key, Object> eldest = it.next();
+			it.remove();
+			forget(eldest.getKey(), eldest.getValue());
+			evictions++;
+		}
+	}
+
+	private void forget(Key k, Object result) {
+		weight -= weight(result);
+		Key group = k.group();
+		Set<Key> keys = groups.get(group);
+		keys.remove(k);
+		if (keys.isEmpty()) {
+			groups.remove(group);
+		}
+	}
+
+	/**
+	 * Drop every result which an appended record could change.
+	 *
+	 * Runtime efficiency: O(g), g is the number of results of the record's groups.
+	 *
+	 * @param store the store which holds the record.
+	 * @param id the identifier of the appended record.
+	 */
+	public void invalidate(CallRecordStore store, int id) {
+		if (results.isEmpty()) {
+			return;
+		}
+		long time = store.getTimeStamp(id);
+		invalidate(CALLED, store.getDialler(id), time);
+		invalidate(CALLERS, store.getReceiver(id), time);
+		int faultySwitch = FaultIndex.faultySwitch(store, id);
+		if (faultySwitch != FaultIndex.NO_FAULT) {
+			invalidate(CONNECTION_FAULT, store.getDialler(id), time);
+			invalidate(RECEIVING_FAULT, store.getReceiver(id), time);
+			invalidate(FAULTS_AT_SWITCH, faultySwitch, time);
+		}
+		if (store.getPathLength(id) > 0) {
+			invalidate(MAX_CONNECTIONS, 0, time);
+			invalidate(MIN_CONNECTIONS, 0, time);
+		}
+		invalidate(CALLS_MADE, 0, time);
+	}
+
+	private void invalidate(int query, long key, long time) {
+		Key group = new Key(query, key, 0, 0);
+		Set<Key> keys = groups.get(group);
+		if (keys == null) {
+			return;
+		}
+		for (Iterator<Key> it = keys.iterator(); it.hasNext();) {
+			Key k = it.next();
+			if (k.covers(time)) {
+				it.remove();
+				weight -= weight(results.remove(k));
+				invalidations++;
+			}
+		}
+		if (keys.isEmpty()) {
+			groups.remove(group);
+		}
+	}
+
+	/**
+	 * Drop every result, such as after the records were read again.
+	 *
+	 * Runtime efficiency: O(c)
+	 */
+	public void clear() {
+		invalidations += results.size();
+		results.clear();
+		groups.clear();
+		weight = 0;
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @return the number of cached results.
+	 */
+	public int size() {
+		return results.size();
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @return the number of list elements held over all results, plus one per result.
+	 */
+	public long weight() {
+		return weight;
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @return the number of queries answered from the cache.
+	 */
+	public long hits() {
+		return hits;
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @return the number of queries which had to be run.
+	 */
+	public long misses() {
+		return misses;
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @return the number of results evicted to keep within the bounds.
+	 */
+	public long evictions() {
+		return evictions;
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @return the number of results dropped by appends or clear.
+	 */
+	public long invalidations() {
+		return invalidations;
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @return the share of queries answered from the cache, or 0 before any query.
+	 */
+	public double hitRate() {
+		long total = hits + misses;
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("QueryCache[size=%d, weight=%d, hits=%d, misses=%d, hit rate=%.3f, evictions=%d, "
+				+ "invalidations=%d]", size(), weight, hits, misses, hitRate(), evictions, invalidations);
+	}
+}
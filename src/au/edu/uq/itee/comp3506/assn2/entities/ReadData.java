@@ -1,11 +1,19 @@
 package au.edu.uq.itee.comp3506.assn2.entities;
 
 import java.io.BufferedReader;
+import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * A class designed to read switches and call records from file and sort the valid records.
@@ -16,14 +24,22 @@ import java.util.List;
  *
  */
 public class ReadData {
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final String RECORDS_PATH = "data/call-records.txt";
+	private static final String SWITCHES_PATH = "data/switches.txt";
 	
 	SwitchAVLTree<Integer> switchesTree;
-	RecordAVLTree<Long> dialTree;
-	RecordAVLTree<Long> receiveTree;
-	RecordAVLTree<Integer> connectTree;
-	TimeAVLTree timeTree;
+	SwitchRegistry switchRegistry; // The switches of switchesTree, for validating records.
+	LongRecordIndex dialIndex;
+	LongRecordIndex receiveIndex;
+	SwitchConnectionCounter connectCounter;
+	SwitchConnectionCube connectCube;
+	TimeBPlusTree timeIndex;
+	FaultIndex faultIndex;
+	CallRecordStore store;
+	RecordHandler indexer; // Indexes a record in the store, then passes it to the handler.
+	boolean bulk; // Whether records are being read in bulk, so the postings are sorted once at the end.
 	CallRecord cr;
-	ValueList<CallRecord> rl;
 	
 	int timecount = 0;
 	int dialcount = 0;
@@ -57,7 +73,7 @@ public class ReadData {
 	private SwitchAVLTree<Integer> readSwitches() {
 		switchesTree = new SwitchAVLTree<Integer>();
 		int count = 0;
-		String filePath = "data/switches.txt";		
+		String filePath = SWITCHES_PATH;		
 		BufferedReader reader = null;
 		
 		try {
@@ -80,6 +96,7 @@ public class ReadData {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
+		switchRegistry = SwitchRegistry.of(switchesTree);
 		
 		return switchesTree;
 	}
@@ -87,124 +104,351 @@ public class ReadData {
 	/**
 	 * Read all data from file, store the valid records in data structures.
 	 * 
-	 * Runtime efficiency: O(n^2)
+	 * Runtime efficiency: O(n log n)
+	 * 
+	 * @throws UncheckedIOException if the file could not be read.
 	 */
 	public void readAllRecords() {
-		timeTree = new TimeAVLTree();
-		dialTree = new RecordAVLTree<Long>();
-		receiveTree = new RecordAVLTree<Long>();
-		connectTree = new RecordAVLTree<Integer>();
-		rl = new ValueList<CallRecord>();
-		
-		readSwitches();
+		readAllRecords(null);
+	}
+	
+	/**
+	 * Read all data from file in a single pass. Each valid record is indexed as soon as its line is parsed,
+	 * so no staging list of records is kept while the file is read.
+	 * 
+	 * Runtime efficiency: O(n log n)
+	 * 
+	 * @param handler called with each valid record after it has been indexed; may be null.
+	 * @throws UncheckedIOException if the file could not be read; the indexes are then left empty.
+	 */
+	public void readAllRecords(RecordHandler handler) {
+		RecordHandler indexer = createIndexes(new CallRecordStore(), handler);
 		
-		String filePath = "data/call-records.txt";
-		BufferedReader reader = null;
-
+		beginBulk();
 		try {
-			reader = new BufferedReader(new FileReader(filePath)); 
-			String calls = null;
+			readRecords(Paths.get(RECORDS_PATH), store, indexer);
+		} catch (IOException e) {
+			createIndexes(new CallRecordStore(), handler);
+			throw new UncheckedIOException(e);
+		} finally {
+			endBulk();
+		}
+	}
+	
+	/**
+	 * Read a further file of call records, such as the next hour from the switches, after the records have been read.
+	 * Lines are validated against the switches already read, and each valid record is added to the store
+	 * and to every index and count, so nothing is rebuilt. The whole file is parsed before any record is added,
+	 * so a file which cannot be read adds nothing.
+	 * 
+	 * Runtime efficiency: O(m log n), m is the number of lines in the file.
+	 * 
+	 * @param path the file of call records.
+	 * @return the number of valid records added.
+	 * @throws IOException if the file could not be read.
+	 */
+	public int appendRecords(Path path) throws IOException {
+		if (indexer == null) {
+			throw new IllegalStateException("Records must be read before appending.");
+		}
+		CallRecordStore parsed = parseRecords(path);
+		beginBulk();
+		try {
+			for (int id = 0; id < parsed.size(); id++) {
+				indexer.handle(store.get(store.add(parsed.get(id))));
+			}
+		} finally {
+			endBulk();
+		}
+		return parsed.size();
+	}
+	
+	/**
+	 * Parse a file of call records into a new store without indexing them.
+	 * Lines are validated against the switches already read.
+	 * 
+	 * Runtime efficiency: O(m), m is the number of lines in the file.
+	 * 
+	 * @param path the file of call records.
+	 * @return a store holding the valid records.
+	 * @throws IOException if the file could not be read.
+	 */
+	public CallRecordStore parseRecords(Path path) throws IOException {
+		if (switchesTree == null) {
+			throw new IllegalStateException("Switches must be read before parsing.");
+		}
+		CallRecordStore parsed = new CallRecordStore();
+		readRecords(path, parsed, c -> { });
+		return parsed;
+	}
+	
+	/**
+	 * Stream a file of call records through a buffer, adding each valid record to a store.
+	 * 
+	 * Runtime efficiency: O(m) plus the handler, m is the number of lines in the file.
+	 * 
+	 * @param handler called with each valid record after it has been added.
+	 */
+	private void readRecords(Path path, CallRecordStore into, RecordHandler handler) throws IOException {
+		CallRecordParser parser = new CallRecordParser(switchRegistry, into);
+		byte[] bytes = new byte[BUFFER_SIZE];
+		ByteBuffer buf = ByteBuffer.wrap(bytes);
 		
-			while((calls = reader.readLine())!=null) {
-				boolean valid = true;
-				int size = 0;
-				int flag = 0;
-				
-				ValueList<String> vl = new ValueList<String>();
-
-				String[] d = calls.split(" ");
-				
-				for (int i = 0; i < d.length; i++) {
-					if (!d[i].equals("")) {
-						vl.add(d[i]);						
-					} else {
-						flag++;
-					}
-				}
-				
-				if (flag != 0) {
-					size = vl.size();
-					d = new String[size];					
-					for(String a: vl) {
-						d[--size] = a;
-					}
-				}
-				
-				valid = FindCorruptRecords(d);
-				
-				if (valid) {
-					connectionPath = new ArrayList<Integer>();
-					
-					dialler = Long.parseLong(d[0]);
-					receiver = Long.parseLong(d[d.length-2]);
-					
-					for (int i = 2; i < d.length-3; i++) {
-						connectionPath.add(Integer.parseInt(d[i]));
-					}
-					
-					diallerSwitch = Integer.parseInt(d[1]);
-					receiverSwitch = Integer.parseInt(d[d.length-3]);
-					
-					timeStamp = LocalDateTime.parse(d[d.length-1]);
-					
-					cr = new CallRecord(dialler, receiver, diallerSwitch, receiverSwitch, connectionPath, timeStamp);
-					rl.add(cr);
-					
-				} else {
+		try (InputStream in = new FileInputStream(path.toFile())) {
+			int length = 0;
+			int read;
+			
+			while ((read = in.read(bytes, length, bytes.length - length)) != -1) {
+				length += read;
+				int consumed = parser.parseLines(buf, 0, length, false, handler);
+				if (consumed == 0 && length == bytes.length) {
+					// A single line is longer than the buffer.
+					bytes = Arrays.copyOf(bytes, bytes.length * 2);
+					buf = ByteBuffer.wrap(bytes);
 					continue;
 				}
+				System.arraycopy(bytes, consumed, bytes, 0, length - consumed);
+				length -= consumed;
 			}
-			reader.close();
-		} catch (NumberFormatException e) {
-				// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (IOException e) {
-				// TODO Auto-generated catch block
-			e.printStackTrace();
+			parser.parseLines(buf, 0, length, true, handler);
 		}
+	}
+	
+	/**
+	 * Read all data from file by memory mapping it and parsing new line aligned chunks in parallel on the pool.
+	 * The parsed records are copied into the store and indexed on the calling thread in file order.
+	 * 
+	 * Runtime efficiency: O(n / p + n log n), p is the parallelism of the pool.
+	 * 
+	 * @param pool the pool which parses the chunks.
+	 * @param handler called with each valid record after it has been indexed; may be null.
+	 * @throws IOException if the file could not be mapped or read; the indexes are then left empty.
+	 */
+	public void readAllRecordsParallel(ForkJoinPool pool, RecordHandler handler) throws IOException {
+		RecordHandler indexer = createIndexes(new CallRecordStore(), handler);
+		String filePath = RECORDS_PATH;
 		
-		for (CallRecord c: rl) {
-			timeTree.insert(c.getTimeStamp(), c);
-			dialTree.insert(c.getDialler(), c);
-			receiveTree.insert(c.getReceiver(), c);
-			for (int i: c.getConnectionPath()) {
-				connectTree.insert(i, c);
+		beginBulk();
+		try {
+			new ChunkedRecordReader(switchRegistry, pool, ChunkedRecordReader.DEFAULT_CHUNK_SIZE).read(filePath,
+					c -> indexer.handle(store.get(store.add(c))));
+		} catch (IOException e) {
+			createIndexes(new CallRecordStore(), handler);
+			throw e;
+		} finally {
+			endBulk();
+		}
+	}
+	
+	/**
+	 * Index every record of a store which was filled elsewhere, such as by a generator, instead of reading the records file.
+	 * The store is adopted rather than copied, and the switches are still read from file.
+	 * 
+	 * Runtime efficiency: O(n log n), O(n) if the records are in time order.
+	 * 
+	 * @param records the records to be indexed; they must not be changed afterwards except through append.
+	 */
+	public void indexRecords(CallRecordStore records) {
+		RecordHandler indexer = createIndexes(records, null);
+		beginBulk();
+		try {
+			for (int id = 0; id < records.size(); id++) {
+				indexer.handle(records.get(id));
 			}
-		}		
-	}
-	
-	private boolean FindCorruptRecords(String[] d) {
-		if (d.length > 5) {			
-			if (d[0].length() != 10 && d[d.length-2].length() != 10 && d[1].length() != 5 && d[d.length-3].length() != 5) {
-				return false;
-			}			
-			if (!d[1].equals(d[2])) {
-				return false;
-			}			
-			for (int i = 1; i < d.length-2; i++) {
-				if (d[i].equals("") || d[i].length() != 5 || switchesTree.search(Integer.parseInt(d[i])) == null) {
-					return false;					
-				} else if (d.length > 6 && i >= 2 && i <= d.length-5) {
-					if (d[i].equals(d[i+1])) {
-						return false;
-					}
-				}
-			}			
-		} else if (d.length == 5) {
-			if (d[0].length() != 10 && d[3].length() != 10 && d[1].length() != 5 && d[2].length() != 5) {
-				return false;
-			}			
-			for (int i = 1; i <= 2; i++) {
-				if (switchesTree.search(Integer.parseInt(d[i])) == null) {
-					return false;							
-				}
+		} finally {
+			endBulk();
+		}
+	}
+	
+	/**
+	 * Append records to the postings without keeping them in time order until endBulk.
+	 * 
+	 * Runtime efficiency: O(1)
+	 */
+	void beginBulk() {
+		bulk = true;
+	}
+	
+	/**
+	 * Sort the postings which a bulk read appended out of time order, and go back to inserting in order.
+	 * 
+	 * Runtime efficiency: O(u log u), u is the number of records of the keys appended out of time order.
+	 */
+	void endBulk() {
+		bulk = false;
+		dialIndex.sort();
+		receiveIndex.sort();
+		faultIndex.sort();
+	}
+	
+	/**
+	 * Create empty indexes over a store, and read the switches.
+	 * 
+	 * Runtime efficiency: O(s log s), s is the number of switches.
+	 * 
+	 * @param records the store which will hold the records.
+	 * @param handler called with each record after it has been indexed; may be null.
+	 * @return the handler which indexes a record.
+	 */
+	private RecordHandler createIndexes(CallRecordStore records, RecordHandler handler) {
+		store = records;
+		timeIndex = new TimeBPlusTree(store);
+		dialIndex = new LongRecordIndex(store);
+		receiveIndex = new LongRecordIndex(store);
+		connectCounter = new SwitchConnectionCounter();
+		connectCube = new SwitchConnectionCube(store, timeIndex);
+		faultIndex = new FaultIndex(store);
+		
+		readSwitches();
+		
+		return createIndexer(handler);
+	}
+	
+	/**
+	 * Runtime efficiency: O(1)
+	 * 
+	 * @param handler called with each record after it has been indexed; may be null.
+	 * @return the handler which indexes a record.
+	 */
+	private RecordHandler createIndexer(RecordHandler handler) {
+		if (Metrics.ENABLED) {
+			registerGauges();
+		}
+		indexer = c -> {
+			index(c);
+			if (handler != null) {
+				handler.handle(c);
 			}
-		} else if (d.length < 5) {
+		};
+		return indexer;
+	}
+	
+	/**
+	 * Load the switches, records and indexes from a snapshot if it was written from the current data files,
+	 * otherwise read the data files and write the snapshot for the next run.
+	 * 
+	 * Runtime efficiency: O(n log n)
+	 * 
+	 * @param snapshotPath the snapshot file.
+	 * @throws IOException if the snapshot could not be written; the records have then been read.
+	 */
+	public void readAllRecordsCached(String snapshotPath) throws IOException {
+		if (!readSnapshot(snapshotPath)) {
+			readAllRecords();
+			writeSnapshot(snapshotPath);
+		}
+	}
+	
+	/**
+	 * Load the switches, records and indexes from a snapshot.
+	 * 
+	 * Runtime efficiency: O(n + h + c + s log s), h is the total length of the connection paths,
+	 * c the size of the connection cube and s the number of switches.
+	 * 
+	 * @param snapshotPath the snapshot file.
+	 * @return true if the snapshot was loaded; false if it is missing, stale or damaged.
+	 */
+	public boolean readSnapshot(String snapshotPath) {
+		try {
+			IndexSnapshot.read(Paths.get(snapshotPath), this, sources());
+		} catch (IOException e) {
 			return false;
-		}		
+		}
+		createIndexer(null);
 		return true;
 	}
 	
+	/**
+	 * Write the switches, records and indexes to a snapshot.
+	 * 
+	 * Runtime efficiency: O(n)
+	 * 
+	 * @param snapshotPath the snapshot file.
+	 * @throws IOException if the snapshot could not be written; any earlier snapshot is left as it was.
+	 */
+	public void writeSnapshot(String snapshotPath) throws IOException {
+		IndexSnapshot.write(Paths.get(snapshotPath), this, sources());
+	}
+	
+	/**
+	 * Publish the sizes and shape of the indexes. The gauges hold the current indexes weakly, and are published
+	 * again when the indexes are replaced, so they neither follow a stale index nor keep this reader alive.
+	 * 
+	 * Runtime efficiency: O(1)
+	 */
+	private void registerGauges() {
+		Metrics.gauge("records", store, CallRecordStore::size);
+		Metrics.gauge("time.height", timeIndex, TimeBPlusTree::height);
+		Metrics.gauge("dial.keys", dialIndex, LongRecordIndex::size);
+		Metrics.gauge("receive.keys", receiveIndex, LongRecordIndex::size);
+		Metrics.gauge("faults", faultIndex, FaultIndex::size);
+	}
+	
+	private static Path[] sources() {
+		return new Path[] {Paths.get(RECORDS_PATH), Paths.get(SWITCHES_PATH)};
+	}
+	
+	/**
+	 * Copy a record into the store and index it, after the records have been read.
+	 * The record is checked against the switches and the corruption rules that every line of a file goes through.
+	 * Not safe for concurrent use; see ConcurrentCallIndex.
+	 * 
+	 * Runtime efficiency: O(log n)
+	 * 
+	 * @param cr the record to be added, which may belong to another store.
+	 * @return the record in the store.
+	 * @throws IllegalArgumentException if the record is corrupt or names an unknown switch.
+	 */
+	public CallRecord append(CallRecord cr) {
+		if (indexer == null) {
+			throw new IllegalStateException("Records must be read before appending.");
+		}
+		if (!isValid(cr)) {
+			throw new IllegalArgumentException("Record is corrupt or names an unknown switch.");
+		}
+		CallRecord c = store.get(store.add(cr));
+		indexer.handle(c);
+		return c;
+	}
+	
+	/**
+	 * Runtime efficiency: O(k), k is the number of switches in the connection path.
+	 * 
+	 * @param cr the record to be checked.
+	 * @return true if the record passes the checks of a line read from file.
+	 */
+	public boolean isValid(CallRecord cr) {
+		return CallRecordParser.isValid(switchRegistry, cr);
+	}
+	
+	/**
+	 * Insert a valid record into every index.
+	 * 
+	 * Runtime efficiency: O(log n)
+	 * 
+	 * @param c the record to be indexed.
+	 */
+	private void index(CallRecord c) {
+		long start = Metrics.ENABLED ? System.nanoTime() : 0;
+		timeIndex.insert(store.getTimeStamp(c.id), c.id);
+		if (bulk) {
+			dialIndex.append(store.getDialler(c.id), c.id);
+			receiveIndex.append(store.getReceiver(c.id), c.id);
+			faultIndex.append(c.id);
+		} else {
+			dialIndex.insert(store.getDialler(c.id), c.id);
+			receiveIndex.insert(store.getReceiver(c.id), c.id);
+			faultIndex.insert(c.id);
+		}
+		for (int i = 0; i < store.getPathLength(c.id); i++) {
+			connectCounter.increment(store.getHop(c.id, i));
+		}
+		connectCube.add(c.id);
+		if (Metrics.ENABLED) {
+			Metrics.INDEX.record(System.nanoTime() - start);
+		}
+	}
+	
 	/**
 	 * Runtime efficiency: O(1)
 	 * 
@@ -217,36 +461,63 @@ public class ReadData {
 	/**
 	 * Runtime efficiency: O(1)
 	 * 
-	 * @return timeTree the tree which take time stamp as key.
+	 * @return store the columns of every valid record.
+	 */
+	public CallRecordStore readRecordStore() {
+		return store;
+	}
+	
+	/**
+	 * Runtime efficiency: O(1)
+	 * 
+	 * @return timeIndex the tree which take time stamp as key.
+	 */
+	public TimeBPlusTree readTimeRecord() {
+		return timeIndex;
+	}
+	
+	/**
+	 * Runtime efficiency: O(1)
+	 * 
+	 * @return dialIndex the index which take dialing number as key.
+	 */
+	public LongRecordIndex readDialRecord() {
+		return dialIndex;
+	}
+	
+	/**
+	 * Runtime efficiency: O(1)
+	 * 
+	 * @return receiveIndex the index which take receiving number as key.
 	 */
-	public TimeAVLTree readTimeRecord() {
-		return timeTree;
+	public LongRecordIndex readReceiveRecord() {
+		return receiveIndex;
 	}
 	
 	/**
 	 * Runtime efficiency: O(1)
 	 * 
-	 * @return dialTree the tree which take dialing number as key.
+	 * @return connectCube the number of connections of every switch in call records over time.
 	 */
-	public RecordAVLTree<Long> readDialRecord() {
-		return dialTree;
+	public SwitchConnectionCube readConnectRecord() {
+		return connectCube;
 	}
 	
 	/**
 	 * Runtime efficiency: O(1)
 	 * 
-	 * @return receiveTree the tree which take receiving number as key.
+	 * @return connectCounter the number of connections of every switch in call records.
 	 */
-	public RecordAVLTree<Long> readReceiveRecord() {
-		return receiveTree;
+	public SwitchConnectionCounter readConnectCounter() {
+		return connectCounter;
 	}
 	
 	/**
 	 * Runtime efficiency: O(1)
 	 * 
-	 * @return connectTree the tree which take switches in call records as key.
+	 * @return faultIndex the faulty calls by dialler, receiver and faulty switch.
 	 */
-	public RecordAVLTree<Integer> readConnectRecord() {
-		return connectTree;
+	public FaultIndex readFaultRecord() {
+		return faultIndex;
 	}
 }
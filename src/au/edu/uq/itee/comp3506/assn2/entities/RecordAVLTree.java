@@ -1,8 +1,15 @@
 package au.edu.uq.itee.comp3506.assn2.entities;
 
 import java.time.LocalDateTime;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Implementation of AVL tree which used to store call records.
@@ -12,11 +19,8 @@ import java.util.List;
  * @author Wayne
  */
 public class RecordAVLTree<T extends Comparable<T>> {
+	private static final int GRAIN = 16; // Switches counted by one task of a parallel search.
 	private AVLTreeNode<T> root;
-	private int max; // Max size of connection.
-	private int maxSwitch; // The switch which has most connections.
-	private int min; // Min size of connection.
-	private int minSwitch; // The switch which has fewest connections.
 	
 	/**
 	 * Node class of tree.
@@ -46,10 +50,6 @@ public class RecordAVLTree<T extends Comparable<T>> {
 	 */
 	public RecordAVLTree() {
 		root = null;
-		max = -1;
-		min = Integer.MAX_VALUE;
-		maxSwitch = 0;
-		minSwitch = 0;
 	}
 	
 	private int height(AVLTreeNode<T> tree) {
@@ -109,15 +109,35 @@ public class RecordAVLTree<T extends Comparable<T>> {
 		return rightRightRotation(k1);
 	}
 
-	private AVLTreeNode<T> insert(AVLTreeNode<T> tree, T key, CallRecord cr) {
-		if (tree == null) {
-			// Create new node
-			tree = new AVLTreeNode<T>(key, cr, null, null);
-		} else {
-			int cmp = key.compareTo(tree.key);
-
-			if (cmp < 0) { // Insert key to the left
-				tree.left = insert(tree.left, key, cr);
+	/**
+	 * Insert a record. The path from the root is kept on an explicit stack
+	 * and rebalanced on the way back up, so no recursive call is made.
+	 * 
+	 * Runtime efficiency: O(log n)
+	 * 
+	 * @param key the key value of the tree.
+	 * @param cr the record to be inserted.
+	 */
+	public void insert(T key, CallRecord cr) {
+		Deque<AVLTreeNode<T>> path = new ArrayDeque<AVLTreeNode<T>>();
+		AVLTreeNode<T> x = root;
+		while (x != null) {
+			int cmp = key.compareTo(x.key);
+			if (cmp == 0) { // Add record to the exist key
+				x.record.addLast(cr);
+				return;
+			}
+			path.push(x);
+			x = cmp < 0 ? x.left : x.right;
+		}
+		
+		// Create new node
+		AVLTreeNode<T> child = new AVLTreeNode<T>(key, cr, null, null);
+		child.height = 1;
+		while (!path.isEmpty()) {
+			AVLTreeNode<T> tree = path.pop();
+			if (key.compareTo(tree.key) < 0) { // Inserted to the left
+				tree.left = child;
 				// Rotation
 				if (height(tree.left) - height(tree.right) == 2) {
 					if (key.compareTo(tree.left.key) < 0) {
@@ -126,8 +146,8 @@ public class RecordAVLTree<T extends Comparable<T>> {
 						tree = leftRightRotation(tree);
 					}
 				}
-			} else if (cmp > 0) { // Insert key to the right
-				tree.right = insert(tree.right, key, cr);
+			} else { // Inserted to the right
+				tree.right = child;
 				// Rotation
 				if (height(tree.right) - height(tree.left) == 2) {
 					if (key.compareTo(tree.right.key) > 0) {
@@ -136,45 +156,107 @@ public class RecordAVLTree<T extends Comparable<T>> {
 						tree = rightLeftRotation(tree);
 					}
 				}
-			} else { // Add record to the exist key
-				tree.record.add(cr);
 			}
+			tree.height = Math.max(height(tree.left), height(tree.right)) + 1;
+			child = tree;
 		}
-
-		tree.height = Math.max(height(tree.left), height(tree.right)) + 1;
-
+		root = child;
+	}
+	
+	/**
+	 * Build a balanced tree from records in one pass, instead of inserting them one at a time.
+	 * The entries are grouped by key with a hash map, only the distinct keys are sorted,
+	 * and every subtree is built from the middle of its range, so no rotation is needed.
+	 * The keys' equals must agree with compareTo, as it does for Long and Integer.
+	 * 
+	 * Runtime efficiency: O(n + k log k), k is the number of distinct keys.
+	 * 
+	 * @param keys the key of each entry.
+	 * @param records the record of each entry, in the same order as the keys.
+	 * @return a tree holding the entries.
+	 */
+	public static <T extends Comparable<T>> RecordAVLTree<T> build(List<T> keys, List<CallRecord> records) {
+		if (keys.size() != records.size()) {
+			throw new IllegalArgumentException("Every record needs a key.");
+		}
+		RecordAVLTree<T> tree = new RecordAVLTree<T>();
+		Map<T, RecordAVLTree<T>.AVLTreeNode<T>> groups = new HashMap<T, RecordAVLTree<T>.AVLTreeNode<T>>();
+		Iterator<CallRecord> it = records.iterator();
+		for (T key: keys) {
+			CallRecord cr = it.next();
+			RecordAVLTree<T>.AVLTreeNode<T> node = groups.get(key);
+			if (node == null) {
+				groups.put(key, tree.new AVLTreeNode<T>(key, cr, null, null));
+			} else {
+				node.record.addLast(cr);
+			}
+		}
+		List<RecordAVLTree<T>.AVLTreeNode<T>> nodes = sort(new ArrayList<RecordAVLTree<T>.AVLTreeNode<T>>(
+				groups.values()));
+		tree.root = build(nodes, 0, nodes.size() - 1);
 		return tree;
 	}
-
+	
 	/**
-	 * Insert a record.
+	 * Sort nodes by key on the common pool. Long and Integer keys are packed above the node's position,
+	 * so a primitive sort orders them; other keys sort the nodes themselves.
 	 * 
-	 * Runtime efficiency: O(log n)
+	 * Runtime efficiency: O(k log k)
 	 * 
-	 * @param key the key value of the tree.
-	 * @param cr the record to be inserted.
+	 * @param nodes the nodes, each with a distinct key.
+	 * @return the nodes in key order.
 	 */
-	public void insert(T key, CallRecord cr) {
-		// TODO Auto-generated method stub
-		root = insert(root, key, cr);
+	@SuppressWarnings("unchecked")
+	private static <T extends Comparable<T>> List<RecordAVLTree<T>.AVLTreeNode<T>> sort(
+			List<RecordAVLTree<T>.AVLTreeNode<T>> nodes) {
+		int k = nodes.size();
+		long min = Long.MAX_VALUE;
+		long max = Long.MIN_VALUE;
+		boolean integral = true;
+		for (RecordAVLTree<T>.AVLTreeNode<T> node: nodes) {
+			if (!(node.key instanceof Long || node.key instanceof Integer)) {
+				integral = false;
+				break;
+			}
+			long key = ((Number) node.key).longValue();
+			min = Math.min(min, key);
+			max = Math.max(max, key);
+		}
+		int idBits = 32 - Integer.numberOfLeadingZeros(Math.max(k - 1, 1));
+		List<RecordAVLTree<T>.AVLTreeNode<T>> sorted = new ArrayList<RecordAVLTree<T>.AVLTreeNode<T>>(k);
+		if (k > 0 && integral && max - min >= 0 && max - min < 1L << (63 - idBits)) {
+			long[] packed = new long[k];
+			for (int i = 0; i < k; i++) {
+				packed[i] = (((Number) nodes.get(i).key).longValue() - min) << idBits | i;
+			}
+			Arrays.parallelSort(packed);
+			long mask = (1L << idBits) - 1;
+			for (long entry: packed) {
+				sorted.add(nodes.get((int) (entry & mask)));
+			}
+		} else {
+			// Keys which cannot be packed, or too far apart to pack.
+			Object[] array = nodes.toArray();
+			Arrays.parallelSort(array, (x, y) -> ((RecordAVLTree<T>.AVLTreeNode<T>) x).key.compareTo(
+					((RecordAVLTree<T>.AVLTreeNode<T>) y).key));
+			for (Object node: array) {
+				sorted.add((RecordAVLTree<T>.AVLTreeNode<T>) node);
+			}
+		}
+		return sorted;
 	}
 	
-	private AVLTreeNode<T> search(AVLTreeNode<T> x, T key) {
-		if (x == null) {
-			return x;
+	private static <T extends Comparable<T>> RecordAVLTree<T>.AVLTreeNode<T> build(
+			List<RecordAVLTree<T>.AVLTreeNode<T>> nodes, int from, int to) {
+		if (from > to) {
+			return null;
 		}
-		
-		int cmp = key.compareTo(x.key);
-		
-		if (cmp < 0) {
-			return search(x.left, key);
-		}			
-		else if (cmp > 0) {
-			return search(x.right, key);
-		}			
-		else {
-			return x;
-		}			
+		int mid = (from + to) >>> 1;
+		RecordAVLTree<T>.AVLTreeNode<T> tree = nodes.get(mid);
+		tree.left = build(nodes, from, mid - 1);
+		tree.right = build(nodes, mid + 1, to);
+		tree.height = Math.max(tree.left == null ? 0 : tree.left.height, tree.right == null ? 0 : tree.right.height) + 1;
+		return tree;
 	}
 	
 	/**
@@ -186,7 +268,80 @@ public class RecordAVLTree<T extends Comparable<T>> {
 	 * @return the found node.
 	 */
 	public AVLTreeNode<T> search(T key) {
-		return search(root, key);
+		AVLTreeNode<T> x = root;
+		int visited = 0;
+		while (x != null) {
+			visited++;
+			int cmp = key.compareTo(x.key);
+			if (cmp < 0) {
+				x = x.left;
+			} else if (cmp > 0) {
+				x = x.right;
+			} else {
+				break;
+			}
+		}
+		if (Metrics.ENABLED) {
+			Metrics.AVL_SEARCH_NODES.record(visited);
+		}
+		return x;
+	}
+	
+	/**
+	 * In-order cursor over the nodes, which keeps the path to the next node on an explicit stack
+	 * instead of making a recursive call per node.
+	 */
+	private class NodeIterator implements Iterator<AVLTreeNode<T>> {
+		private Deque<AVLTreeNode<T>> stack = new ArrayDeque<AVLTreeNode<T>>();
+		
+		/**
+		 * Runtime efficiency: O(log n)
+		 */
+		NodeIterator() {
+			pushLeft(root);
+		}
+		
+		private void pushLeft(AVLTreeNode<T> x) {
+			while (x != null) {
+				stack.push(x);
+				x = x.left;
+			}
+		}
+		
+		/**
+		 * Runtime efficiency: O(1)
+		 */
+		public boolean hasNext() {
+			return !stack.isEmpty();
+		}
+		
+		/**
+		 * Runtime efficiency: O(1) amortised.
+		 */
+		public AVLTreeNode<T> next() {
+			AVLTreeNode<T> x = stack.pop();
+			pushLeft(x.right);
+			return x;
+		}
+	}
+	
+	/**
+	 * @return every node of the tree in key order.
+	 */
+	private Iterable<AVLTreeNode<T>> nodes() {
+		return () -> new NodeIterator();
+	}
+	
+	/**
+	 * Runtime efficiency: O(1)
+	 * 
+	 * @param start Start of time period, in milliseconds since the epoch.
+	 * @param end End of time period, in milliseconds since the epoch.
+	 * @return true if the call was made in the period, compared as milliseconds without creating a LocalDateTime.
+	 */
+	private static boolean inPeriod(CallRecord t, long start, long end) {
+		long time = t.store.getTimeStamp(t.id);
+		return time >= start && time <= end;
 	}
 	
 	/**
@@ -223,13 +378,15 @@ public class RecordAVLTree<T extends Comparable<T>> {
 	 *         The list will contain duplicates of the receiver if the dialer called the receiver multiple times.
 	 */
 	public ValueList<Long> findReceiver(T dialler, LocalDateTime startTime, LocalDateTime endTime) {
+		long start = CallRecordStore.toEpochMilliCeil(startTime);
+		long end = CallRecordStore.toEpochMilli(endTime);
 		AVLTreeNode<T> tree = search(dialler);
 		ValueList<Long> receiver = new ValueList<Long>();
 		if (tree == null) {
 			return receiver;
 		}
 		for (CallRecord t: tree.record) {
-			if (t.getTimeStamp().compareTo(startTime) >= 0 && t.getTimeStamp().compareTo(endTime) <= 0) {
+			if (inPeriod(t, start, end)) {
 				receiver.add(t.getReceiver());
 			}			
 		}
@@ -269,13 +426,15 @@ public class RecordAVLTree<T extends Comparable<T>> {
 	 *         The list will contain duplicates of the caller if they called the receiver multiple times.
 	 */
 	public ValueList<Long> findDialler(T receiver, LocalDateTime startTime, LocalDateTime endTime) {
+		long start = CallRecordStore.toEpochMilliCeil(startTime);
+		long end = CallRecordStore.toEpochMilli(endTime);
 		AVLTreeNode<T> tree = search(receiver);
 		ValueList<Long> dialler = new ValueList<Long>();
 		if (tree == null) {
 			return dialler;
 		}
 		for (CallRecord t: tree.record) {
-			if (t.getTimeStamp().compareTo(startTime) >= 0 && t.getTimeStamp().compareTo(endTime) <= 0) {
+			if (inPeriod(t, start, end)) {
 				dialler.add(t.getDialler());
 			}	
 		}
@@ -328,6 +487,8 @@ public class RecordAVLTree<T extends Comparable<T>> {
 	 *         or an empty list if no fault was found between start and end time.
 	 */
 	public ValueList<Integer> findConnectionFault(T dialler, LocalDateTime startTime, LocalDateTime endTime) {
+		long start = CallRecordStore.toEpochMilliCeil(startTime);
+		long end = CallRecordStore.toEpochMilli(endTime);
 		ValueList<Integer> faults = new ValueList<Integer>();
 		List<Integer> connectionPath = new ArrayList<Integer>();
 		int receiveSwitch = 0;
@@ -336,7 +497,7 @@ public class RecordAVLTree<T extends Comparable<T>> {
 			return faults;
 		}
 		for (CallRecord t: tree.record) {
-			if (t.getTimeStamp().compareTo(startTime) >= 0 && t.getTimeStamp().compareTo(endTime) <= 0) {
+			if (inPeriod(t, start, end)) {
 				connectionPath = new ArrayList<Integer>();
 				receiveSwitch = t.getReceiverSwitch();
 				connectionPath = t.getConnectionPath();
@@ -400,6 +561,8 @@ public class RecordAVLTree<T extends Comparable<T>> {
 	 *         or an empty list if no fault was found between start and end time.
 	 */
 	public ValueList<Integer> findReceivingFault(T receiver, LocalDateTime startTime, LocalDateTime endTime) {
+		long start = CallRecordStore.toEpochMilliCeil(startTime);
+		long end = CallRecordStore.toEpochMilli(endTime);
 		ValueList<Integer> faults = new ValueList<Integer>();
 		List<Integer> connectionPath = new ArrayList<Integer>();
 		int receiveSwitch = 0;
@@ -408,7 +571,7 @@ public class RecordAVLTree<T extends Comparable<T>> {
 			return faults;
 		}
 		for (CallRecord t: tree.record) {
-			if (t.getTimeStamp().compareTo(startTime) >= 0 && t.getTimeStamp().compareTo(endTime) <= 0) {
+			if (inPeriod(t, start, end)) {
 				connectionPath = new ArrayList<Integer>();
 				receiveSwitch = t.getReceiverSwitch();
 				connectionPath = t.getConnectionPath();
@@ -427,40 +590,33 @@ public class RecordAVLTree<T extends Comparable<T>> {
 	}
 	
 	/**
-	 * Reset max and max switch.
-	 * 
-	 * Runtime efficiency: O(1)
+	 * Start of a search for the most connections: {max size of connection, switch which has most connections}.
+	 * Kept per call rather than in the tree, so concurrent searches do not share state.
 	 */
-	public void resetMax() {
-		this.max = -1;
-		this.maxSwitch = 0;
+	private static int[] newMax() {
+		return new int[] {-1, 0};
 	}
 	
 	/**
-	 * Reset min and min switch.
-	 * 
-	 * Runtime efficiency: O(1)
+	 * Start of a search for the fewest connections: {min size of connection, switch which has fewest connections}.
 	 */
-	public void resetMin() {
-		this.min = Integer.MAX_VALUE;
-		this.minSwitch = 0;
+	private static int[] newMin() {
+		return new int[] {Integer.MAX_VALUE, 0};
 	}
 	
-	private int maxConnections(AVLTreeNode<T> tree) {
-		if (tree != null) {
+	private int maxConnections(int[] max) {
+		for (AVLTreeNode<T> tree: nodes()) {
 			int count = tree.record.size();
-			if (count > max) {
-				max = count;
-				maxSwitch = (int) tree.key;
-			} else if (count == max) {
-				if (maxSwitch > (int) tree.key) {
-					maxSwitch = (int) tree.key;
+			if (count > max[0]) {
+				max[0] = count;
+				max[1] = (Integer) tree.key;
+			} else if (count == max[0]) {
+				if (max[1] > (Integer) tree.key) {
+					max[1] = (Integer) tree.key;
 				}
 			}
-			maxConnections(tree.left);
-			maxConnections(tree.right);
 		}
-		return maxSwitch;
+		return max[1];
 	}
 	
 	/**
@@ -472,31 +628,27 @@ public class RecordAVLTree<T extends Comparable<T>> {
 	 *         If multiple switches have the most connections, the smallest switch identifier is returned.
 	 */
 	public int maxConnections() {
-		resetMax();
-		return maxConnections(root);
+		return maxConnections(newMax());
 	}
 	
-	private int maxConnections(AVLTreeNode<T> tree, LocalDateTime startTime, LocalDateTime endTime) {
-		if (tree != null) {
+	private int maxConnections(long start, long end, int[] max) {
+		for (AVLTreeNode<T> tree: nodes()) {
 			int flag = 0;
 			for (CallRecord t: tree.record) {				
-				if (t.getTimeStamp().compareTo(startTime) >= 0 && t.getTimeStamp().compareTo(endTime) <= 0) {
+				if (inPeriod(t, start, end)) {
 					flag++;
 				}
 			}
-			if (flag > max && flag != 0) {
-				max = flag;
-				maxSwitch = (int) tree.key;
-			} else if (flag == max) {
-				if (maxSwitch > (int) tree.key) {
-					maxSwitch = (int) tree.key;
+			if (flag > max[0] && flag != 0) {
+				max[0] = flag;
+				max[1] = (Integer) tree.key;
+			} else if (flag == max[0]) {
+				if (max[1] > (Integer) tree.key) {
+					max[1] = (Integer) tree.key;
 				}
 			}
-			
-			maxConnections(tree.left, startTime, endTime);
-			maxConnections(tree.right, startTime, endTime);
 		}
-		return maxSwitch;
+		return max[1];
 	}
 	
 	/**
@@ -510,25 +662,22 @@ public class RecordAVLTree<T extends Comparable<T>> {
 	 *         If multiple switches have the most connections, the smallest switch identifier is returned.
 	 */
 	public int maxConnections(LocalDateTime startTime, LocalDateTime endTime) {
-		resetMax();
-		return maxConnections(root, startTime, endTime);
+		return maxConnections(CallRecordStore.toEpochMilliCeil(startTime), CallRecordStore.toEpochMilli(endTime), newMax());
 	}
 	
-	private int minConnections(AVLTreeNode<T> tree) {
-		if (tree != null) {
+	private int minConnections(int[] min) {
+		for (AVLTreeNode<T> tree: nodes()) {
 			int count = tree.record.size();
-			if (count < min) {
-				min = count;
-				minSwitch = (int) tree.key;
-			} else if (count == min) {
-				if (minSwitch > (int) tree.key) {
-					minSwitch = (int) tree.key;
+			if (count < min[0]) {
+				min[0] = count;
+				min[1] = (Integer) tree.key;
+			} else if (count == min[0]) {
+				if (min[1] > (Integer) tree.key) {
+					min[1] = (Integer) tree.key;
 				}
 			}
-			minConnections(tree.left);
-			minConnections(tree.right);
 		}
-		return minSwitch;
+		return min[1];
 	}
 	
 	/**
@@ -540,32 +689,28 @@ public class RecordAVLTree<T extends Comparable<T>> {
 	 *         If multiple switches have the fewest connections, the smallest switch identifier is returned.
 	 */
 	public int minConnections() {
-		resetMin();
-		return minConnections(root);
+		return minConnections(newMin());
 	}
 	
-	private int minConnections(AVLTreeNode<T> tree, LocalDateTime startTime, LocalDateTime endTime) {
-		if (tree != null) {
+	private int minConnections(long start, long end, int[] min) {
+		for (AVLTreeNode<T> tree: nodes()) {
 			int flag = 0;
 			for (CallRecord t: tree.record) {
-				if (t.getTimeStamp().compareTo(startTime) >= 0 && t.getTimeStamp().compareTo(endTime) <= 0) {
+				if (inPeriod(t, start, end)) {
 					flag++;
 				}
 			}
 			
-			if (flag < min && flag != 0) {
-				min = flag;
-				minSwitch = (int) tree.key;
-			} else if (flag == min) {
-				if (minSwitch > (int) tree.key) {
-					minSwitch = (int) tree.key;
+			if (flag < min[0] && flag != 0) {
+				min[0] = flag;
+				min[1] = (Integer) tree.key;
+			} else if (flag == min[0]) {
+				if (min[1] > (Integer) tree.key) {
+					min[1] = (Integer) tree.key;
 				}
 			}
-			
-			minConnections(tree.left, startTime, endTime);
-			minConnections(tree.right, startTime, endTime);
 		}
-		return minSwitch;
+		return min[1];
 	}
 	
 	/**
@@ -579,7 +724,72 @@ public class RecordAVLTree<T extends Comparable<T>> {
 	 *         If multiple switches have the fewest connections, the smallest switch identifier is returned.
 	 */
 	public int minConnections(LocalDateTime startTime, LocalDateTime endTime) {
-		resetMin();
-		return minConnections(root, startTime, endTime);
+		return minConnections(CallRecordStore.toEpochMilliCeil(startTime), CallRecordStore.toEpochMilli(endTime), newMin());
+	}
+	
+	/**
+	 * The switches of a tree keyed by switch, counting the records of each in a period when they are read,
+	 * so parts of the switches can be counted on different threads.
+	 */
+	private ConnectionSearch.Counts switchCounts(List<AVLTreeNode<T>> switches, long start, long end) {
+		return new ConnectionSearch.Counts() {
+			public int switchAt(int i) {
+				return (Integer) switches.get(i).key;
+			}
+			
+			public int count(int i) {
+				int flag = 0;
+				for (CallRecord t: switches.get(i).record) {
+					if (inPeriod(t, start, end)) {
+						flag++;
+					}
+				}
+				return flag;
+			}
+		};
+	}
+	
+	private List<AVLTreeNode<T>> nodeList() {
+		List<AVLTreeNode<T>> list = new ArrayList<AVLTreeNode<T>>();
+		for (AVLTreeNode<T> tree: nodes()) {
+			list.add(tree);
+		}
+		return list;
+	}
+	
+	/**
+	 * Determine which switch has the most connections over a specified period of time,
+	 * counting the records of the switches in parallel on a pool. The tree must be keyed by switch.
+	 * 
+	 * Runtime efficiency: O(n / p + s), p is the parallelism of the pool and s the number of switches.
+	 * 
+	 * @param startTime Start of time period.
+	 * @param endTime End of time period.
+	 * @param pool the pool which counts the switches, or null to count on this thread.
+	 * @return The identifier of the switch that had the most connections between start and end time.
+	 *         If multiple switches have the most connections, the smallest switch identifier is returned.
+	 */
+	public int maxConnections(LocalDateTime startTime, LocalDateTime endTime, ForkJoinPool pool) {
+		List<AVLTreeNode<T>> switches = nodeList();
+		return ConnectionSearch.most(switchCounts(switches, CallRecordStore.toEpochMilliCeil(startTime),
+				CallRecordStore.toEpochMilli(endTime)), switches.size(), pool, GRAIN);
+	}
+	
+	/**
+	 * Determine which switch has the fewest connections over a specified period of time,
+	 * counting the records of the switches in parallel on a pool. The tree must be keyed by switch.
+	 * 
+	 * Runtime efficiency: O(n / p + s), p is the parallelism of the pool and s the number of switches.
+	 * 
+	 * @param startTime Start of time period.
+	 * @param endTime End of time period.
+	 * @param pool the pool which counts the switches, or null to count on this thread.
+	 * @return The identifier of the switch that had the fewest connections between start and end time.
+	 *         If multiple switches have the fewest connections, the smallest switch identifier is returned.
+	 */
+	public int minConnections(LocalDateTime startTime, LocalDateTime endTime, ForkJoinPool pool) {
+		List<AVLTreeNode<T>> switches = nodeList();
+		return ConnectionSearch.fewest(switchCounts(switches, CallRecordStore.toEpochMilliCeil(startTime),
+				CallRecordStore.toEpochMilli(endTime)), switches.size(), pool, GRAIN);
 	}
 }
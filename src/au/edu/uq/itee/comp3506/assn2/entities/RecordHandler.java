@@ -0,0 +1,15 @@
+package au.edu.uq.itee.comp3506.assn2.entities;
+
+/**
+ * Callback used by ReadData to hand out each valid call record while the file is being read.
+ * 
+ * @author Wayne
+ */
+public interface RecordHandler {
+	/**
+	 * Runtime efficiency: depends on the implementation.
+	 * 
+	 * @param cr the valid record which has just been indexed.
+	 */
+	void handle(CallRecord cr);
+}
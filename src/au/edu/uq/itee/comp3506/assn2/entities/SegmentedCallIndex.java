@@ -0,0 +1,441 @@
+package au.edu.uq.itee.comp3506.assn2.entities;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+
+/**
+ * Call records partitioned by time into segments, one per day by default, each with its own store
+ * and its own dial, receive, fault, time and connection indexes.
+ *
+ * A windowed query opens only the segments which overlap its period, so its cost depends on the days it covers,
+ * not on how long the records have been kept. The segments of a query can be searched in parallel on a pool;
+ * their results are joined in segment order, so lists stay in time order.
+ *
+ * Segments before a cut off can be sealed: they no longer take records, and their indexes are compacted,
+ * the time index rebuilt bottom up and the postings shrunk to size. Retention drops whole segments,
+ * which frees their stores and indexes without touching the other segments.
+ *
+ * Not safe for concurrent use while records are added; sealed segments never change,
+ * so queries over them may run on any number of threads.
+ *
+ * Memory efficiency: O(n + d), n is the number of records and d the number of segments.
+ *
+ * @author Wayne
+ */
+public class SegmentedCallIndex {
+	public static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+	private static final int GRAIN = 4096; // Switches compared by one task of a parallel search.
+
+	private final long segmentMillis;
+	private final TreeMap<Long, Segment> segments = new TreeMap<Long, Segment>();
+	private int size;
+
+	/**
+	 * The records of one period and their indexes.
+	 */
+	private static class Segment {
+		final CallRecordStore store = new CallRecordStore();
+		final LongRecordIndex dialIndex = new LongRecordIndex(store);
+		final LongRecordIndex receiveIndex = new LongRecordIndex(store);
+		final FaultIndex faultIndex = new FaultIndex(store);
+		TimeBPlusTree timeIndex = new TimeBPlusTree(store);
+		SwitchConnectionCube connectCube = new SwitchConnectionCube(store, timeIndex);
+		boolean sealed;
+
+		/**
+		 * Runtime efficiency: O(log m), m is the number of records in the segment.
+		 *
+		 * @param bulk whether to append to the postings out of time order, for sort to order them later.
+		 */
+		CallRecord add(CallRecord cr, boolean bulk) {
+			int id = store.add(cr);
+			timeIndex.insert(store.getTimeStamp(id), id);
+			if (bulk) {
+				dialIndex.append(store.getDialler(id), id);
+				receiveIndex.append(store.getReceiver(id), id);
+				faultIndex.append(id);
+			} else {
+				dialIndex.insert(store.getDialler(id), id);
+				receiveIndex.insert(store.getReceiver(id), id);
+				faultIndex.insert(id);
+			}
+			connectCube.add(id);
+			return store.get(id);
+		}
+
+		/**
+		 * Runtime efficiency: O(u log u), u is the number of records of the keys appended out of time order.
+		 */
+		void sort() {
+			dialIndex.sort();
+			receiveIndex.sort();
+			faultIndex.sort();
+		}
+
+		/**
+		 * Rebuild the time index and the connection counts bottom up, and shrink the postings and the cube's
+		 * switch table to size.
+		 *
+		 * Runtime efficiency: O(m log m)
+		 */
+		void compact() {
+			timeIndex = TimeBPlusTree.build(store);
+			connectCube = new SwitchConnectionCube(store, timeIndex);
+			for (int id = 0; id < store.size(); id++) {
+				connectCube.add(id);
+			}
+			connectCube.compact();
+			dialIndex.trim();
+			receiveIndex.trim();
+			faultIndex.trim();
+		}
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 */
+	public SegmentedCallIndex() {
+		this(DAY_MILLIS);
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @param segmentMillis the length of the period of a segment in milliseconds.
+	 */
+	public SegmentedCallIndex(long segmentMillis) {
+		if (segmentMillis <= 0) {
+			throw new IllegalArgumentException("Segment length must be positive.");
+		}
+		this.segmentMillis = segmentMillis;
+		size = 0;
+	}
+
+	/**
+	 * Copy a record into the segment of its time stamp and index it.
+	 *
+	 * Runtime efficiency: O(log d + log m), m is the number of records in the segment.
+	 *
+	 * @param cr the record to be added, which may belong to another store.
+	 * @return the record in the segment's store.
+	 * @throws IllegalStateException if the segment of the record has been sealed.
+	 */
+	public CallRecord add(CallRecord cr) {
+		return add(cr, false);
+	}
+
+	private CallRecord add(CallRecord cr, boolean bulk) {
+		long key = Math.floorDiv(cr.store.getTimeStamp(cr.id), segmentMillis);
+		Segment segment = segments.computeIfAbsent(key, k -> new Segment());
+		if (segment.sealed) {
+			throw new IllegalStateException("The segment of " + cr.getTimeStamp() + " has been sealed.");
+		}
+		CallRecord c = segment.add(cr, bulk);
+		size++;
+		return c;
+	}
+
+	/**
+	 * Copy every record of a store into the segments and index them.
+	 * The records may come in any time order; the postings of each segment are sorted once at the end.
+	 *
+	 * Runtime efficiency: O(n (log d + log m))
+	 *
+	 * @param records the records to be added.
+	 * @throws IllegalStateException if the segment of a record has been sealed.
+	 */
+	public void addAll(CallRecordStore records) {
+		try {
+			for (int id = 0; id < records.size(); id++) {
+				add(records.get(id), true);
+			}
+		} finally {
+			for (Segment segment: segments.values()) {
+				segment.sort();
+			}
+		}
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @return the number of records.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @return the number of segments.
+	 */
+	public int segmentCount() {
+		return segments.size();
+	}
+
+	/**
+	 * Seal and compact every segment whose period ends before a time. Sealed segments take no more records.
+	 *
+	 * Runtime efficiency: O(m log m) for each segment sealed, m is the number of records in the segment.
+	 *
+	 * @param before the cut off, in milliseconds since the epoch.
+	 * @return the number of segments sealed by this call.
+	 */
+	public int sealBefore(long before) {
+		int sealed = 0;
+		for (Segment segment: segments.headMap(Math.floorDiv(before, segmentMillis), false).values()) {
+			if (!segment.sealed) {
+				segment.compact();
+				segment.sealed = true;
+				sealed++;
+			}
+		}
+		return sealed;
+	}
+
+	/**
+	 * Drop every segment whose period ends before a time. The segment holding the cut off is kept whole,
+	 * so records a little older than the cut off may remain.
+	 *
+	 * Runtime efficiency: O(r log d), r is the number of segments dropped.
+	 *
+	 * @param before the cut off, in milliseconds since the epoch.
+	 * @return the number of records dropped.
+	 */
+	public int dropBefore(long before) {
+		Map<Long, Segment> old = segments.headMap(Math.floorDiv(before, segmentMillis), false);
+		int dropped = 0;
+		for (Segment segment: old.values()) {
+			dropped += segment.store.size();
+		}
+		old.clear();
+		size -= dropped;
+		return dropped;
+	}
+
+	/**
+	 * Runtime efficiency: O(log d + r), r is the number of segments overlapping the period.
+	 *
+	 * @return the segments which overlap a period, in time order.
+	 */
+	private Collection<Segment> overlapping(long startTime, long endTime) {
+		if (startTime > endTime) {
+			return new ArrayList<Segment>();
+		}
+		return segments.subMap(Math.floorDiv(startTime, segmentMillis), true,
+				Math.floorDiv(endTime, segmentMillis), true).values();
+	}
+
+	/**
+	 * Run a query on every segment overlapping a period, one task per segment if there is a pool.
+	 *
+	 * @param pool the pool which searches the segments, or null to search them on this thread.
+	 * @return the result of each segment, in time order.
+	 */
+	private <T> List<T> map(long startTime, long endTime, ForkJoinPool pool, Function<Segment, T> query) {
+		Collection<Segment> open = overlapping(startTime, endTime);
+		List<T> results = new ArrayList<T>(open.size());
+		if (pool == null || open.size() < 2) {
+			for (Segment segment: open) {
+				results.add(query.apply(segment));
+			}
+			return results;
+		}
+		List<ForkJoinTask<T>> tasks = new ArrayList<ForkJoinTask<T>>(open.size());
+		for (Segment segment: open) {
+			tasks.add(pool.submit(() -> query.apply(segment)));
+		}
+		for (ForkJoinTask<T> task: tasks) {
+			results.add(task.join());
+		}
+		return results;
+	}
+
+	private static <E> List<E> concat(List<List<E>> parts) {
+		if (parts.size() == 1) {
+			return parts.get(0);
+		}
+		int total = 0;
+		for (List<E> part: parts) {
+			total += part.size();
+		}
+		List<E> all = new ArrayList<E>(total);
+		for (List<E> part: parts) {
+			all.addAll(part);
+		}
+		return all;
+	}
+
+	/**
+	 * Runtime efficiency: O(r (1 + log m) + k), r segments overlap the period and k receivers are found.
+	 *
+	 * @param dialler The phone number that initiated the calls.
+	 * @param startTime Start of time period, in milliseconds since the epoch.
+	 * @param endTime End of time period, in milliseconds since the epoch.
+	 * @param pool the pool which searches the segments, or null to search them on this thread.
+	 * @return The list of phone numbers called by the dialler, in time order.
+	 * @see LongRecordIndex#findReceiver(long, long, long)
+	 */
+	public List<Long> called(long dialler, long startTime, long endTime, ForkJoinPool pool) {
+		return concat(map(startTime, endTime, pool, s -> s.dialIndex.findReceiver(dialler, startTime, endTime)));
+	}
+
+	/**
+	 * Runtime efficiency: O(r (1 + log m) + k), r segments overlap the period and k diallers are found.
+	 *
+	 * @param receiver The phone number that received the calls.
+	 * @param startTime Start of time period, in milliseconds since the epoch.
+	 * @param endTime End of time period, in milliseconds since the epoch.
+	 * @param pool the pool which searches the segments, or null to search them on this thread.
+	 * @return The list of phone numbers that called the receiver, in time order.
+	 * @see LongRecordIndex#findDialler(long, long, long)
+	 */
+	public List<Long> callers(long receiver, long startTime, long endTime, ForkJoinPool pool) {
+		return concat(map(startTime, endTime, pool, s -> s.receiveIndex.findDialler(receiver, startTime, endTime)));
+	}
+
+	/**
+	 * Runtime efficiency: O(r (1 + log f) + k), f is the number of faulty calls of the dialler in a segment.
+	 *
+	 * @param dialler The phone number that initiated the calls.
+	 * @param startTime Start of time period, in milliseconds since the epoch.
+	 * @param endTime End of time period, in milliseconds since the epoch.
+	 * @param pool the pool which searches the segments, or null to search them on this thread.
+	 * @return The list of identifiers of the faulty switches, in time order.
+	 * @see FaultIndex#findConnectionFault(long, long, long)
+	 */
+	public List<Integer> findConnectionFault(long dialler, long startTime, long endTime, ForkJoinPool pool) {
+		return concat(map(startTime, endTime, pool,
+				s -> s.faultIndex.findConnectionFault(dialler, startTime, endTime)));
+	}
+
+	/**
+	 * Runtime efficiency: O(r (1 + log f) + k), f is the number of faulty calls to the receiver in a segment.
+	 *
+	 * @param receiver The phone number that should have received the calls.
+	 * @param startTime Start of time period, in milliseconds since the epoch.
+	 * @param endTime End of time period, in milliseconds since the epoch.
+	 * @param pool the pool which searches the segments, or null to search them on this thread.
+	 * @return The list of identifiers of the faulty switches, in time order.
+	 * @see FaultIndex#findReceivingFault(long, long, long)
+	 */
+	public List<Integer> findReceivingFault(long receiver, long startTime, long endTime, ForkJoinPool pool) {
+		return concat(map(startTime, endTime, pool,
+				s -> s.faultIndex.findReceivingFault(receiver, startTime, endTime)));
+	}
+
+	/**
+	 * Runtime efficiency: O(r (1 + log f) + k), f is the number of faulty calls at the switch in a segment.
+	 *
+	 * @param switchID The faulty switch.
+	 * @param startTime Start of time period, in milliseconds since the epoch.
+	 * @param endTime End of time period, in milliseconds since the epoch.
+	 * @param pool the pool which searches the segments, or null to search them on this thread.
+	 * @return The faulty calls at the switch, in time order.
+	 * @see FaultIndex#findFaultsAtSwitch(int, long, long)
+	 */
+	public List<CallRecord> faultsAtSwitch(int switchID, long startTime, long endTime, ForkJoinPool pool) {
+		return concat(map(startTime, endTime, pool,
+				s -> s.faultIndex.findFaultsAtSwitch(switchID, startTime, endTime)));
+	}
+
+	/**
+	 * Runtime efficiency: O(r log m + k), k is the number of calls in the period.
+	 *
+	 * @param startTime Start of time period, in milliseconds since the epoch.
+	 * @param endTime End of time period, in milliseconds since the epoch.
+	 * @param pool the pool which searches the segments, or null to search them on this thread.
+	 * @return The calls made in the period, in time order.
+	 * @see TimeBPlusTree#callsMade(long, long)
+	 */
+	public List<CallRecord> callsMade(long startTime, long endTime, ForkJoinPool pool) {
+		return concat(map(startTime, endTime, pool, s -> s.timeIndex.callsMade(startTime, endTime)));
+	}
+
+	/**
+	 * The connections of every switch over a period, summed over the segments which overlap it.
+	 *
+	 * Runtime efficiency: O(r s (q + log B) + e + w), s switches have a connection in a segment,
+	 * e records are in partly covered buckets and w is the range of switch identifiers found.
+	 *
+	 * @return the lowest switch found followed by the count of each switch from it on, or just 0 if none was found.
+	 */
+	private int[] connections(long startTime, long endTime, ForkJoinPool pool) {
+		List<long[]> parts = map(startTime, endTime, pool, s -> s.connectCube.switchCounts(startTime, endTime));
+		int low = Integer.MAX_VALUE;
+		int high = -1;
+		for (long[] part: parts) {
+			for (long pair: part) {
+				low = Math.min(low, (int) (pair >>> 32));
+				high = Math.max(high, (int) (pair >>> 32));
+			}
+		}
+		if (high < 0) {
+			return new int[] {0};
+		}
+		int[] total = new int[high - low + 2];
+		total[0] = low;
+		for (long[] part: parts) {
+			for (long pair: part) {
+				total[(int) (pair >>> 32) - low + 1] += (int) pair;
+			}
+		}
+		return total;
+	}
+
+	private static ConnectionSearch.Counts bySwitch(int[] total) {
+		return new ConnectionSearch.Counts() {
+			public int switchAt(int i) {
+				return total[0] + i;
+			}
+
+			public int count(int i) {
+				return total[i + 1];
+			}
+		};
+	}
+
+	/**
+	 * Determine which switch has the most connections over a specified period of time.
+	 *
+	 * Runtime efficiency: O(r s (q + log B) + e + w), see connections.
+	 *
+	 * @param startTime Start of time period, in milliseconds since the epoch.
+	 * @param endTime End of time period, in milliseconds since the epoch.
+	 * @param pool the pool which counts the segments and compares the switches, or null to use this thread.
+	 * @return The identifier of the switch that had the most connections between start and end time,
+	 *         or 0 if there is no connection in the period.
+	 *         If multiple switches have the most connections, the smallest switch identifier is returned.
+	 * @see SwitchConnectionCube#maxConnections(long, long, ForkJoinPool)
+	 */
+	public int maxConnections(long startTime, long endTime, ForkJoinPool pool) {
+		int[] total = connections(startTime, endTime, pool);
+		return ConnectionSearch.most(bySwitch(total), total.length - 1, pool, GRAIN);
+	}
+
+	/**
+	 * Determine which switch has the fewest connections over a specified period of time.
+	 * Switches without a connection in the period are not counted.
+	 *
+	 * Runtime efficiency: O(r s (q + log B) + e + w), see connections.
+	 *
+	 * @param startTime Start of time period, in milliseconds since the epoch.
+	 * @param endTime End of time period, in milliseconds since the epoch.
+	 * @param pool the pool which counts the segments and compares the switches, or null to use this thread.
+	 * @return The identifier of the switch that had the fewest connections between start and end time,
+	 *         or 0 if there is no connection in the period.
+	 *         If multiple switches have the fewest connections, the smallest switch identifier is returned.
+	 * @see SwitchConnectionCube#minConnections(long, long, ForkJoinPool)
+	 */
+	public int minConnections(long startTime, long endTime, ForkJoinPool pool) {
+		int[] total = connections(startTime, endTime, pool);
+		return ConnectionSearch.fewest(bySwitch(total), total.length - 1, pool, GRAIN);
+	}
+}
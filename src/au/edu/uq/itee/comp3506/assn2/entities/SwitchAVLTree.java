@@ -1,5 +1,10 @@
 package au.edu.uq.itee.comp3506.assn2.entities;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
 /**
  * Implementation of AVL tree which used to store switches.
  * 
@@ -95,16 +100,34 @@ public class SwitchAVLTree<T extends Comparable<T>> {
 
 		return rightRightRotation(k1);
 	}
+	/**
+	 * Insert a record. The path from the root is kept on an explicit stack
+	 * and rebalanced on the way back up, so no recursive call is made.
+	 * 
+	 * Runtime efficiency: O(log n)
+	 * 
+	 * @param key and value of the tree.
+	 */
+	public void insert(T key) {
+		Deque<AVLTreeNode<T>> path = new ArrayDeque<AVLTreeNode<T>>();
+		AVLTreeNode<T> x = root;
+		while (x != null) {
+			int cmp = key.compareTo(x.key);
+			if (cmp == 0) { // Key already exist.
+				System.out.println("Duplicate switch.");
+				return;
+			}
+			path.push(x);
+			x = cmp < 0 ? x.left : x.right;
+		}
 
-	private AVLTreeNode<T> insert(AVLTreeNode<T> tree, T key) {
-		if (tree == null) {
-			// Create new node
-			tree = new AVLTreeNode<T>(key, null, null);
-		} else {
-			int cmp = key.compareTo(tree.key);
-
-			if (cmp < 0) { // Insert key to the left
-				tree.left = insert(tree.left, key);
+		// Create new node
+		AVLTreeNode<T> child = new AVLTreeNode<T>(key, null, null);
+		child.height = 1;
+		while (!path.isEmpty()) {
+			AVLTreeNode<T> tree = path.pop();
+			if (key.compareTo(tree.key) < 0) { // Inserted to the left
+				tree.left = child;
 				// Rotation
 				if (height(tree.left) - height(tree.right) == 2) {
 					if (key.compareTo(tree.left.key) < 0) {
@@ -113,8 +136,8 @@ public class SwitchAVLTree<T extends Comparable<T>> {
 						tree = leftRightRotation(tree);
 					}
 				}
-			} else if (cmp > 0) { // Insert key to the right
-				tree.right = insert(tree.right, key);
+			} else { // Inserted to the right
+				tree.right = child;
 				// Rotation
 				if (height(tree.right) - height(tree.left) == 2) {
 					if (key.compareTo(tree.right.key) > 0) {
@@ -123,54 +146,56 @@ public class SwitchAVLTree<T extends Comparable<T>> {
 						tree = rightLeftRotation(tree);
 					}
 				}
-			} else { // Key already exist.
-				System.out.println("Duplicate switch.");				
 			}
+			tree.height = Math.max(height(tree.left), height(tree.right)) + 1;
+			child = tree;
 		}
-
-		tree.height = Math.max(height(tree.left), height(tree.right)) + 1;
-
-		return tree;
+		root = child;
 	}
-
+	
 	/**
-	 * Insert a record.
+	 * Search if the key is in the tree.
 	 * 
 	 * Runtime efficiency: O(log n)
 	 * 
-	 * @param key and value of the tree.
+	 * @param key the key to be searched.
+	 * @return the found node.
 	 */
-	public void insert(T key) {
-		root = insert(root, key);
-	}
-	
-	private AVLTreeNode<T> search(AVLTreeNode<T> x, T key) {
-		if (x == null) {
-			return x;
+	public AVLTreeNode<T> search(T key) {
+		AVLTreeNode<T> x = root;
+		while (x != null) {
+			int cmp = key.compareTo(x.key);
+			if (cmp < 0) {
+				x = x.left;
+			} else if (cmp > 0) {
+				x = x.right;
+			} else {
+				return x;
+			}
 		}
-		
-		int cmp = key.compareTo(x.key);
-		
-		if (cmp < 0) {
-			return search(x.left, key);
-		}			
-		else if (cmp > 0) {
-			return search(x.right, key);
-		}			
-		else {
-			return x;
-		}			
+		return null;
 	}
 	
 	/**
-	 * Search if the key is in the tree.
+	 * Return every key of the tree, walking it in order with an explicit stack.
 	 * 
-	 * Runtime efficiency: O(log n)
+	 * Runtime efficiency: O(n)
 	 * 
-	 * @param key the key to be searched.
-	 * @return the found node.
+	 * @return the keys in ascending order.
 	 */
-	public AVLTreeNode<T> search(T key) {
-		return search(root, key);
+	public List<T> keys() {
+		List<T> keys = new ArrayList<T>();
+		Deque<AVLTreeNode<T>> stack = new ArrayDeque<AVLTreeNode<T>>();
+		AVLTreeNode<T> x = root;
+		while (x != null || !stack.isEmpty()) {
+			while (x != null) {
+				stack.push(x);
+				x = x.left;
+			}
+			x = stack.pop();
+			keys.add(x.key);
+			x = x.right;
+		}
+		return keys;
 	}
 }
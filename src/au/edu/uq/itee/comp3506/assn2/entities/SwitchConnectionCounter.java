@@ -0,0 +1,139 @@
+package au.edu.uq.itee.comp3506.assn2.entities;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.TreeSet;
+
+/**
+ * Counts the connections of every switch as records are indexed, so the switches with the most and the fewest
+ * connections are known at all times. A connection is one appearance of a switch in a connection path.
+ *
+ * The counts are kept in an ordered set of (count, switch) pairs, which is updated on every increment.
+ * The answers are published through volatile fields, so any number of threads may read them
+ * while one thread at a time increments.
+ *
+ * Memory efficiency: O(s), s is the largest switch identifier.
+ *
+ * @author Wayne
+ */
+public class SwitchConnectionCounter {
+	private static final int INITIAL_SWITCHES = 100000; // Switch identifiers have 5 digits.
+
+	private int[] counts = new int[INITIAL_SWITCHES];
+	private TreeSet<Long> order = new TreeSet<Long>(); // (count << 32) | switch, for every switch with a connection.
+	private volatile int maxSwitch; // The switch which has most connections.
+	private volatile int minSwitch; // The switch which has fewest connections.
+
+	/**
+	 * Runtime efficiency: O(1)
+	 */
+	public SwitchConnectionCounter() {
+		maxSwitch = 0;
+		minSwitch = 0;
+	}
+
+	private static long pair(int count, int switchID) {
+		return ((long) count << 32) | switchID;
+	}
+
+	/**
+	 * Add one connection to a switch.
+	 *
+	 * Runtime efficiency: O(log s)
+	 *
+	 * @param switchID The identifier of the switch.
+	 */
+	public synchronized void increment(int switchID) {
+		if (switchID >= counts.length) {
+			counts = Arrays.copyOf(counts, Math.max(switchID + 1, counts.length * 2));
+		}
+		int count = counts[switchID];
+		if (count > 0) {
+			order.remove(pair(count, switchID));
+		}
+		counts[switchID] = ++count;
+		order.add(pair(count, switchID));
+		publish();
+	}
+
+	private void publish() {
+		if (order.isEmpty()) {
+			return;
+		}
+		// Smallest switch among those with the highest count.
+		long highest = order.last() >>> 32;
+		maxSwitch = (int) (order.ceiling(highest << 32) & 0xffffffffL);
+		minSwitch = (int) (order.first() & 0xffffffffL);
+	}
+
+	/**
+	 * Write the count of every switch with a connection to a snapshot.
+	 *
+	 * Runtime efficiency: O(s)
+	 */
+	synchronized void write(IndexSnapshot.Output out) throws IOException {
+		out.putInt(order.size());
+		for (long pair: order) {
+			out.putInt((int) (pair & 0xffffffffL));
+			out.putInt((int) (pair >>> 32));
+		}
+	}
+
+	/**
+	 * Read a counter written by write.
+	 *
+	 * Runtime efficiency: O(s log s)
+	 */
+	static SwitchConnectionCounter read(IndexSnapshot.Input in) throws IOException {
+		SwitchConnectionCounter counter = new SwitchConnectionCounter();
+		int switches = in.getCount();
+		for (int i = 0; i < switches; i++) {
+			int switchID = in.getInt();
+			int count = in.getInt();
+			if (switchID < 0 || count <= 0) {
+				throw new IOException("Snapshot counts are damaged.");
+			}
+			if (switchID >= counter.counts.length) {
+				counter.counts = Arrays.copyOf(counter.counts, Math.max(switchID + 1, counter.counts.length * 2));
+			}
+			counter.counts[switchID] = count;
+			counter.order.add(pair(count, switchID));
+		}
+		counter.publish();
+		return counter;
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @param switchID The identifier of the switch.
+	 * @return the number of connections through the switch.
+	 */
+	public synchronized int count(int switchID) {
+		return switchID < counts.length ? counts[switchID] : 0;
+	}
+
+	/**
+	 * Determine which switch has the most connections.
+	 *
+	 * Runtime efficiency: O(1)
+	 *
+	 * @return The identifier of the switch that had the most connections, or 0 if there is none.
+	 *         If multiple switches have the most connections, the smallest switch identifier is returned.
+	 */
+	public int maxConnections() {
+		return maxSwitch;
+	}
+
+	/**
+	 * Determine which switch has the fewest connections.
+	 *
+	 * Runtime efficiency: O(1)
+	 *
+	 * @return The identifier of the switch that had the fewest connections, or 0 if there is none.
+	 *         If multiple switches have the fewest connections, the smallest switch identifier is returned.
+	 */
+	public int minConnections() {
+		return minSwitch;
+	}
+}
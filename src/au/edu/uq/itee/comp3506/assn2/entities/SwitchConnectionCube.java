@@ -0,0 +1,471 @@
+package au.edu.uq.itee.comp3506.assn2.entities;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Counts the connections of every switch in fixed width time buckets,
+ * so the switches with the most and the fewest connections over a period are found without reading every record.
+ *
+ * The buckets are grouped into pages of PAGE_BUCKETS, which are only allocated once a record falls in them,
+ * so a stray time stamp years away from the rest costs one page rather than every bucket in between.
+ * Within a page, the counts of each switch are kept in a Fenwick tree over the buckets, alongside the switch's total,
+ * which gives the count of any run of whole buckets in O(q + log B) over q pages.
+ * Buckets which the period only partly covers are counted exactly by reading their records from the time index.
+ * The windowed searches can count the switches in parallel on a fork-join pool, as the counts of switches are independent.
+ *
+ * Memory efficiency: O(c * B + S), c is the number of pairs of a page and a switch with a connection in it,
+ * B is PAGE_BUCKETS, and S the range of switch identifiers, which compact() reduces to the switches of the cube.
+ *
+ * @author Wayne
+ */
+public class SwitchConnectionCube {
+	public static final long DEFAULT_BUCKET_MILLIS = 60L * 60 * 1000; // One hour.
+	static final int PAGE_BUCKETS = 1024;
+	private static final int INITIAL_SWITCHES = 100000; // Switch identifiers have 5 digits.
+	private static final int GRAIN = 256; // Switches counted by one task of a parallel search.
+
+	private CallRecordStore store;
+	private TimeBPlusTree timeIndex;
+	private long bucketMillis;
+
+	// Slot of each switch plus one, 0 if the switch has no connection; null once compacted.
+	private int[] slotOf = new int[INITIAL_SWITCHES];
+	private int[] switches = new int[16]; // Switch of each slot; in switch order once compacted.
+	private int slots;
+	private TreeMap<Long, Page> pages = new TreeMap<Long, Page>(); // By page number, the bucket over PAGE_BUCKETS.
+
+	/**
+	 * The counts of the switches in one page of buckets.
+	 */
+	static class Page {
+		int[][] trees = new int[16][]; // Fenwick tree of each slot, 1-based; null if the slot has no connection here.
+		int[] totals = new int[16]; // Connections of each slot in the page.
+
+		/**
+		 * Runtime efficiency: O(log B) amortised.
+		 */
+		void add(int slot, int position) {
+			if (slot >= trees.length) {
+				trees = Arrays.copyOf(trees, Math.max(slot + 1, trees.length * 2));
+				totals = Arrays.copyOf(totals, trees.length);
+			}
+			int[] tree = trees[slot];
+			if (tree == null) {
+				tree = new int[PAGE_BUCKETS + 1];
+				trees[slot] = tree;
+			}
+			for (int j = position; j <= PAGE_BUCKETS; j += j & -j) {
+				tree[j]++;
+			}
+			totals[slot]++;
+		}
+
+		/**
+		 * Runtime efficiency: O(log B)
+		 *
+		 * @return the connections of a slot from tree position from to position to, inclusive.
+		 */
+		int count(int slot, int from, int to) {
+			if (slot >= trees.length || trees[slot] == null) {
+				return 0;
+			}
+			if (from == 1 && to == PAGE_BUCKETS) {
+				return totals[slot];
+			}
+			return prefix(trees[slot], to) - prefix(trees[slot], from - 1);
+		}
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @param store the store which holds the records.
+	 * @param timeIndex the time index of the same records, used to count partly covered buckets.
+	 * @param bucketMillis the width of a bucket in milliseconds.
+	 */
+	public SwitchConnectionCube(CallRecordStore store, TimeBPlusTree timeIndex, long bucketMillis) {
+		if (bucketMillis <= 0) {
+			throw new IllegalArgumentException("Bucket width must be positive.");
+		}
+		this.store = store;
+		this.timeIndex = timeIndex;
+		this.bucketMillis = bucketMillis;
+		slots = 0;
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @param store the store which holds the records.
+	 * @param timeIndex the time index of the same records.
+	 */
+	public SwitchConnectionCube(CallRecordStore store, TimeBPlusTree timeIndex) {
+		this(store, timeIndex, DEFAULT_BUCKET_MILLIS);
+	}
+
+	/**
+	 * Count the connections of a record.
+	 *
+	 * Runtime efficiency: O(k log B) amortised, k is the length of the connection path.
+	 *
+	 * @param id the identifier of the record in the store.
+	 */
+	public void add(int id) {
+		int length = store.getPathLength(id);
+		if (length == 0) {
+			return;
+		}
+		long bucket = Math.floorDiv(store.getTimeStamp(id), bucketMillis);
+		long number = Math.floorDiv(bucket, PAGE_BUCKETS);
+		Page page = pages.get(number);
+		if (page == null) {
+			page = new Page();
+			pages.put(number, page);
+		}
+		int position = (int) (bucket - number * PAGE_BUCKETS) + 1;
+		for (int i = 0; i < length; i++) {
+			page.add(slot(store.getHop(id, i)), position);
+		}
+	}
+
+	private int slot(int switchID) {
+		if (slotOf == null) {
+			// Compacted; build the table again.
+			slotOf = new int[INITIAL_SWITCHES];
+			for (int i = 0; i < slots; i++) {
+				if (switches[i] >= slotOf.length) {
+					slotOf = Arrays.copyOf(slotOf, Math.max(switches[i] + 1, slotOf.length * 2));
+				}
+				slotOf[switches[i]] = i + 1;
+			}
+		}
+		if (switchID >= slotOf.length) {
+			slotOf = Arrays.copyOf(slotOf, Math.max(switchID + 1, slotOf.length * 2));
+		}
+		if (slotOf[switchID] == 0) {
+			if (slots == switches.length) {
+				switches = Arrays.copyOf(switches, Math.max(16, slots * 2));
+			}
+			switches[slots] = switchID;
+			slotOf[switchID] = ++slots;
+		}
+		return slotOf[switchID] - 1;
+	}
+
+	/**
+	 * @return the slot of a switch which has a connection.
+	 */
+	private int slotOfSwitch(int switchID) {
+		return slotOf != null ? slotOf[switchID] - 1 : Arrays.binarySearch(switches, 0, slots, switchID);
+	}
+
+	/**
+	 * Drop the table from switch to slot, which has an entry for every possible switch identifier.
+	 * The slots are renumbered in switch order, so a switch is then found by binary search over the switches
+	 * of the cube alone. Records may still be added afterwards, which builds the table again.
+	 *
+	 * Runtime efficiency: O(s log s + p s), p is the number of pages.
+	 */
+	void compact() {
+		long[] order = new long[slots];
+		for (int i = 0; i < slots; i++) {
+			order[i] = (long) switches[i] << 32 | i;
+		}
+		Arrays.sort(order);
+		int[] sorted = new int[slots];
+		int[] renumbered = new int[slots];
+		for (int i = 0; i < slots; i++) {
+			sorted[i] = (int) (order[i] >>> 32);
+			renumbered[(int) order[i]] = i;
+		}
+		for (Page page: pages.values()) {
+			int[][] trees = new int[slots][];
+			int[] totals = new int[slots];
+			for (int i = 0; i < Math.min(slots, page.trees.length); i++) {
+				trees[renumbered[i]] = page.trees[i];
+				totals[renumbered[i]] = page.totals[i];
+			}
+			page.trees = trees;
+			page.totals = totals;
+		}
+		switches = sorted;
+		slotOf = null;
+	}
+
+	/**
+	 * @return the sum of the tree from position 1 to position i.
+	 */
+	private static int prefix(int[] tree, int i) {
+		int sum = 0;
+		for (; i > 0; i -= i & -i) {
+			sum += tree[i];
+		}
+		return sum;
+	}
+
+	/**
+	 * Count the connections in the partly covered buckets of a period, and find the pages of its whole buckets.
+	 *
+	 * Runtime efficiency: O(e + log P + q), e is the number of records in the partly covered buckets,
+	 * P the number of pages and q the number of pages overlapping the period.
+	 *
+	 * @param counts count of each slot, which the records are added to.
+	 * @param whole filled with the pages of the whole buckets.
+	 * @param ranges filled with the tree positions of the whole buckets of each page, from in the high half
+	 *        and to in the low half.
+	 */
+	private void countPartial(int[] counts, long startTime, long endTime, List<Page> whole, List<Long> ranges) {
+		// Whole buckets inside the period. No time is before Long.MIN_VALUE or after Long.MAX_VALUE,
+		// so the buckets of those bounds are whole; stepping past them would overflow.
+		boolean fromFirst = startTime == Long.MIN_VALUE;
+		boolean toLast = endTime == Long.MAX_VALUE;
+		long fromBucket = fromFirst ? Math.floorDiv(startTime, bucketMillis)
+				: Math.floorDiv(startTime - 1, bucketMillis) + 1;
+		long toBucket = toLast ? Math.floorDiv(endTime, bucketMillis) : Math.floorDiv(endTime + 1, bucketMillis) - 1;
+		if (fromBucket > toBucket) {
+			countRecords(counts, startTime, endTime);
+			return;
+		}
+		if (!fromFirst && startTime < fromBucket * bucketMillis) {
+			countRecords(counts, startTime, fromBucket * bucketMillis - 1);
+		}
+		if (!toLast && endTime > (toBucket + 1) * bucketMillis - 1) {
+			countRecords(counts, (toBucket + 1) * bucketMillis, endTime);
+		}
+		for (Map.Entry<Long, Page> e: pages.subMap(Math.floorDiv(fromBucket, PAGE_BUCKETS), true,
+				Math.floorDiv(toBucket, PAGE_BUCKETS), true).entrySet()) {
+			long first = e.getKey() * PAGE_BUCKETS;
+			long from = Math.max(fromBucket, first) - first + 1;
+			long to = Math.min(toBucket, first + PAGE_BUCKETS - 1) - first + 1;
+			whole.add(e.getValue());
+			ranges.add(from << 32 | to);
+		}
+	}
+
+	/**
+	 * The connections of every switch slot over a period. Slots are counted when they are read,
+	 * so parts of the slots can be counted on different threads.
+	 *
+	 * Runtime efficiency: O(e + log P + q) to build, O(q + log B) to count a slot.
+	 */
+	private ConnectionSearch.Counts counts(long startTime, long endTime) {
+		int[] partial = new int[slots];
+		List<Page> whole = new ArrayList<Page>();
+		List<Long> ranges = new ArrayList<Long>();
+		if (startTime <= endTime && slots > 0) {
+			countPartial(partial, startTime, endTime, whole, ranges);
+		}
+		Page[] wholePages = whole.toArray(new Page[whole.size()]);
+		long[] wholeRanges = new long[wholePages.length];
+		for (int i = 0; i < wholeRanges.length; i++) {
+			wholeRanges[i] = ranges.get(i);
+		}
+		return new ConnectionSearch.Counts() {
+			public int switchAt(int i) {
+				return switches[i];
+			}
+
+			public int count(int i) {
+				int count = partial[i];
+				for (int j = 0; j < wholePages.length; j++) {
+					count += wholePages[j].count(i, (int) (wholeRanges[j] >>> 32), (int) wholeRanges[j]);
+				}
+				return count;
+			}
+		};
+	}
+
+	/**
+	 * The connections of every switch over a period, so the counts of several cubes can be summed.
+	 *
+	 * Runtime efficiency: O(s (q + log B) + e), q pages overlap the period and e records are in partly covered buckets.
+	 *
+	 * @return the switch in the high half and its count in the low half, for each switch with a connection.
+	 */
+	long[] switchCounts(long startTime, long endTime) {
+		ConnectionSearch.Counts counts = counts(startTime, endTime);
+		long[] found = new long[slots];
+		int n = 0;
+		for (int i = 0; i < slots; i++) {
+			int count = counts.count(i);
+			if (count > 0) {
+				found[n++] = (long) switches[i] << 32 | count;
+			}
+		}
+		return Arrays.copyOf(found, n);
+	}
+
+	/**
+	 * Write the switches and the counts of every page to a snapshot.
+	 *
+	 * Runtime efficiency: O(s + c * B)
+	 */
+	void write(IndexSnapshot.Output out) throws IOException {
+		out.putLong(bucketMillis);
+		out.putInt(slots);
+		out.putInts(switches, 0, slots);
+		out.putInt(pages.size());
+		for (Map.Entry<Long, Page> e: pages.entrySet()) {
+			Page page = e.getValue();
+			int used = 0;
+			for (int[] tree: page.trees) {
+				if (tree != null) {
+					used++;
+				}
+			}
+			out.putLong(e.getKey());
+			out.putInt(used);
+			for (int slot = 0; slot < page.trees.length; slot++) {
+				if (page.trees[slot] != null) {
+					out.putInt(slot);
+					out.putInt(page.totals[slot]);
+					out.putInts(page.trees[slot], 1, PAGE_BUCKETS);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Read a cube written by write.
+	 *
+	 * Runtime efficiency: O(s + c * B)
+	 */
+	static SwitchConnectionCube read(CallRecordStore store, TimeBPlusTree timeIndex, IndexSnapshot.Input in)
+			throws IOException {
+		long bucketMillis = in.getLong();
+		if (bucketMillis <= 0) {
+			throw new IOException("Snapshot cube is damaged.");
+		}
+		SwitchConnectionCube cube = new SwitchConnectionCube(store, timeIndex, bucketMillis);
+		int slots = in.getCount();
+		for (int i = 0; i < slots; i++) {
+			int switchID = in.getInt();
+			if (switchID < 0 || (switchID < cube.slotOf.length && cube.slotOf[switchID] != 0)) {
+				throw new IOException("Snapshot cube is damaged.");
+			}
+			cube.slot(switchID);
+		}
+		int pages = in.getCount();
+		for (int j = 0; j < pages; j++) {
+			long number = in.getLong();
+			int used = in.getCount();
+			if (cube.pages.containsKey(number) || used > slots) {
+				throw new IOException("Snapshot cube is damaged.");
+			}
+			Page page = new Page();
+			page.trees = new int[slots][];
+			page.totals = new int[slots];
+			for (int k = 0; k < used; k++) {
+				int slot = in.getInt();
+				int total = in.getInt();
+				if (slot < 0 || slot >= slots || page.trees[slot] != null || total <= 0) {
+					throw new IOException("Snapshot cube is damaged.");
+				}
+				int[] tree = new int[PAGE_BUCKETS + 1];
+				in.getInts(tree, 1, PAGE_BUCKETS);
+				page.trees[slot] = tree;
+				page.totals[slot] = total;
+			}
+			cube.pages.put(number, page);
+		}
+		return cube;
+	}
+
+	/**
+	 * Count the connections of the records in a period one record at a time.
+	 */
+	private void countRecords(int[] counts, long startTime, long endTime) {
+		Iterator<CallRecord> it = timeIndex.iterator(startTime, endTime);
+		while (it.hasNext()) {
+			countRecord(counts, it.next().id);
+		}
+	}
+
+	private void countRecord(int[] counts, int id) {
+		for (int i = store.getPathLength(id) - 1; i >= 0; i--) {
+			counts[slotOfSwitch(store.getHop(id, i))]++;
+		}
+	}
+
+	/**
+	 * Determine which switch has the most connections over a specified period of time.
+	 *
+	 * Runtime efficiency: O(s (q + log B) + e), q pages overlap the period and e records are in partly covered buckets.
+	 *
+	 * @param startTime Start of time period, in milliseconds since the epoch.
+	 * @param endTime End of time period, in milliseconds since the epoch.
+	 * @return The identifier of the switch that had the most connections between start and end time,
+	 *         or 0 if there is no connection in the period.
+	 *         If multiple switches have the most connections, the smallest switch identifier is returned.
+	 */
+	public int maxConnections(long startTime, long endTime) {
+		return maxConnections(startTime, endTime, null);
+	}
+
+	/**
+	 * Determine which switch has the most connections over a specified period of time,
+	 * counting the switches in parallel on a pool.
+	 *
+	 * Runtime efficiency: O(s (q + log B) / p + e), p is the parallelism of the pool.
+	 *
+	 * @param startTime Start of time period, in milliseconds since the epoch.
+	 * @param endTime End of time period, in milliseconds since the epoch.
+	 * @param pool the pool which counts the switches, or null to count on this thread.
+	 * @return The identifier of the switch that had the most connections between start and end time,
+	 *         or 0 if there is no connection in the period.
+	 *         If multiple switches have the most connections, the smallest switch identifier is returned.
+	 */
+	public int maxConnections(long startTime, long endTime, ForkJoinPool pool) {
+		long begin = Metrics.ENABLED ? System.nanoTime() : 0;
+		int maxSwitch = ConnectionSearch.most(counts(startTime, endTime), slots, pool, GRAIN);
+		if (Metrics.ENABLED) {
+			Metrics.CONNECTIONS.record(System.nanoTime() - begin);
+		}
+		return maxSwitch;
+	}
+
+	/**
+	 * Determine which switch has the fewest connections over a specified period of time.
+	 * Switches without a connection in the period are not counted.
+	 *
+	 * Runtime efficiency: O(s (q + log B) + e), q pages overlap the period and e records are in partly covered buckets.
+	 *
+	 * @param startTime Start of time period, in milliseconds since the epoch.
+	 * @param endTime End of time period, in milliseconds since the epoch.
+	 * @return The identifier of the switch that had the fewest connections between start and end time,
+	 *         or 0 if there is no connection in the period.
+	 *         If multiple switches have the fewest connections, the smallest switch identifier is returned.
+	 */
+	public int minConnections(long startTime, long endTime) {
+		return minConnections(startTime, endTime, null);
+	}
+
+	/**
+	 * Determine which switch has the fewest connections over a specified period of time,
+	 * counting the switches in parallel on a pool. Switches without a connection in the period are not counted.
+	 *
+	 * Runtime efficiency: O(s (q + log B) / p + e), p is the parallelism of the pool.
+	 *
+	 * @param startTime Start of time period, in milliseconds since the epoch.
+	 * @param endTime End of time period, in milliseconds since the epoch.
+	 * @param pool the pool which counts the switches, or null to count on this thread.
+	 * @return The identifier of the switch that had the fewest connections between start and end time,
+	 *         or 0 if there is no connection in the period.
+	 *         If multiple switches have the fewest connections, the smallest switch identifier is returned.
+	 */
+	public int minConnections(long startTime, long endTime, ForkJoinPool pool) {
+		long begin = Metrics.ENABLED ? System.nanoTime() : 0;
+		int minSwitch = ConnectionSearch.fewest(counts(startTime, endTime), slots, pool, GRAIN);
+		if (Metrics.ENABLED) {
+			Metrics.CONNECTIONS.record(System.nanoTime() - begin);
+		}
+		return minSwitch;
+	}
+}
@@ -0,0 +1,79 @@
+package au.edu.uq.itee.comp3506.assn2.entities;
+
+/**
+ * The set of valid switches as a bitmap of every 5 digit identifier, for checking the switches of a record
+ * while it is parsed. A check is a bounds test and one bit test, with no boxing and no tree descent.
+ *
+ * A registry is not changed once it has been built, so parsers on several threads can share it.
+ *
+ * Memory efficiency: O(1), 100,000 bits.
+ *
+ * @author Wayne
+ */
+public class SwitchRegistry {
+	public static final int LIMIT = 100000; // Switch identifiers have 5 digits.
+
+	private final long[] bits = new long[(LIMIT + 63) >>> 6];
+	private int size;
+
+	/**
+	 * Runtime efficiency: O(1)
+	 */
+	public SwitchRegistry() {
+		size = 0;
+	}
+
+	/**
+	 * Build a registry of the switches in a tree.
+	 *
+	 * Runtime efficiency: O(s), s is the number of switches.
+	 *
+	 * @param switchesTree the valid switches.
+	 * @return the registry.
+	 */
+	public static SwitchRegistry of(SwitchAVLTree<Integer> switchesTree) {
+		SwitchRegistry registry = new SwitchRegistry();
+		for (int switchID: switchesTree.keys()) {
+			registry.add(switchID);
+		}
+		return registry;
+	}
+
+	/**
+	 * Add a switch. An identifier outside 0 to 99,999 is ignored,
+	 * as a record can only name a switch with a 5 digit token.
+	 *
+	 * Runtime efficiency: O(1)
+	 *
+	 * @param switchID the identifier of the switch.
+	 */
+	public void add(int switchID) {
+		if (switchID < 0 || switchID >= LIMIT) {
+			return;
+		}
+		long bit = 1L << switchID;
+		if ((bits[switchID >>> 6] & bit) == 0) {
+			bits[switchID >>> 6] |= bit;
+			size++;
+		}
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @param switchID the identifier to be checked.
+	 * @return true if the switch is valid; false otherwise.
+	 */
+	public boolean contains(int switchID) {
+		return switchID >= 0 && switchID < LIMIT && (bits[switchID >>> 6] & (1L << switchID)) != 0;
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @return the number of switches.
+	 */
+	public int size() {
+		return size;
+	}
+}
@@ -1,9 +1,16 @@
 package au.edu.uq.itee.comp3506.assn2.entities;
 
 import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
 
 /**
  * Implementation of AVL tree which used to store call records based on time stamp.
+ * Keys are time stamps in milliseconds since the epoch, so comparisons are on primitive longs
+ * and a node does not hold a LocalDateTime. Dates and times are converted at the public methods.
  * 
  * Memory efficiency: O(n)
  * 
@@ -16,7 +23,7 @@ public class TimeAVLTree {
 	 * Node class of tree.
 	 */
 	private class AVLTreeNode {			
-		LocalDateTime key; // Key should be time stamp.
+		long key; // Time stamp in milliseconds since the epoch.
 		ValueList<CallRecord> record = new ValueList<CallRecord>();		
 		int height; // Tree height
 		AVLTreeNode left; // Left child
@@ -25,7 +32,7 @@ public class TimeAVLTree {
 		/**
 		 * Runtime efficiency: O(1)
 		 */
-		public AVLTreeNode(LocalDateTime key, CallRecord cr, AVLTreeNode left, AVLTreeNode right) {
+		public AVLTreeNode(long key, CallRecord cr, AVLTreeNode left, AVLTreeNode right) {
 			// TODO Auto-generated constructor stub
 			this.key = key;
 			record.add(cr);
@@ -99,73 +106,140 @@ public class TimeAVLTree {
 		return rightRightRotation(k1);
 	}	
 	
-	private AVLTreeNode insert(AVLTreeNode tree, LocalDateTime key, CallRecord cr) {
-		// TODO Auto-generated method stub
-		if (tree == null) {
-			// Create new node
-			tree = new AVLTreeNode(key, cr, null, null);
-		} else {
-			int cmp = key.compareTo(tree.key);
-
-			if (cmp < 0) { // Insert key to the left
-				tree.left = insert(tree.left, key, cr);
+	/**
+	 * Insert a record. The path from the root is kept on an explicit stack
+	 * and rebalanced on the way back up, so no recursive call is made.
+	 * 
+	 * Runtime efficiency: O(log n)
+	 * 
+	 * @param key the key value of the tree.
+	 * @param cr the record to be inserted.
+	 */
+	public void insert(LocalDateTime timeStamp, CallRecord cr) {
+		insert(CallRecordStore.toEpochMilli(timeStamp), cr);
+	}
+	
+	/**
+	 * Insert a record under a time stamp in milliseconds since the epoch.
+	 * 
+	 * Runtime efficiency: O(log n)
+	 * 
+	 * @param timeStamp the key value of the tree.
+	 * @param cr the record to be inserted.
+	 */
+	public void insert(long timeStamp, CallRecord cr) {
+		Deque<AVLTreeNode> path = new ArrayDeque<AVLTreeNode>();
+		AVLTreeNode x = root;
+		while (x != null) {
+			int cmp = Long.compare(timeStamp, x.key);
+			if (cmp == 0) { // Add record to the exist key
+				x.record.addLast(cr);
+				return;
+			}
+			path.push(x);
+			x = cmp < 0 ? x.left : x.right;
+		}
+		
+		// Create new node
+		AVLTreeNode child = new AVLTreeNode(timeStamp, cr, null, null);
+		child.height = 1;
+		while (!path.isEmpty()) {
+			AVLTreeNode tree = path.pop();
+			if (timeStamp < tree.key) { // Inserted to the left
+				tree.left = child;
 				// Rotation
 				if (height(tree.left) - height(tree.right) == 2) {
-					if (key.compareTo(tree.left.key) < 0) {
+					if (timeStamp < tree.left.key) {
 						tree = leftLeftRotation(tree);
 					} else {
 						tree = leftRightRotation(tree);
 					}
 				}
-			} else if (cmp > 0) { // Insert key to the right
-				tree.right = insert(tree.right, key, cr);
+			} else { // Inserted to the right
+				tree.right = child;
 				// Rotation
 				if (height(tree.right) - height(tree.left) == 2) {
-					if (key.compareTo(tree.right.key) > 0) {
+					if (timeStamp > tree.right.key) {
 						tree = rightRightRotation(tree);
 					} else {
 						tree = rightLeftRotation(tree);
 					}
 				}
-			} else { // Add record to the exist key
-				tree.record.add(cr);
 			}
+			tree.height = Math.max(height(tree.left), height(tree.right)) + 1;
+			child = tree;
 		}
-
-		tree.height = Math.max(height(tree.left), height(tree.right)) + 1;
-
-		return tree;
+		root = child;
 	}
 	
 	/**
-	 * Insert a record.
+	 * Build a balanced tree from records in one pass, instead of inserting them one at a time.
+	 * The records are sorted by time stamp in parallel, records with the same time stamp share a node,
+	 * and every subtree is built from the middle of its range, so no rotation is needed.
 	 * 
-	 * Runtime efficiency: O(log n)
+	 * Runtime efficiency: O(n log n / p) to sort, p is the parallelism, and O(n) to build.
 	 * 
-	 * @param key the key value of the tree.
-	 * @param cr the record to be inserted.
+	 * @param records the records to be inserted.
+	 * @return a tree holding the records.
 	 */
-	public void insert(LocalDateTime timeStamp, CallRecord cr) {
-		// TODO Auto-generated method stub
-		root = insert(root, timeStamp, cr);
-	}	
-	
-	private AVLTreeNode search(AVLTreeNode x, LocalDateTime key) {
-		if (x == null) {
-			return x;
+	public static TimeAVLTree build(CallRecord[] records) {
+		int n = records.length;
+		long[] times = new long[n];
+		long min = Long.MAX_VALUE;
+		long max = Long.MIN_VALUE;
+		for (int i = 0; i < n; i++) {
+			times[i] = records[i].store.getTimeStamp(records[i].id);
+			min = Math.min(min, times[i]);
+			max = Math.max(max, times[i]);
+		}
+		int[] order = new int[n];
+		int indexBits = 32 - Integer.numberOfLeadingZeros(Math.max(n - 1, 1));
+		if (n > 0 && max - min >= 0 && max - min < 1L << (63 - indexBits)) {
+			// Pack the time since the earliest record above the position, so a primitive sort keeps input order.
+			long[] packed = new long[n];
+			for (int i = 0; i < n; i++) {
+				packed[i] = (times[i] - min) << indexBits | i;
+			}
+			Arrays.parallelSort(packed);
+			for (int i = 0; i < n; i++) {
+				order[i] = (int) (packed[i] & ((1L << indexBits) - 1));
+			}
+		} else if (n > 0) {
+			// Time stamps too far apart to pack; sorting objects is stable.
+			Integer[] boxed = new Integer[n];
+			for (int i = 0; i < n; i++) {
+				boxed[i] = i;
+			}
+			Arrays.parallelSort(boxed, (x, y) -> Long.compare(times[x], times[y]));
+			for (int i = 0; i < n; i++) {
+				order[i] = boxed[i];
+			}
 		}
 		
-		int cmp = key.compareTo(x.key);
-		
-		if (cmp < 0) {
-			return search(x.left, key);
-		}			
-		else if (cmp > 0) {
-			return search(x.right, key);
-		}			
-		else {
-			return x;
-		}			
+		TimeAVLTree tree = new TimeAVLTree();
+		List<AVLTreeNode> nodes = new ArrayList<AVLTreeNode>();
+		for (int i = 0; i < n; i++) {
+			CallRecord cr = records[order[i]];
+			if (i == 0 || times[order[i]] != times[order[i - 1]]) {
+				nodes.add(tree.new AVLTreeNode(times[order[i]], cr, null, null));
+			} else {
+				nodes.get(nodes.size() - 1).record.addLast(cr);
+			}
+		}
+		tree.root = build(nodes, 0, nodes.size() - 1);
+		return tree;
+	}
+	
+	private static AVLTreeNode build(List<AVLTreeNode> nodes, int from, int to) {
+		if (from > to) {
+			return null;
+		}
+		int mid = (from + to) >>> 1;
+		AVLTreeNode tree = nodes.get(mid);
+		tree.left = build(nodes, from, mid - 1);
+		tree.right = build(nodes, mid + 1, to);
+		tree.height = Math.max(tree.left == null ? 0 : tree.left.height, tree.right == null ? 0 : tree.right.height) + 1;
+		return tree;
 	}
 	
 	/**
@@ -177,97 +251,89 @@ public class TimeAVLTree {
 	 * @return the found node.
 	 */
 	public AVLTreeNode search(LocalDateTime key) {
-		return search(root, key);
+		long millis = CallRecordStore.toEpochMilli(key);
+		if (millis != CallRecordStore.toEpochMilliCeil(key)) {
+			return null; // Finer than a millisecond, so no record has this time stamp.
+		}
+		return search(millis);
 	}
 	
-	private AVLTreeNode searchClosestStartTime(AVLTreeNode x, LocalDateTime startTime, AVLTreeNode closestStart) {
-		if (x == null) {
-			return closestStart;
+	private AVLTreeNode search(long key) {
+		AVLTreeNode x = root;
+		int visited = 0;
+		while (x != null) {
+			visited++;
+			if (key < x.key) {
+				x = x.left;
+			} else if (key > x.key) {
+				x = x.right;
+			} else {
+				break;
+			}
 		}
-		
-		int cmp = startTime.compareTo(x.key);
-		
-		if (cmp < 0) {
-			closestStart = x;
-			return searchClosestStartTime(x.left, startTime, closestStart);
-		}			
-		else if (cmp > 0) {
-			return searchClosestStartTime(x.right, startTime, closestStart);
-		}			
-		else {
-			return x;
-		}			
+		if (Metrics.ENABLED) {
+			Metrics.AVL_SEARCH_NODES.record(visited);
+		}
+		return x;
 	}
 	
 	/**
-	 * Find the closest start time tramp.
+	 * Determine all calls made over a specified time period.
+	 * 
+	 * Runtime efficiency: O(log n + m), m is the number of calls in the period.
 	 * 
-	 * @param startTime the time tramp need to be found.
-	 * @return the closest or the time tramp with same value.
+	 * @param startTime Start of time period.
+	 * @param endTime End of time period.
+	 * @return List of details of all calls made between start and end time.
 	 */
-	private AVLTreeNode searchClosestStartTime(LocalDateTime startTime) {
-		AVLTreeNode closestStart = null;
-		return searchClosestStartTime(root, startTime, closestStart);	
-	}
-	
-	private AVLTreeNode searchClosestEndTime(AVLTreeNode x, LocalDateTime endTime, AVLTreeNode closestEnd) {
-		if (x == null) {
-			return closestEnd;
-		}
-		
-		int cmp = endTime.compareTo(x.key);
-		
-		if (cmp < 0) {			
-			return searchClosestEndTime(x.left, endTime, closestEnd);
-		}			
-		else if (cmp > 0) {
-			closestEnd = x;
-			return searchClosestEndTime(x.right, endTime, closestEnd);
-		}			
-		else {
-			return x;
-		}			
+	public ValueList<CallRecord> callsMade(LocalDateTime startTime, LocalDateTime endTime) {
+		return callsMade(CallRecordStore.toEpochMilliCeil(startTime), CallRecordStore.toEpochMilli(endTime));
 	}
 	
 	/**
-	 * Find the closest end time tramp.
+	 * Determine all calls made over a specified time period.
+	 * An in-order cursor with an explicit stack skips the subtrees before the start
+	 * and stops at the first key after the end.
 	 * 
-	 * @param endTime the time tramp need to be found.
-	 * @return the closest or the time tramp with same value.
+	 * Runtime efficiency: O(log n + m), m is the number of calls in the period.
+	 * 
+	 * @param startTime Start of time period, in milliseconds since the epoch.
+	 * @param endTime End of time period, in milliseconds since the epoch.
+	 * @return List of details of all calls made between start and end time.
 	 */
-	private AVLTreeNode searchClosestEndTime(LocalDateTime endTime) {
-		AVLTreeNode closestEnd = null;		
-		return searchClosestEndTime(root, endTime, closestEnd);
+	public ValueList<CallRecord> callsMade(long startTime, long endTime) {
+		long begin = Metrics.ENABLED ? System.nanoTime() : 0;
+		ValueList<CallRecord> calls = collectCalls(startTime, endTime);
+		if (Metrics.ENABLED) {
+			Metrics.AVL_CALLS_MADE.record(System.nanoTime() - begin);
+		}
+		return calls;
 	}
 	
-	private ValueList<CallRecord> callsMade(AVLTreeNode tree, AVLTreeNode start, AVLTreeNode end, ValueList<CallRecord> calls) {
-		if (tree != null && start != null && end != null) {
-			callsMade(tree.left, start, end, calls);
-			if (tree.key.compareTo(start.key) >= 0 && tree.key.compareTo(end.key) <= 0) {
-				for (CallRecord c: tree.record) {
-					calls.add(c);
+	private ValueList<CallRecord> collectCalls(long startTime, long endTime) {
+		ValueList<CallRecord> calls = new ValueList<CallRecord>();
+		Deque<AVLTreeNode> stack = new ArrayDeque<AVLTreeNode>();
+		AVLTreeNode x = root;
+		while (true) {
+			while (x != null) {
+				if (x.key < startTime) {
+					x = x.right; // The whole left subtree is before the start.
+				} else {
+					stack.push(x);
+					x = x.left;
 				}
-			} else if (tree.key.compareTo(end.key) > 0) {
+			}
+			if (stack.isEmpty()) {
+				return calls;
+			}
+			x = stack.pop();
+			if (x.key > endTime) {
 				return calls;
 			}
-			callsMade(tree.right, start, end, calls);
+			for (CallRecord c: x.record) {
+				calls.add(c);
+			}
+			x = x.right;
 		}
-		return calls;
-	}
-	
-	/**
-	 * Determine all calls made over a specified time period.
-	 * 
-	 * Runtime efficiency: O(n^2)
-	 * 
-	 * @param startTime Start of time period.
-	 * @param endTime End of time period.
-	 * @return List of details of all calls made between start and end time.
-	 */
-	public ValueList<CallRecord> callsMade(LocalDateTime startTime, LocalDateTime endTime) {
-		ValueList<CallRecord> calls = new ValueList<CallRecord>();
-		AVLTreeNode start = searchClosestStartTime(startTime);
-		AVLTreeNode end = searchClosestEndTime(endTime);
-		return callsMade(root, start, end, calls);
 	}
 }
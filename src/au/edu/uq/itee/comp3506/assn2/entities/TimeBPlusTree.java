@@ -0,0 +1,496 @@
+package au.edu.uq.itee.comp3506.assn2.entities;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Implementation of B+ tree which used to store call records based on time stamp.
+ * Keys are time stamps in milliseconds since the epoch and values are record identifiers in a CallRecordStore.
+ * Leaves hold many entries in primitive arrays and are linked to their right sibling,
+ * so a range of time stamps is read with one descent and a sequential scan of the leaves.
+ * Records with the same time stamp are kept in the order they were inserted.
+ *
+ * Memory efficiency: O(n)
+ *
+ * @author Wayne
+ */
+public class TimeBPlusTree {
+	static final int LEAF_CAPACITY = 128;
+	static final int INTERNAL_CAPACITY = 128; // Maximum number of children of an internal node.
+
+	private CallRecordStore store;
+	private Node root;
+	private int size;
+	private int height;
+	private long splitKey; // Separator produced by the last split during insert.
+
+	/**
+	 * Node class of tree.
+	 */
+	abstract static class Node {
+		long[] keys;
+		int size; // Number of keys.
+	}
+
+	/**
+	 * Leaf node, holds the entries.
+	 */
+	static class Leaf extends Node {
+		int[] ids = new int[LEAF_CAPACITY];
+		Leaf next; // Right sibling.
+
+		Leaf() {
+			keys = new long[LEAF_CAPACITY];
+		}
+	}
+
+	/**
+	 * Internal node. keys[i] is the smallest key of children[i + 1].
+	 */
+	static class Internal extends Node {
+		Node[] children = new Node[INTERNAL_CAPACITY];
+
+		Internal() {
+			keys = new long[INTERNAL_CAPACITY - 1];
+		}
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @param store the store which holds the indexed records.
+	 */
+	public TimeBPlusTree(CallRecordStore store) {
+		this.store = store;
+		root = new Leaf();
+		size = 0;
+		height = 1;
+	}
+
+	/**
+	 * Build a tree of every record in a store bottom up, instead of inserting the records one at a time.
+	 * The records are sorted by time stamp in parallel, keeping records with the same time stamp in store order.
+	 *
+	 * Runtime efficiency: O(n log n / p) to sort, p is the parallelism, and O(n) to build.
+	 *
+	 * @param store the store which holds the records.
+	 * @return a tree holding every record of the store.
+	 */
+	public static TimeBPlusTree build(CallRecordStore store) {
+		int n = store.size();
+		int[] ids = new int[n];
+		long min = Long.MAX_VALUE;
+		long max = Long.MIN_VALUE;
+		for (int id = 0; id < n; id++) {
+			min = Math.min(min, store.getTimeStamp(id));
+			max = Math.max(max, store.getTimeStamp(id));
+		}
+		int idBits = 32 - Integer.numberOfLeadingZeros(Math.max(n - 1, 1));
+		if (n > 0 && max - min >= 0 && max - min < 1L << (63 - idBits)) {
+			// Pack the time since the earliest record above the identifier, so a primitive sort keeps store order.
+			long[] packed = new long[n];
+			for (int id = 0; id < n; id++) {
+				packed[id] = (store.getTimeStamp(id) - min) << idBits | id;
+			}
+			Arrays.parallelSort(packed);
+			long mask = (1L << idBits) - 1;
+			for (int i = 0; i < n; i++) {
+				ids[i] = (int) (packed[i] & mask);
+			}
+		} else if (n > 0) {
+			// Time stamps too far apart to pack; sorting objects is stable.
+			Integer[] boxed = new Integer[n];
+			for (int id = 0; id < n; id++) {
+				boxed[id] = id;
+			}
+			Arrays.parallelSort(boxed, (a, b) -> Long.compare(store.getTimeStamp(a), store.getTimeStamp(b)));
+			for (int i = 0; i < n; i++) {
+				ids[i] = boxed[i];
+			}
+		}
+		return bulkLoad(store, ids, n);
+	}
+
+	/**
+	 * Build a tree bottom up from records which are already in time order.
+	 * The entries are spread evenly over full width levels, so every node is at least half full.
+	 *
+	 * Runtime efficiency: O(n)
+	 *
+	 * @param store the store which holds the records.
+	 * @param ids identifiers of the records, sorted by time stamp.
+	 * @param n number of identifiers.
+	 * @return a tree holding the records.
+	 * @throws IllegalArgumentException if the records are not in time order.
+	 */
+	static TimeBPlusTree bulkLoad(CallRecordStore store, int[] ids, int n) {
+		TimeBPlusTree tree = new TimeBPlusTree(store);
+		if (n == 0) {
+			return tree;
+		}
+		int leaves = (n + LEAF_CAPACITY - 1) / LEAF_CAPACITY;
+		Node[] level = new Node[leaves];
+		long[] firstKeys = new long[leaves]; // Smallest key under each node of the level.
+		Leaf previous = null;
+		long last = Long.MIN_VALUE;
+		for (int i = 0; i < leaves; i++) {
+			int from = (int) ((long) n * i / leaves);
+			int to = (int) ((long) n * (i + 1) / leaves);
+			Leaf leaf = new Leaf();
+			for (int j = from; j < to; j++) {
+				long key = store.getTimeStamp(ids[j]);
+				if (key < last) {
+					throw new IllegalArgumentException("Records are not in time order.");
+				}
+				last = key;
+				leaf.keys[j - from] = key;
+				leaf.ids[j - from] = ids[j];
+			}
+			leaf.size = to - from;
+			if (previous != null) {
+				previous.next = leaf;
+			}
+			previous = leaf;
+			level[i] = leaf;
+			firstKeys[i] = leaf.keys[0];
+		}
+
+		int height = 1;
+		while (level.length > 1) {
+			int parents = (level.length + INTERNAL_CAPACITY - 1) / INTERNAL_CAPACITY;
+			Node[] up = new Node[parents];
+			long[] upKeys = new long[parents];
+			for (int i = 0; i < parents; i++) {
+				int from = (int) ((long) level.length * i / parents);
+				int to = (int) ((long) level.length * (i + 1) / parents);
+				Internal node = new Internal();
+				for (int j = from; j < to; j++) {
+					node.children[j - from] = level[j];
+					if (j > from) {
+						node.keys[j - from - 1] = firstKeys[j];
+					}
+				}
+				node.size = to - from - 1;
+				up[i] = node;
+				upKeys[i] = firstKeys[from];
+			}
+			level = up;
+			firstKeys = upKeys;
+			height++;
+		}
+		tree.root = level[0];
+		tree.size = n;
+		tree.height = height;
+		return tree;
+	}
+
+	/**
+	 * Runtime efficiency: O(1)
+	 *
+	 * @return the number of entries.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Return the height of tree.
+	 *
+	 * Runtime efficiency: O(1)
+	 */
+	public int height() {
+		return height;
+	}
+
+	/**
+	 * @return the number of keys in node which are smaller than key.
+	 */
+	static int lowerBound(Node node, long key) {
+		int low = 0;
+		int high = node.size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (node.keys[mid] < key) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return the number of keys in node which are smaller than or equal to key.
+	 */
+	static int upperBound(Node node, long key) {
+		int low = 0;
+		int high = node.size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (node.keys[mid] <= key) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Insert a record.
+	 *
+	 * Runtime efficiency: O(log n)
+	 *
+	 * @param timeStamp the time stamp of the record, in milliseconds since the epoch.
+	 * @param id the identifier of the record in the store.
+	 */
+	public void insert(long timeStamp, int id) {
+		Node sibling = insert(root, timeStamp, id);
+		if (sibling != null) {
+			Internal newRoot = new Internal();
+			newRoot.children[0] = root;
+			newRoot.children[1] = sibling;
+			newRoot.keys[0] = splitKey;
+			newRoot.size = 1;
+			root = newRoot;
+			height++;
+		}
+		size++;
+	}
+
+	/**
+	 * @return the new right sibling if the node was split, with its separator in splitKey; null otherwise.
+	 */
+	private Node insert(Node node, long key, int id) {
+		if (node instanceof Leaf) {
+			return insertIntoLeaf((Leaf) node, key, id);
+		}
+		Internal internal = (Internal) node;
+		int i = upperBound(internal, key); // Equal keys go after the existing ones.
+		Node child = insert(internal.children[i], key, id);
+		if (child == null) {
+			return null;
+		}
+		return insertIntoInternal(internal, i, splitKey, child);
+	}
+
+	private Leaf insertIntoLeaf(Leaf leaf, long key, int id) {
+		int i = upperBound(leaf, key);
+		if (leaf.size < LEAF_CAPACITY) {
+			System.arraycopy(leaf.keys, i, leaf.keys, i + 1, leaf.size - i);
+			System.arraycopy(leaf.ids, i, leaf.ids, i + 1, leaf.size - i);
+			leaf.keys[i] = key;
+			leaf.ids[i] = id;
+			leaf.size++;
+			return null;
+		}
+		// Split, keeping the lower half in leaf.
+		Leaf right = new Leaf();
+		int half = LEAF_CAPACITY / 2;
+		System.arraycopy(leaf.keys, half, right.keys, 0, LEAF_CAPACITY - half);
+		System.arraycopy(leaf.ids, half, right.ids, 0, LEAF_CAPACITY - half);
+		right.size = LEAF_CAPACITY - half;
+		leaf.size = half;
+		right.next = leaf.next;
+		leaf.next = right;
+		if (i <= half) {
+			insertIntoLeaf(leaf, key, id);
+		} else {
+			insertIntoLeaf(right, key, id);
+		}
+		splitKey = right.keys[0];
+		return right;
+	}
+
+	/**
+	 * Add child as the right neighbour of children[i], with separator key.
+	 */
+	private Internal insertIntoInternal(Internal node, int i, long key, Node child) {
+		if (node.size + 1 < INTERNAL_CAPACITY) {
+			System.arraycopy(node.keys, i, node.keys, i + 1, node.size - i);
+			System.arraycopy(node.children, i + 1, node.children, i + 2, node.size - i);
+			node.keys[i] = key;
+			node.children[i + 1] = child;
+			node.size++;
+			return null;
+		}
+		// Split a full node: gather its keys and children with the new one, then divide them.
+		long[] keys = new long[INTERNAL_CAPACITY];
+		Node[] children = new Node[INTERNAL_CAPACITY + 1];
+		System.arraycopy(node.keys, 0, keys, 0, i);
+		keys[i] = key;
+		System.arraycopy(node.keys, i, keys, i + 1, node.size - i);
+		System.arraycopy(node.children, 0, children, 0, i + 1);
+		children[i + 1] = child;
+		System.arraycopy(node.children, i + 1, children, i + 2, node.size - i);
+
+		int mid = INTERNAL_CAPACITY / 2;
+		Internal right = new Internal();
+		node.size = mid;
+		System.arraycopy(keys, 0, node.keys, 0, mid);
+		System.arraycopy(children, 0, node.children, 0, mid + 1);
+		for (int j = mid + 1; j < INTERNAL_CAPACITY; j++) {
+			node.children[j] = null;
+		}
+		right.size = INTERNAL_CAPACITY - mid - 1;
+		System.arraycopy(keys, mid + 1, right.keys, 0, right.size);
+		System.arraycopy(children, mid + 1, right.children, 0, right.size + 1);
+		splitKey = keys[mid];
+		return right;
+	}
+
+	/**
+	 * Find the leaf which holds the first entry with a time stamp not before startTime.
+	 *
+	 * Runtime efficiency: O(log n)
+	 */
+	Leaf findLeaf(long startTime) {
+		Node node = root;
+		while (node instanceof Internal) {
+			node = ((Internal) node).children[lowerBound(node, startTime)];
+		}
+		return (Leaf) node;
+	}
+
+	/**
+	 * Determine all calls made over a specified time period.
+	 *
+	 * Runtime efficiency: O(log n + m), m is the number of calls in the period.
+	 *
+	 * @param startTime Start of time period, in milliseconds since the epoch.
+	 * @param endTime End of time period, in milliseconds since the epoch.
+	 * @return List of details of all calls made between start and end time, in time order.
+	 */
+	public List<CallRecord> callsMade(long startTime, long endTime) {
+		long begin = Metrics.ENABLED ? System.nanoTime() : 0;
+		List<CallRecord> calls = new ArrayList<CallRecord>();
+		Iterator<CallRecord> it = iterator(startTime, endTime);
+		while (it.hasNext()) {
+			calls.add(it.next());
+		}
+		if (Metrics.ENABLED) {
+			Metrics.CALLS_MADE.record(System.nanoTime() - begin);
+		}
+		return calls;
+	}
+	
+	/**
+	 * Determine the calls made over a specified time period lazily.
+	 * The leaves are walked as the iterator advances, so stopping early skips the rest of the period.
+	 *
+	 * Runtime efficiency: O(log n) to create, O(1) amortised for each call.
+	 *
+	 * @param startTime Start of time period, in milliseconds since the epoch.
+	 * @param endTime End of time period, in milliseconds since the epoch.
+	 * @return Iterator over the calls made between start and end time, in time order.
+	 */
+	public Iterator<CallRecord> iterator(long startTime, long endTime) {
+		return new RangeIterator(startTime, endTime);
+	}
+	
+	/**
+	 * Determine the calls made over a specified time period as a lazy sequential stream,
+	 * so operations such as limit and findFirst stop the walk early.
+	 *
+	 * Runtime efficiency: O(log n) to create, O(1) amortised for each call.
+	 *
+	 * @param startTime Start of time period, in milliseconds since the epoch.
+	 * @param endTime End of time period, in milliseconds since the epoch.
+	 * @return Stream of the calls made between start and end time, in time order.
+	 */
+	public Stream<CallRecord> stream(long startTime, long endTime) {
+		Spliterator<CallRecord> spliterator = Spliterators.spliteratorUnknownSize(iterator(startTime, endTime),
+				Spliterator.ORDERED | Spliterator.NONNULL);
+		return StreamSupport.stream(spliterator, false);
+	}
+	
+	/**
+	 * Write the record identifiers to a snapshot in time order.
+	 *
+	 * Runtime efficiency: O(n)
+	 */
+	void write(IndexSnapshot.Output out) throws IOException {
+		out.putInt(size);
+		for (Leaf leaf = findLeaf(Long.MIN_VALUE); leaf != null; leaf = leaf.next) {
+			out.putInts(leaf.ids, 0, leaf.size);
+		}
+	}
+
+	/**
+	 * Read a tree written by write. The identifiers are already in time order, so the tree is bulk loaded.
+	 *
+	 * Runtime efficiency: O(n)
+	 */
+	static TimeBPlusTree read(CallRecordStore store, IndexSnapshot.Input in) throws IOException {
+		int size = in.getCount();
+		int[] ids = new int[size];
+		in.getInts(ids, 0, size);
+		for (int i = 0; i < size; i++) {
+			IndexSnapshot.checkId(store, ids[i]);
+		}
+		try {
+			return bulkLoad(store, ids, size);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Snapshot time index is damaged.", e);
+		}
+	}
+
+	/**
+	 * Walks the leaves from the first entry not before the start time to the last entry not after the end time.
+	 */
+	private class RangeIterator implements Iterator<CallRecord> {
+		private Leaf leaf;
+		private int i;
+		private long endTime;
+		
+		/**
+		 * Runtime efficiency: O(log n)
+		 */
+		RangeIterator(long startTime, long endTime) {
+			this.endTime = endTime;
+			leaf = findLeaf(startTime);
+			i = lowerBound(leaf, startTime);
+			advance();
+		}
+		
+		/**
+		 * Move to the next leaf if the current one is used up, and stop once past the end time.
+		 */
+		private void advance() {
+			while (leaf != null && i == leaf.size) {
+				leaf = leaf.next;
+				i = 0;
+			}
+			if (leaf != null && leaf.keys[i] > endTime) {
+				leaf = null;
+			}
+		}
+		
+		/**
+		 * Runtime efficiency: O(1)
+		 */
+		public boolean hasNext() {
+			return leaf != null;
+		}
+		
+		/**
+		 * Runtime efficiency: O(1) amortised.
+		 */
+		public CallRecord next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			CallRecord cr = store.get(leaf.ids[i++]);
+			advance();
+			return cr;
+		}
+	}
+}
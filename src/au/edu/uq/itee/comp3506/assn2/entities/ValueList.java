@@ -14,6 +14,7 @@ public class ValueList<T> implements Iterable<T> {
 	
 	int N; // Size of a list
 	Node<T> first;
+	Node<T> last;
 	
 	/**
 	 * Node class of list.
@@ -28,6 +29,7 @@ public class ValueList<T> implements Iterable<T> {
 	 */
 	public ValueList() {
 		first = null;
+		last = null;
         N = 0;
 	}
 	
@@ -53,6 +55,26 @@ public class ValueList<T> implements Iterable<T> {
         first = new Node<T>();
         first.item = item;
         first.next = oldfirst;
+        if (oldfirst == null) {
+        	last = first;
+        }
+        N++;
+    }
+    
+    /**
+     * Add an item at the end of the list, so items added this way keep the order they were added in.
+     * 
+	 * Runtime efficiency: O(1)
+	 */
+    public void addLast(T item) {
+        Node<T> node = new Node<T>();
+        node.item = item;
+        if (last == null) {
+        	first = node;
+        } else {
+        	last.next = node;
+        }
+        last = node;
         N++;
     }
     
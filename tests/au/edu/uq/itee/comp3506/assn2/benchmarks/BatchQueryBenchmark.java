@@ -0,0 +1,102 @@
+package au.edu.uq.itee.comp3506.assn2.benchmarks;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import au.edu.uq.itee.comp3506.assn2.entities.CallBatch;
+import au.edu.uq.itee.comp3506.assn2.entities.CallRecordStore;
+import au.edu.uq.itee.comp3506.assn2.entities.FaultIndex;
+import au.edu.uq.itee.comp3506.assn2.entities.LongRecordIndex;
+import au.edu.uq.itee.comp3506.assn2.entities.ReadData;
+
+/**
+ * Compares looking up a batch of diallers one at a time, as called(long) and findConnectionFault(long) do,
+ * with one findBatch over all of them, on this thread and on the common pool. Uses the synthetic data of
+ * QueryBenchmark; the diallers are drawn from the records, with one in ten a number which never called.
+ *
+ * Usage: BatchQueryBenchmark [records] [keys] [rounds]
+ *
+ * @author Wayne
+ */
+public class BatchQueryBenchmark {
+	private static long sink; // Values found, so the lookups cannot be optimised away.
+
+	/**
+	 * A lookup of every key, returning the number of values found.
+	 */
+	private interface Lookup {
+		long run(long[] keys);
+	}
+
+	public static void main(String[] args) {
+		int records = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int keyCount = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+		CallRecordStore store = QueryBenchmark.generate(records, Math.max(1000, records / 20), 1, 1000);
+		ReadData reader = new ReadData();
+		reader.indexRecords(store);
+		LongRecordIndex dialIndex = reader.readDialRecord();
+		FaultIndex faultIndex = reader.readFaultRecord();
+
+		Random random = new Random(7);
+		long[] keys = new long[keyCount];
+		for (int i = 0; i < keyCount; i++) {
+			keys[i] = random.nextInt(10) == 0 ? random.nextLong() : store.getDialler(random.nextInt(store.size()));
+		}
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		System.out.printf("Records: %d, keys: %d, rounds: %d, pool parallelism: %d%n", records, keyCount, rounds,
+				pool.getParallelism());
+
+		run("called one at a time", rounds, keys, k -> {
+			long found = 0;
+			for (long dialler: k) {
+				List<Long> receivers = dialIndex.findReceiver(dialler);
+				found += receivers.size();
+			}
+			return found;
+		});
+		run("called batch", rounds, keys, k -> total(dialIndex.findBatch(k, Long.MIN_VALUE, Long.MAX_VALUE,
+				LongRecordIndex.RECEIVER, null)));
+		run("called batch on pool", rounds, keys, k -> total(dialIndex.findBatch(k, Long.MIN_VALUE, Long.MAX_VALUE,
+				LongRecordIndex.RECEIVER, pool)));
+		run("faults one at a time", rounds, keys, k -> {
+			long found = 0;
+			for (long dialler: k) {
+				found += faultIndex.findConnectionFault(dialler).size();
+			}
+			return found;
+		});
+		run("faults batch", rounds, keys, k -> total(faultIndex.findConnectionFaults(k, Long.MIN_VALUE,
+				Long.MAX_VALUE, null)));
+		run("faults batch on pool", rounds, keys, k -> total(faultIndex.findConnectionFaults(k, Long.MIN_VALUE,
+				Long.MAX_VALUE, pool)));
+		System.out.println("(" + sink + ")");
+	}
+
+	private static long total(CallBatch batch) {
+		return batch.offsets()[batch.size()];
+	}
+
+	/**
+	 * Warm up a lookup, then time it and print the time and allocation per key of the last rounds.
+	 */
+	private static void run(String name, int rounds, long[] keys, Lookup lookup) {
+		for (int i = 0; i < rounds; i++) {
+			sink += lookup.run(keys);
+		}
+		long allocated = ParserBenchmark.allocatedBytes();
+		long start = System.nanoTime();
+		long found = 0;
+		for (int i = 0; i < rounds; i++) {
+			found = lookup.run(keys);
+			sink += found;
+		}
+		long nanos = System.nanoTime() - start;
+		allocated = ParserBenchmark.allocatedBytes() - allocated;
+		long total = (long) keys.length * rounds;
+		System.out.printf("%-22s %8.1f ns/key %8.1f bytes/key, %d values%n", name, (double) nanos / total,
+				(double) allocated / total, found);
+	}
+}
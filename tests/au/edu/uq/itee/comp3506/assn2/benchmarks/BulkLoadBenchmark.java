@@ -0,0 +1,103 @@
+package au.edu.uq.itee.comp3506.assn2.benchmarks;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import au.edu.uq.itee.comp3506.assn2.entities.CallRecord;
+import au.edu.uq.itee.comp3506.assn2.entities.CallRecordStore;
+import au.edu.uq.itee.comp3506.assn2.entities.RecordAVLTree;
+import au.edu.uq.itee.comp3506.assn2.entities.TimeAVLTree;
+import au.edu.uq.itee.comp3506.assn2.entities.TimeBPlusTree;
+
+/**
+ * Compares building the time and dialler indexes by inserting records one at a time
+ * with building them in bulk from sorted input.
+ * Records get random time stamps over 30 days and diallers from a pool of a hundred thousand numbers.
+ * The AVL trees keep an object per record, so leave them out for 100 million records unless the heap is very large.
+ *
+ * Usage: BulkLoadBenchmark [records] [include AVL trees]
+ *
+ * @author Wayne
+ */
+public class BulkLoadBenchmark {
+	private static final long START = CallRecordStore.toEpochMilli(LocalDateTime.parse("2017-09-01T00:00:00"));
+	private static final long PERIOD = 30L * 24 * 60 * 60 * 1000;
+	private static final int DIALLERS = 100000;
+	private static final int[] NO_PATH = new int[0];
+	private static final int ROUNDS = 3;
+
+	private static long sink; // Tree heights, so the builds cannot be optimised away.
+
+	public static void main(String[] args) {
+		int records = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		boolean avl = args.length > 1 ? Boolean.parseBoolean(args[1]) : true;
+
+		Random random = new Random(42);
+		CallRecordStore store = new CallRecordStore();
+		for (int i = 0; i < records; i++) {
+			long time = START + (long) (random.nextDouble() * PERIOD);
+			store.add(4000000000L + random.nextInt(DIALLERS), random.nextLong(), 0, 0, NO_PATH, 0, 0, time);
+		}
+		CallRecord[] views = new CallRecord[avl ? records : 0];
+		List<Long> diallers = new ArrayList<Long>(views.length);
+		for (int id = 0; id < views.length; id++) {
+			views[id] = store.get(id);
+			diallers.add(store.getDialler(id));
+		}
+		List<CallRecord> viewList = Arrays.asList(views);
+		System.out.println("Records: " + records);
+
+		for (int round = 0; round < ROUNDS; round++) {
+			boolean report = round == ROUNDS - 1; // Earlier rounds warm up.
+
+			long time = System.nanoTime();
+			TimeBPlusTree inserted = new TimeBPlusTree(store);
+			for (int id = 0; id < records; id++) {
+				inserted.insert(store.getTimeStamp(id), id);
+			}
+			long insertTime = System.nanoTime() - time;
+			sink += inserted.height();
+			inserted = null;
+			time = System.nanoTime();
+			sink += TimeBPlusTree.build(store).height();
+			print(report, "TimeBPlusTree", insertTime, System.nanoTime() - time);
+
+			if (!avl) {
+				continue;
+			}
+			time = System.nanoTime();
+			TimeAVLTree timeTree = new TimeAVLTree();
+			for (CallRecord cr: views) {
+				timeTree.insert(cr.getTimeStamp(), cr);
+			}
+			insertTime = System.nanoTime() - time;
+			sink += timeTree.height();
+			timeTree = null;
+			time = System.nanoTime();
+			sink += TimeAVLTree.build(views).height();
+			print(report, "TimeAVLTree", insertTime, System.nanoTime() - time);
+
+			time = System.nanoTime();
+			RecordAVLTree<Long> dialTree = new RecordAVLTree<Long>();
+			for (CallRecord cr: views) {
+				dialTree.insert(cr.getDialler(), cr);
+			}
+			insertTime = System.nanoTime() - time;
+			sink += dialTree.height();
+			dialTree = null;
+			time = System.nanoTime();
+			sink += RecordAVLTree.build(diallers, viewList).height();
+			print(report, "RecordAVLTree", insertTime, System.nanoTime() - time);
+		}
+	}
+
+	private static void print(boolean report, String name, long insertTime, long buildTime) {
+		if (report) {
+			System.out.printf("%-14s insert %9.1f ms, bulk build %9.1f ms (%d)%n", name,
+					insertTime / 1e6, buildTime / 1e6, sink);
+		}
+	}
+}
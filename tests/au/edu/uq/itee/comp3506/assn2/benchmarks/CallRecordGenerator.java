@@ -0,0 +1,378 @@
+package au.edu.uq.itee.comp3506.assn2.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Writes a file of synthetic call records in the format ReadData reads, for testing at production scale.
+ *
+ * Most lines are connected calls whose path runs from the dialler's switch to the receiver's switch
+ * through up to MAX_HOPS switches. A share of the calls are faulty: either the path is empty
+ * or it stops short of the receiver's switch. A further share of the lines are corrupt in one of the ways
+ * CallRecordParser rejects, spread evenly over CORRUPT_KINDS.
+ *
+ * The file is made of chunks of CHUNK_LINES lines, and each chunk has its own random generator derived from the seed
+ * and the chunk number. Chunks are formatted in parallel and written in order, so the file depends only on the seed
+ * and the options, never on the number of threads. Lines are formatted straight into bytes with no strings,
+ * and at most a few chunks per thread are held at a time, so the generator runs at disk speed for any size.
+ *
+ * Memory efficiency: O(c * p), c is the size of a chunk and p the number of threads.
+ *
+ * Usage: CallRecordGenerator [lines] [output file] [seed] [threads] [switches file]
+ *        [fault percent] [corrupt percent] [numbers]
+ *
+ * @author Wayne
+ */
+public class CallRecordGenerator {
+	public static final int CHUNK_LINES = 1 << 16;
+	public static final int MAX_HOPS = 8;
+	public static final String[] KINDS = {"connected", "faulty", "missing fields", "unknown switch",
+			"short switch", "dialler switch mismatch", "repeated switch", "bad time stamp", "bad number"};
+	private static final int CONNECTED = 0;
+	private static final int FAULTY = 1;
+	private static final int CORRUPT_KINDS = KINDS.length - 2;
+	private static final LocalDate FIRST_DAY = LocalDate.parse("2017-09-01");
+	private static final int DAYS = 30;
+	private static final long DAY = 24L * 60 * 60 * 1000;
+	private static final long FIRST_NUMBER = 1000000000L; // Phone numbers have 10 digits.
+
+	private int[] switches;
+	private BitSet known = new BitSet(100000);
+	private long seed;
+	private double faultRate;
+	private double corruptRate;
+	private long numbers;
+	private byte[][] dates = new byte[DAYS][];
+
+	/**
+	 * Runtime efficiency: O(s), s is the number of switches.
+	 *
+	 * @param switches the valid switches, at least two.
+	 * @param seed the seed of the whole file.
+	 * @param faultRate the share of calls which are faulty.
+	 * @param corruptRate the share of lines which are corrupt.
+	 * @param numbers the number of distinct phone numbers.
+	 */
+	public CallRecordGenerator(int[] switches, long seed, double faultRate, double corruptRate, long numbers) {
+		if (switches.length < 2) {
+			throw new IllegalArgumentException("At least two switches are needed.");
+		}
+		if (numbers <= 0 || numbers > 9 * FIRST_NUMBER) {
+			throw new IllegalArgumentException("Numbers must be between 1 and 9,000,000,000.");
+		}
+		this.switches = switches.clone();
+		for (int s: switches) {
+			known.set(s);
+		}
+		this.seed = seed;
+		this.faultRate = faultRate;
+		this.corruptRate = corruptRate;
+		this.numbers = numbers;
+		for (int d = 0; d < DAYS; d++) {
+			dates[d] = FIRST_DAY.plusDays(d).toString().getBytes(StandardCharsets.US_ASCII);
+		}
+	}
+
+	/**
+	 * Write the lines to a file, formatting chunks on the pool.
+	 *
+	 * Runtime efficiency: O(n / p), p is the parallelism of the pool, unless the disk is slower.
+	 *
+	 * @param path the file to be written; it is replaced if it exists.
+	 * @param lines the number of lines.
+	 * @param pool the pool which formats the chunks.
+	 * @return the number of lines of each kind, indexed as KINDS.
+	 * @throws IOException if the file cannot be written.
+	 */
+	public long[] write(Path path, long lines, ForkJoinPool pool) throws IOException {
+		long[] counts = new long[KINDS.length];
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			int window = Math.max(2, pool.getParallelism() * 2);
+			ArrayDeque<ForkJoinTask<Chunk>> pending = new ArrayDeque<ForkJoinTask<Chunk>>();
+			long chunks = (lines + CHUNK_LINES - 1) / CHUNK_LINES;
+			long next = 0;
+
+			while (next < chunks || !pending.isEmpty()) {
+				while (next < chunks && pending.size() < window) {
+					long chunk = next++;
+					int count = (int) Math.min(CHUNK_LINES, lines - chunk * CHUNK_LINES);
+					pending.add(pool.submit(() -> chunk(chunk, count)));
+				}
+				Chunk done = pending.poll().join();
+				ByteBuffer buf = ByteBuffer.wrap(done.bytes, 0, done.length);
+				while (buf.hasRemaining()) {
+					channel.write(buf);
+				}
+				for (int k = 0; k < counts.length; k++) {
+					counts[k] += done.counts[k];
+				}
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * The formatted lines of a chunk.
+	 */
+	private static class Chunk {
+		byte[] bytes;
+		int length;
+		long[] counts = new long[KINDS.length];
+
+		Chunk(int capacity) {
+			bytes = new byte[capacity];
+		}
+
+		void ensure(int more) {
+			if (length + more > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + more));
+			}
+		}
+
+		void put(int b) {
+			bytes[length++] = (byte) b;
+		}
+
+		void put(byte[] b) {
+			System.arraycopy(b, 0, bytes, length, b.length);
+			length += b.length;
+		}
+
+		/**
+		 * Write a number with a fixed number of digits, padded with zeros.
+		 */
+		void digits(long value, int count) {
+			for (int i = length + count - 1; i >= length; i--) {
+				bytes[i] = (byte) ('0' + value % 10);
+				value /= 10;
+			}
+			length += count;
+		}
+	}
+
+	/**
+	 * Format the lines of a chunk.
+	 *
+	 * Runtime efficiency: O(c), c is the number of lines.
+	 *
+	 * @param chunk the number of the chunk in the file, which its random generator is derived from.
+	 * @param count the number of lines.
+	 */
+	private Chunk chunk(long chunk, int count) {
+		SplittableRandom random = new SplittableRandom(seed * 0x9E3779B97F4A7C15L + chunk);
+		Chunk out = new Chunk(count * 80);
+		int[] path = new int[MAX_HOPS];
+		for (int i = 0; i < count; i++) {
+			out.ensure(24 * (MAX_HOPS + 6));
+			double r = random.nextDouble();
+			if (r < corruptRate) {
+				int kind = 2 + random.nextInt(CORRUPT_KINDS);
+				corrupt(out, random, path, kind);
+				out.counts[kind]++;
+			} else {
+				boolean faulty = random.nextDouble() < faultRate;
+				call(out, random, path, faulty);
+				out.counts[faulty ? FAULTY : CONNECTED]++;
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * A valid line, connected or faulty.
+	 */
+	private void call(Chunk out, SplittableRandom random, int[] path, boolean faulty) {
+		int length = route(random, path);
+		int receiverSwitch = path[length - 1];
+		if (faulty) {
+			// Either the call never left the dialler's switch, or it was dropped before the receiver's switch.
+			length = random.nextBoolean() ? 0 : length;
+			do {
+				receiverSwitch = randomSwitch(random);
+			} while (receiverSwitch == path[Math.max(0, length - 1)]);
+		}
+		line(out, number(random), path[0], path, length, receiverSwitch, number(random), time(random));
+	}
+
+	/**
+	 * A line which CallRecordParser rejects.
+	 */
+	private void corrupt(Chunk out, SplittableRandom random, int[] path, int kind) {
+		int length = route(random, path);
+		long dialler = number(random);
+		long receiver = number(random);
+		long time = time(random);
+		switch (kind) {
+		case 2: // Missing fields.
+			out.digits(dialler, 10);
+			out.put(' ');
+			out.digits(path[0], 5);
+			out.put(' ');
+			out.digits(receiver, 10);
+			out.put('\n');
+			return;
+		case 3: // A switch which is not in the switches file.
+			int unknown;
+			do {
+				unknown = random.nextInt(100000);
+			} while (known.get(unknown));
+			path[random.nextInt(length)] = unknown;
+			line(out, dialler, path[0], path, length, path[length - 1], receiver, time);
+			return;
+		case 4: // A switch of four digits.
+			int position = out.length;
+			line(out, dialler, path[0], path, length, path[length - 1], receiver, time);
+			out.bytes[position + 11] = ' '; // Blank the first digit of the dialler's switch, leaving a short token.
+			return;
+		case 5: // The path does not start at the dialler's switch.
+			int diallerSwitch;
+			do {
+				diallerSwitch = randomSwitch(random);
+			} while (diallerSwitch == path[0]);
+			line(out, dialler, diallerSwitch, path, length, path[length - 1], receiver, time);
+			return;
+		case 6: // The same switch twice in a row in the path.
+			if (length == 1) {
+				path[1] = path[0];
+				length = 2;
+			} else {
+				path[1] = path[0];
+			}
+			line(out, dialler, path[0], path, length, path[length - 1], receiver, time);
+			return;
+		case 7: // An hour of 24 or more.
+			line(out, dialler, path[0], path, length, path[length - 1], receiver, time);
+			out.bytes[out.length - 13] = (byte) ('2' + random.nextInt(8)); // Tens of the hour.
+			out.bytes[out.length - 12] = (byte) ('4' + random.nextInt(6)); // Units of the hour.
+			return;
+		default: // A letter in the receiver's number.
+			line(out, dialler, path[0], path, length, path[length - 1], receiver, time);
+			out.bytes[out.length - 26 - random.nextInt(10)] = (byte) ('a' + random.nextInt(26));
+		}
+	}
+
+	/**
+	 * Fill the path with 1 to MAX_HOPS switches, no switch twice in a row.
+	 *
+	 * @return the length of the path.
+	 */
+	private int route(SplittableRandom random, int[] path) {
+		int length = 1 + random.nextInt(MAX_HOPS);
+		path[0] = randomSwitch(random);
+		for (int j = 1; j < length; j++) {
+			do {
+				path[j] = randomSwitch(random);
+			} while (path[j] == path[j - 1]);
+		}
+		return length;
+	}
+
+	/**
+	 * Format a line: dialler, dialler switch, path, receiver switch, receiver and time stamp.
+	 */
+	private void line(Chunk out, long dialler, int diallerSwitch, int[] path, int length,
+			int receiverSwitch, long receiver, long time) {
+		out.digits(dialler, 10);
+		out.put(' ');
+		out.digits(diallerSwitch, 5);
+		for (int j = 0; j < length; j++) {
+			out.put(' ');
+			out.digits(path[j], 5);
+		}
+		out.put(' ');
+		out.digits(receiverSwitch, 5);
+		out.put(' ');
+		out.digits(receiver, 10);
+		out.put(' ');
+		int day = (int) (time / DAY);
+		long milli = time % DAY;
+		out.put(dates[day]);
+		out.put('T');
+		out.digits(milli / 3600000, 2);
+		out.put(':');
+		out.digits(milli / 60000 % 60, 2);
+		out.put(':');
+		out.digits(milli / 1000 % 60, 2);
+		out.put('.');
+		out.digits(milli % 1000, 3);
+		out.put('\n');
+	}
+
+	private int randomSwitch(SplittableRandom random) {
+		return switches[random.nextInt(switches.length)];
+	}
+
+	private long number(SplittableRandom random) {
+		return FIRST_NUMBER + random.nextLong(numbers);
+	}
+
+	/**
+	 * @return milliseconds since the start of the first day.
+	 */
+	private long time(SplittableRandom random) {
+		return random.nextLong(DAYS * DAY);
+	}
+
+	/**
+	 * Read the switches file, whose first line is the number of switches.
+	 *
+	 * Runtime efficiency: O(s)
+	 */
+	static int[] readSwitches(String filePath) throws IOException {
+		List<Integer> switches = new ArrayList<Integer>();
+		try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
+			String line = reader.readLine();
+			while ((line = reader.readLine()) != null) {
+				switches.add(Integer.parseInt(line.trim()));
+			}
+		}
+		int[] result = new int[switches.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = switches.get(i);
+		}
+		return result;
+	}
+
+	public static void main(String[] args) throws IOException {
+		long lines = args.length > 0 ? Long.parseLong(args[0]) : 1000000;
+		String output = args.length > 1 ? args[1] : "data/call-records.txt";
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+		String switchesPath = args.length > 4 ? args[4] : "data/switches.txt";
+		double faultRate = (args.length > 5 ? Double.parseDouble(args[5]) : 2) / 100;
+		double corruptRate = (args.length > 6 ? Double.parseDouble(args[6]) : 1) / 100;
+		long numbers = args.length > 7 ? Long.parseLong(args[7]) : Math.min(9 * FIRST_NUMBER, Math.max(1000, lines / 20));
+
+		CallRecordGenerator generator = new CallRecordGenerator(readSwitches(switchesPath), seed, faultRate,
+				corruptRate, numbers);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		long time = System.nanoTime();
+		long[] counts = generator.write(Paths.get(output), lines, pool);
+		double seconds = (System.nanoTime() - time) / 1e9;
+		pool.shutdown();
+
+		long bytes = Paths.get(output).toFile().length();
+		System.out.printf("Wrote %d lines, %.1f MB to %s in %.1f s: %.1f MB/s, %.0f lines/s%n", lines, bytes / 1e6,
+				output, seconds, bytes / 1e6 / seconds, lines / seconds);
+		for (int k = 0; k < KINDS.length; k++) {
+			System.out.printf("%-24s %d%n", KINDS[k], counts[k]);
+		}
+	}
+}
@@ -0,0 +1,158 @@
+package au.edu.uq.itee.comp3506.assn2.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import au.edu.uq.itee.comp3506.assn2.entities.CallRecord;
+import au.edu.uq.itee.comp3506.assn2.entities.CallRecordStore;
+import au.edu.uq.itee.comp3506.assn2.entities.ConcurrentCallIndex;
+import au.edu.uq.itee.comp3506.assn2.entities.ReadData;
+
+/**
+ * Stress test of ConcurrentCallIndex: one writer appends batches of synthetic records
+ * while 1, 2, 4, ... reader threads run windowed queries. Reports the read throughput for each number of readers,
+ * which should grow with the number of cores, and checks that every reader sees the record count only grow.
+ * The synthetic records use the loaded numbers and switches, so they pass the checks of every appended record.
+ * The run fails if the writer or a reader throws.
+ * Run from the project directory, as ReadData reads the data directory.
+ *
+ * Usage: ConcurrentIndexBenchmark [max readers] [seconds per run] [batch size]
+ *
+ * @author Wayne
+ */
+public class ConcurrentIndexBenchmark {
+	private static final long MINUTE = 60 * 1000;
+	private static final long HOUR = 60 * MINUTE;
+
+	public static void main(String[] args) throws InterruptedException {
+		int maxReaders = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 3;
+		int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+
+		ReadData reader = new ReadData();
+		reader.readAllRecords();
+		CallRecordStore loaded = reader.readRecordStore();
+		if (loaded.size() == 0) {
+			System.out.println("No records were read.");
+			return;
+		}
+		long[] numbers = new long[loaded.size()];
+		long first = Long.MAX_VALUE;
+		long last = Long.MIN_VALUE;
+		for (int id = 0; id < loaded.size(); id++) {
+			numbers[id] = loaded.getDialler(id);
+			first = Math.min(first, loaded.getTimeStamp(id));
+			last = Math.max(last, loaded.getTimeStamp(id));
+		}
+		List<Integer> switchList = reader.readSwitchesRecord().keys();
+		int[] switches = new int[switchList.size()];
+		for (int i = 0; i < switches.length; i++) {
+			switches[i] = switchList.get(i);
+		}
+		ConcurrentCallIndex index = new ConcurrentCallIndex(reader);
+		System.out.println("Records: " + loaded.size() + ", batch size: " + batchSize);
+
+		for (int readers = 1; readers <= maxReaders; readers *= 2) {
+			run(index, readers, seconds, batchSize, numbers, switches, first, last);
+		}
+	}
+
+	private static void run(ConcurrentCallIndex index, int readers, double seconds, int batchSize,
+			long[] numbers, int[] switches, long first, long last) throws InterruptedException {
+		AtomicBoolean stop = new AtomicBoolean();
+		AtomicLong queries = new AtomicLong();
+		AtomicLong appended = new AtomicLong();
+		AtomicLong errors = new AtomicLong();
+		AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+		Thread writer = new Thread(() -> {
+			Random random = new Random(1);
+			int[] path = new int[8];
+			while (!stop.get()) {
+				// Synthetic records between the loaded numbers and switches over the loaded period,
+				// built outside the lock. A path never repeats a switch twice in a row; an empty path is a fault.
+				CallRecordStore source = new CallRecordStore();
+				List<CallRecord> batch = new ArrayList<CallRecord>(batchSize);
+				for (int i = 0; i < batchSize; i++) {
+					int diallerSwitch = switches[random.nextInt(switches.length)];
+					int length = switches.length > 1 ? random.nextInt(path.length) : random.nextInt(2);
+					path[0] = diallerSwitch;
+					for (int j = 1; j < length; j++) {
+						do {
+							path[j] = switches[random.nextInt(switches.length)];
+						} while (path[j] == path[j - 1]);
+					}
+					int receiverSwitch = length > 0 ? path[length - 1] : switches[random.nextInt(switches.length)];
+					long time = first + (long) (random.nextDouble() * (last - first));
+					int id = source.add(numbers[random.nextInt(numbers.length)], numbers[random.nextInt(numbers.length)],
+							diallerSwitch, receiverSwitch, path, 0, length, time);
+					batch.add(source.get(id));
+				}
+				index.appendAll(batch);
+				appended.addAndGet(batchSize);
+			}
+		});
+		writer.setUncaughtExceptionHandler((thread, e) -> {
+			failure.compareAndSet(null, e);
+			stop.set(true);
+		});
+
+		Thread[] threads = new Thread[readers];
+		for (int t = 0; t < readers; t++) {
+			long seed = t;
+			threads[t] = new Thread(() -> {
+				Random random = new Random(seed);
+				int lastSize = 0;
+				long count = 0;
+				while (!stop.get()) {
+					long start = first + (long) (random.nextDouble() * (last - first));
+					long number = numbers[random.nextInt(numbers.length)];
+					switch ((int) (count & 3)) {
+					case 0:
+						index.called(number, start, start + HOUR);
+						break;
+					case 1:
+						index.callers(number, start, start + HOUR);
+						break;
+					case 2:
+						index.findConnectionFault(number, start, start + HOUR);
+						break;
+					default:
+						index.callsMade(start, start + MINUTE);
+					}
+					int size = index.size();
+					if (size < lastSize) {
+						errors.incrementAndGet();
+					}
+					lastSize = size;
+					count++;
+				}
+				queries.addAndGet(count);
+			});
+			threads[t].setUncaughtExceptionHandler((thread, e) -> {
+				failure.compareAndSet(null, e);
+				stop.set(true);
+			});
+		}
+
+		writer.start();
+		for (Thread thread: threads) {
+			thread.start();
+		}
+		Thread.sleep((long) (seconds * 1000));
+		stop.set(true);
+		writer.join();
+		for (Thread thread: threads) {
+			thread.join();
+		}
+		if (failure.get() != null) {
+			throw new IllegalStateException("A thread failed with " + readers + " readers.", failure.get());
+		}
+		System.out.printf("%2d readers: %12.0f queries/s, %10.0f appends/s, %d errors%n", readers,
+				queries.get() / seconds, appended.get() / seconds, errors.get());
+	}
+}
@@ -0,0 +1,112 @@
+package au.edu.uq.itee.comp3506.assn2.benchmarks;
+
+import java.time.LocalDateTime;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import au.edu.uq.itee.comp3506.assn2.entities.CallRecord;
+import au.edu.uq.itee.comp3506.assn2.entities.CallRecordStore;
+import au.edu.uq.itee.comp3506.assn2.entities.RecordAVLTree;
+import au.edu.uq.itee.comp3506.assn2.entities.ReadData;
+import au.edu.uq.itee.comp3506.assn2.entities.SwitchConnectionCube;
+
+/**
+ * Measures windowed maxConnections and minConnections on this thread and on fork-join pools of
+ * 1, 2, 4 and so on up to the number of processors, for SwitchConnectionCube and for a RecordAVLTree
+ * keyed by switch, which reads every record of every switch. Uses the synthetic data of QueryBenchmark.
+ * Every pool must find the same switches as the sequential search.
+ *
+ * Usage: ParallelConnectionsBenchmark [records] [switches] [windows] [window minutes]
+ *
+ * @author Wayne
+ */
+public class ParallelConnectionsBenchmark {
+	private static final long MINUTE = 60 * 1000;
+	private static final int ROUNDS = 3;
+
+	private static long sink; // Switches found, so the searches cannot be optimised away.
+
+	/**
+	 * A search over one window with a pool, or on this thread if the pool is null.
+	 */
+	private interface Search {
+		long run(int window, ForkJoinPool pool);
+	}
+
+	public static void main(String[] args) {
+		int records = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int switches = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+		int windows = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+		long window = (args.length > 3 ? Long.parseLong(args[3]) : 24 * 60) * MINUTE;
+
+		CallRecordStore store = QueryBenchmark.generate(records, Math.max(1000, records / 20), 1, switches);
+		ReadData reader = new ReadData();
+		reader.indexRecords(store);
+		SwitchConnectionCube cube = reader.readConnectRecord();
+		RecordAVLTree<Integer> connectTree = new RecordAVLTree<Integer>();
+		for (int id = 0; id < store.size(); id++) {
+			CallRecord cr = store.get(id);
+			for (int i = 0; i < store.getPathLength(id); i++) {
+				connectTree.insert(store.getHop(id, i), cr);
+			}
+		}
+
+		Random random = new Random(7);
+		long first = QueryBenchmark.START; // The store is out of time order.
+		long period = QueryBenchmark.PERIOD;
+		long[] starts = new long[windows];
+		LocalDateTime[] startTimes = new LocalDateTime[windows];
+		LocalDateTime[] endTimes = new LocalDateTime[windows];
+		for (int i = 0; i < windows; i++) {
+			starts[i] = first + (long) (random.nextDouble() * Math.max(1, period - window));
+			startTimes[i] = CallRecordStore.toLocalDateTime(starts[i]);
+			endTimes[i] = CallRecordStore.toLocalDateTime(starts[i] + window);
+		}
+		System.out.printf("Records: %d, switches: %d, windows: %d of %d minutes, processors: %d%n", records, switches,
+				windows, window / MINUTE, Runtime.getRuntime().availableProcessors());
+
+		run("cube", windows, (i, pool) -> (long) cube.maxConnections(starts[i], starts[i] + window, pool) << 32
+				| cube.minConnections(starts[i], starts[i] + window, pool));
+		run("connectTree", windows / 10 + 1, (i, pool) -> (long) connectTree.maxConnections(startTimes[i], endTimes[i],
+				pool) << 32 | connectTree.minConnections(startTimes[i], endTimes[i], pool));
+		System.out.println("(" + sink + ")");
+	}
+
+	/**
+	 * Time the windows on this thread, then on each pool, checking each pool finds the same switches.
+	 */
+	private static void run(String name, int windows, Search search) {
+		long[] expected = new long[windows];
+		long sequential = time(windows, search, null, expected);
+		System.out.printf("%-12s sequential %10.3f ms/window%n", name, sequential / 1e6 / windows);
+		for (int parallelism = 1; parallelism <= Runtime.getRuntime().availableProcessors(); parallelism *= 2) {
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			long nanos = time(windows, search, pool, expected);
+			pool.shutdown();
+			System.out.printf("%-12s %2d threads %10.3f ms/window, speed up %5.2f%n", name, parallelism,
+					nanos / 1e6 / windows, (double) sequential / nanos);
+		}
+	}
+
+	/**
+	 * @param expected the results of the sequential search, filled in when the pool is null.
+	 * @return the nanoseconds of the last round.
+	 */
+	private static long time(int windows, Search search, ForkJoinPool pool, long[] expected) {
+		long nanos = 0;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < windows; i++) {
+				long result = search.run(i, pool);
+				if (pool == null) {
+					expected[i] = result;
+				} else if (result != expected[i]) {
+					throw new IllegalStateException("Window " + i + " found other switches with a pool.");
+				}
+				sink += result;
+			}
+			nanos = System.nanoTime() - start;
+		}
+		return nanos;
+	}
+}
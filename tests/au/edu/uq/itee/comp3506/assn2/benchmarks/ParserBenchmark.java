@@ -0,0 +1,178 @@
+package au.edu.uq.itee.comp3506.assn2.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import au.edu.uq.itee.comp3506.assn2.entities.CallRecord;
+import au.edu.uq.itee.comp3506.assn2.entities.CallRecordParser;
+import au.edu.uq.itee.comp3506.assn2.entities.CallRecordStore;
+import au.edu.uq.itee.comp3506.assn2.entities.SwitchAVLTree;
+import au.edu.uq.itee.comp3506.assn2.entities.ValueList;
+
+/**
+ * Compares the String.split based line parsing which ReadData used to do
+ * with the byte level CallRecordParser.
+ * 
+ * Usage: ParserBenchmark [records file] [switches file] [rounds]
+ * 
+ * @author Wayne
+ */
+public class ParserBenchmark {
+	private static final int WARMUP_ROUNDS = 20;
+	
+	private static SwitchAVLTree<Integer> switchesTree;
+	private static int valid; // Number of valid records seen in a round, so the work cannot be optimised away.
+	
+	public static void main(String[] args) throws IOException {
+		String recordsPath = args.length > 0 ? args[0] : "data/call-records-short.txt";
+		String switchesPath = args.length > 1 ? args[1] : "data/switches.txt";
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+		
+		switchesTree = readSwitches(switchesPath);
+		List<String> lines = Files.readAllLines(Paths.get(recordsPath));
+		byte[] bytes = Files.readAllBytes(Paths.get(recordsPath));
+		ByteBuffer buf = ByteBuffer.wrap(bytes);
+		
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			splitRound(lines);
+			parserRound(buf);
+		}
+		
+		long splitAllocated = allocatedBytes();
+		long start = System.nanoTime();
+		for (int i = 0; i < rounds; i++) {
+			splitRound(lines);
+		}
+		long splitTime = System.nanoTime() - start;
+		splitAllocated = allocatedBytes() - splitAllocated;
+		int splitValid = valid;
+		
+		long parserAllocated = allocatedBytes();
+		start = System.nanoTime();
+		for (int i = 0; i < rounds; i++) {
+			parserRound(buf);
+		}
+		long parserTime = System.nanoTime() - start;
+		parserAllocated = allocatedBytes() - parserAllocated;
+		int parserValid = valid;
+		
+		long total = (long) lines.size() * rounds;
+		System.out.println("Lines per round: " + lines.size() + ", rounds: " + rounds);
+		System.out.printf("String.split: %8.1f ns/line %8.1f bytes/line, %d valid%n",
+				(double) splitTime / total, (double) splitAllocated / total, splitValid);
+		System.out.printf("Parser:       %8.1f ns/line %8.1f bytes/line, %d valid%n",
+				(double) parserTime / total, (double) parserAllocated / total, parserValid);
+	}
+	
+	private static void parserRound(ByteBuffer buf) {
+		valid = 0;
+		CallRecordParser parser = new CallRecordParser(switchesTree, new CallRecordStore());
+		parser.parseLines(buf, 0, buf.limit(), true, c -> valid++);
+	}
+	
+	/**
+	 * The parsing path of ReadData before CallRecordParser, kept here as the baseline.
+	 */
+	private static void splitRound(List<String> lines) {
+		valid = 0;
+		for (String calls: lines) {
+			int size = 0;
+			int flag = 0;
+			
+			ValueList<String> vl = new ValueList<String>();
+			String[] d = calls.split(" ");
+			
+			for (int i = 0; i < d.length; i++) {
+				if (!d[i].equals("")) {
+					vl.add(d[i]);
+				} else {
+					flag++;
+				}
+			}
+			
+			if (flag != 0) {
+				size = vl.size();
+				d = new String[size];
+				for (String a: vl) {
+					d[--size] = a;
+				}
+			}
+			
+			if (findCorruptRecords(d)) {
+				List<Integer> connectionPath = new ArrayList<Integer>();
+				long dialler = Long.parseLong(d[0]);
+				long receiver = Long.parseLong(d[d.length-2]);
+				for (int i = 2; i < d.length-3; i++) {
+					connectionPath.add(Integer.parseInt(d[i]));
+				}
+				int diallerSwitch = Integer.parseInt(d[1]);
+				int receiverSwitch = Integer.parseInt(d[d.length-3]);
+				LocalDateTime timeStamp = LocalDateTime.parse(d[d.length-1]);
+				new CallRecord(dialler, receiver, diallerSwitch, receiverSwitch, connectionPath, timeStamp);
+				valid++;
+			}
+		}
+	}
+	
+	private static boolean findCorruptRecords(String[] d) {
+		if (d.length > 5) {
+			if (d[0].length() != 10 && d[d.length-2].length() != 10 && d[1].length() != 5 && d[d.length-3].length() != 5) {
+				return false;
+			}
+			if (!d[1].equals(d[2])) {
+				return false;
+			}
+			for (int i = 1; i < d.length-2; i++) {
+				if (d[i].equals("") || d[i].length() != 5 || switchesTree.search(Integer.parseInt(d[i])) == null) {
+					return false;
+				} else if (d.length > 6 && i >= 2 && i <= d.length-5) {
+					if (d[i].equals(d[i+1])) {
+						return false;
+					}
+				}
+			}
+		} else if (d.length == 5) {
+			if (d[0].length() != 10 && d[3].length() != 10 && d[1].length() != 5 && d[2].length() != 5) {
+				return false;
+			}
+			for (int i = 1; i <= 2; i++) {
+				if (switchesTree.search(Integer.parseInt(d[i])) == null) {
+					return false;
+				}
+			}
+		} else if (d.length < 5) {
+			return false;
+		}
+		return true;
+	}
+	
+	static SwitchAVLTree<Integer> readSwitches(String filePath) throws IOException {
+		SwitchAVLTree<Integer> tree = new SwitchAVLTree<Integer>();
+		try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
+			String line = reader.readLine(); // First line is the number of switches.
+			while ((line = reader.readLine()) != null) {
+				tree.insert(Integer.parseInt(line));
+			}
+		}
+		return tree;
+	}
+	
+	/**
+	 * @return bytes allocated by this thread so far, or 0 if the JVM cannot tell.
+	 */
+	static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,199 @@
+package au.edu.uq.itee.comp3506.assn2.benchmarks;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Random;
+
+import au.edu.uq.itee.comp3506.assn2.api.TestAPI;
+import au.edu.uq.itee.comp3506.assn2.entities.CallRecordStore;
+import au.edu.uq.itee.comp3506.assn2.entities.Metrics;
+import au.edu.uq.itee.comp3506.assn2.entities.QueryCache;
+import au.edu.uq.itee.comp3506.assn2.entities.ReadData;
+import au.edu.uq.itee.comp3506.assn2.tests.AutoTester;
+
+/**
+ * Measures every TestAPI query, all time and over a time window, on a synthetic data set.
+ * Calls are spread evenly over 30 days, then each is moved by up to the jitter either way, so the store is out
+ * of time order as it is when calls are logged late; a jitter of 0 keeps time order. Diallers and receivers are drawn from a pool of
+ * one number per twenty records, skewed towards the start of the pool: with skew s a number is picked as
+ * pool * u^s for uniform u, so 1 is uniform and larger values concentrate calls on a few heavy diallers.
+ * Paths have up to four hops over the given number of switches, and about one call in fifty is faulty.
+ *
+ * Each query runs on its own for a fixed time after a warm up, and the benchmark reports throughput,
+ * latency percentiles from a sample of single query timings, and bytes allocated per query.
+ * Run from the project directory, as ReadData reads the switches file.
+ * 100 million records need a heap of about 16 GB. With -Dassn2.metrics=true the metrics are printed at the end.
+ *
+ * AutoTester's query cache is off unless a number of cache entries is given, so the indexes themselves are measured.
+ *
+ * Usage: QueryBenchmark [records] [skew] [switches] [seconds per query] [window minutes] [cache entries]
+ *        [jitter minutes]
+ *
+ * @author Wayne
+ */
+public class QueryBenchmark {
+	static final long START = CallRecordStore.toEpochMilli(LocalDateTime.parse("2017-09-01T00:00:00"));
+	static final long PERIOD = 30L * 24 * 60 * 60 * 1000;
+	private static final long MINUTE = 60 * 1000;
+	private static final long JITTER = 60 * MINUTE; // Default shift of a call either way from its place in order.
+	private static final int FIRST_SWITCH = 10000;
+	private static final int MAX_HOPS = 4;
+	private static final int FAULT_RATE = 50; // One call in this many is faulty.
+	private static final int SAMPLES = 1 << 16; // Latencies kept per query.
+	private static final int KEYS = 1 << 12; // Arguments drawn per query, used in turn.
+
+	private static long sink; // Result sizes, so the queries cannot be optimised away.
+
+	/**
+	 * A query with its arguments chosen by the index of the call.
+	 */
+	private interface Query {
+		long run(int i);
+	}
+
+	public static void main(String[] args) {
+		int records = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		double skew = args.length > 1 ? Double.parseDouble(args[1]) : 1;
+		int switches = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+		double seconds = args.length > 3 ? Double.parseDouble(args[3]) : 2;
+		long window = (args.length > 4 ? Long.parseLong(args[4]) : 60) * MINUTE;
+		int cacheEntries = args.length > 5 ? Integer.parseInt(args[5]) : 0;
+		long jitter = args.length > 6 ? Long.parseLong(args[6]) * MINUTE : JITTER;
+
+		int pool = Math.max(1000, records / 20);
+		long time = System.nanoTime();
+		CallRecordStore store = generate(records, pool, skew, switches, jitter);
+		ReadData reader = new ReadData();
+		reader.indexRecords(store);
+		TestAPI api = new AutoTester(reader, new QueryCache(cacheEntries, Long.MAX_VALUE));
+		System.out.printf("Records: %d, numbers: %d, skew: %.2f, switches: %d, window: %d minutes, jitter: %d minutes, "
+				+ "loaded in %.1f s%n", records, pool, skew, switches, window / MINUTE, jitter / MINUTE,
+				(System.nanoTime() - time) / 1e9);
+
+		Random random = new Random(7);
+		long[] numbers = new long[KEYS];
+		LocalDateTime[] starts = new LocalDateTime[KEYS];
+		LocalDateTime[] ends = new LocalDateTime[KEYS];
+		for (int i = 0; i < KEYS; i++) {
+			numbers[i] = number(pool, skew, random);
+			long start = START + (long) (random.nextDouble() * (PERIOD - window));
+			starts[i] = CallRecordStore.toLocalDateTime(start);
+			ends[i] = CallRecordStore.toLocalDateTime(start + window);
+		}
+		int mask = KEYS - 1;
+
+		System.out.printf("%-28s %12s %9s %9s %9s %9s %9s %11s%n", "query", "ops/s",
+				"p50 us", "p90 us", "p99 us", "p99.9 us", "max us", "bytes/op");
+		run("called", seconds, i -> size(api.called(numbers[i & mask])));
+		run("called window", seconds, i -> size(api.called(numbers[i & mask], starts[i & mask], ends[i & mask])));
+		run("callers", seconds, i -> size(api.callers(numbers[i & mask])));
+		run("callers window", seconds, i -> size(api.callers(numbers[i & mask], starts[i & mask], ends[i & mask])));
+		run("findConnectionFault", seconds, i -> size(api.findConnectionFault(numbers[i & mask])));
+		run("findConnectionFault window", seconds,
+				i -> size(api.findConnectionFault(numbers[i & mask], starts[i & mask], ends[i & mask])));
+		run("findReceivingFault", seconds, i -> size(api.findReceivingFault(numbers[i & mask])));
+		run("findReceivingFault window", seconds,
+				i -> size(api.findReceivingFault(numbers[i & mask], starts[i & mask], ends[i & mask])));
+		run("maxConnections", seconds, i -> api.maxConnections());
+		run("maxConnections window", seconds, i -> api.maxConnections(starts[i & mask], ends[i & mask]));
+		run("minConnections", seconds, i -> api.minConnections());
+		run("minConnections window", seconds, i -> api.minConnections(starts[i & mask], ends[i & mask]));
+		run("callsMade window", seconds, i -> size(api.callsMade(starts[i & mask], ends[i & mask])));
+		System.out.println("(" + sink + ")");
+		if (Metrics.ENABLED) {
+			for (Map.Entry<String, Long> e: Metrics.snapshot().entrySet()) {
+				System.out.printf("%-32s %d%n", e.getKey(), e.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Fill a store with calls out of time order, each moved by up to the default jitter.
+	 */
+	static CallRecordStore generate(int records, int pool, double skew, int switches) {
+		return generate(records, pool, skew, switches, JITTER);
+	}
+
+	/**
+	 * Fill a store with calls spread evenly over the period, each moved by up to the jitter either way
+	 * and kept within the period. The shifts come from a random source of their own, so the calls
+	 * are the same whatever the jitter.
+	 *
+	 * @param jitter the most a call is moved from its place in time order, in milliseconds.
+	 */
+	static CallRecordStore generate(int records, int pool, double skew, int switches, long jitter) {
+		Random random = new Random(42);
+		Random shifts = new Random(43);
+		CallRecordStore store = new CallRecordStore();
+		int[] path = new int[MAX_HOPS];
+		for (int i = 0; i < records; i++) {
+			long dialler = number(pool, skew, random);
+			long receiver = number(pool, skew, random);
+			int diallerSwitch = FIRST_SWITCH + random.nextInt(switches);
+			int receiverSwitch = FIRST_SWITCH + random.nextInt(switches);
+			int length = 2 + random.nextInt(MAX_HOPS - 1);
+			path[0] = diallerSwitch;
+			for (int j = 1; j < length - 1; j++) {
+				path[j] = FIRST_SWITCH + random.nextInt(switches);
+			}
+			path[length - 1] = receiverSwitch;
+			if (random.nextInt(FAULT_RATE) == 0) {
+				// Either the call never left the dialler's switch or it was dropped part way.
+				length = random.nextBoolean() ? 0 : length - 1;
+			}
+			long time = START + i * (PERIOD / records);
+			if (jitter > 0) {
+				time += (long) ((shifts.nextDouble() * 2 - 1) * jitter);
+				time = Math.max(START, Math.min(START + PERIOD - 1, time));
+			}
+			store.add(dialler, receiver, diallerSwitch, receiverSwitch, path, 0, length, time);
+		}
+		return store;
+	}
+
+	private static long number(int pool, double skew, Random random) {
+		return 1000000000L + (long) (pool * Math.pow(random.nextDouble(), skew));
+	}
+
+	private static long size(Collection<?> result) {
+		return result.size();
+	}
+
+	/**
+	 * Warm up a query, run it for a number of seconds and print its figures.
+	 */
+	private static void run(String name, double seconds, Query query) {
+		long nanos = (long) (seconds * 1e9);
+		for (long end = System.nanoTime() + nanos / 2, i = 0; System.nanoTime() < end; i++) {
+			sink += query.run((int) i);
+		}
+
+		long[] samples = new long[SAMPLES];
+		int ops = 0;
+		long allocated = ParserBenchmark.allocatedBytes();
+		long start = System.nanoTime();
+		long end = start + nanos;
+		long now = start;
+		while (now < end) {
+			sink += query.run(ops);
+			long after = System.nanoTime();
+			samples[ops & (SAMPLES - 1)] = after - now;
+			now = after;
+			ops++;
+		}
+		allocated = ParserBenchmark.allocatedBytes() - allocated;
+		double elapsed = (now - start) / 1e9;
+
+		long[] sorted = Arrays.copyOf(samples, Math.min(ops, SAMPLES));
+		Arrays.sort(sorted);
+		System.out.printf("%-28s %12.0f %9.1f %9.1f %9.1f %9.1f %9.1f %11.0f%n", name, ops / elapsed,
+				percentile(sorted, 0.5), percentile(sorted, 0.9), percentile(sorted, 0.99), percentile(sorted, 0.999),
+				sorted[sorted.length - 1] / 1e3, (double) allocated / ops);
+	}
+
+	private static double percentile(long[] sorted, double p) {
+		return sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))] / 1e3;
+	}
+}
@@ -0,0 +1,126 @@
+package au.edu.uq.itee.comp3506.assn2.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import au.edu.uq.itee.comp3506.assn2.entities.CallRecordStore;
+import au.edu.uq.itee.comp3506.assn2.entities.LongRecordIndex;
+import au.edu.uq.itee.comp3506.assn2.entities.ReadData;
+import au.edu.uq.itee.comp3506.assn2.entities.SegmentedCallIndex;
+import au.edu.uq.itee.comp3506.assn2.entities.SwitchConnectionCube;
+import au.edu.uq.itee.comp3506.assn2.entities.TimeBPlusTree;
+
+/**
+ * Compares windowed queries on the single indexes of a ReadData with the same queries on a SegmentedCallIndex
+ * of daily segments, searched on this thread and on the common pool, before and after the segments are sealed.
+ * Then times dropping the older half of the segments. Uses the synthetic data of QueryBenchmark, which spans
+ * thirty days out of time order, so calls also arrive in segments other than the newest. Every segmented query
+ * must find the same number of results as the single indexes.
+ *
+ * Usage: SegmentedIndexBenchmark [records] [windows] [window minutes]
+ *
+ * @author Wayne
+ */
+public class SegmentedIndexBenchmark {
+	private static final long MINUTE = 60 * 1000;
+	private static final int ROUNDS = 3;
+
+	private static long sink; // Results found, so the queries cannot be optimised away.
+
+	/**
+	 * A query over one window, returning a figure of its result.
+	 */
+	private interface Query {
+		long run(int window);
+	}
+
+	public static void main(String[] args) {
+		int records = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int windows = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+		long window = (args.length > 2 ? Long.parseLong(args[2]) : 24 * 60) * MINUTE;
+
+		CallRecordStore store = QueryBenchmark.generate(records, Math.max(1000, records / 20), 1, 1000);
+		long time = System.nanoTime();
+		ReadData reader = new ReadData();
+		reader.indexRecords(store);
+		System.out.printf("single index built in %8.1f ms%n", (System.nanoTime() - time) / 1e6);
+		LongRecordIndex dialIndex = reader.readDialRecord();
+		TimeBPlusTree timeIndex = reader.readTimeRecord();
+		SwitchConnectionCube cube = reader.readConnectRecord();
+		time = System.nanoTime();
+		SegmentedCallIndex segmented = new SegmentedCallIndex();
+		segmented.addAll(store);
+		System.out.printf("segments built in     %8.1f ms, %d segments%n", (System.nanoTime() - time) / 1e6,
+				segmented.segmentCount());
+
+		Random random = new Random(7);
+		long first = QueryBenchmark.START; // The store is out of time order.
+		long last = QueryBenchmark.START + QueryBenchmark.PERIOD - 1;
+		long[] starts = new long[windows];
+		long[] diallers = new long[windows];
+		for (int i = 0; i < windows; i++) {
+			starts[i] = first + (long) (random.nextDouble() * Math.max(1, last - first - window));
+			diallers[i] = store.getDialler(random.nextInt(store.size()));
+		}
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		System.out.printf("Records: %d, windows: %d of %d minutes, pool parallelism: %d%n", records, windows,
+				window / MINUTE, pool.getParallelism());
+
+		long[] called = new long[windows];
+		long[] calls = new long[windows];
+		long[] connections = new long[windows];
+		run("single called", windows, called, null, i -> dialIndex.findReceiver(diallers[i], starts[i],
+				starts[i] + window).size());
+		run("single callsMade", windows, calls, null, i -> timeIndex.callsMade(starts[i], starts[i] + window).size());
+		run("single max/min", windows, connections, null, i -> (long) cube.maxConnections(starts[i],
+				starts[i] + window) << 32 | cube.minConnections(starts[i], starts[i] + window));
+		for (int phase = 0; phase < 2; phase++) {
+			String state = phase == 0 ? "open" : "sealed";
+			for (ForkJoinPool p: new ForkJoinPool[] {null, pool}) {
+				String on = state + (p == null ? " seq" : " pool");
+				run(on + " called", windows, called, called, i -> segmented.called(diallers[i], starts[i],
+						starts[i] + window, p).size());
+				run(on + " callsMade", windows, calls, calls, i -> segmented.callsMade(starts[i], starts[i] + window,
+						p).size());
+				run(on + " max/min", windows, connections, connections, i -> (long) segmented.maxConnections(
+						starts[i], starts[i] + window, p) << 32 | segmented.minConnections(starts[i],
+						starts[i] + window, p));
+			}
+			if (phase == 0) {
+				time = System.nanoTime();
+				int sealed = segmented.sealBefore(last + 1);
+				System.out.printf("sealed %d segments in %8.1f ms%n", sealed, (System.nanoTime() - time) / 1e6);
+			}
+		}
+
+		time = System.nanoTime();
+		int dropped = segmented.dropBefore(first + (last - first) / 2);
+		System.out.printf("dropped %d records in %8.3f ms, %d segments left%n", dropped,
+				(System.nanoTime() - time) / 1e6, segmented.segmentCount());
+		System.out.println("(" + sink + ")");
+	}
+
+	/**
+	 * Warm up a query, then time every window and print the time per window of the last round.
+	 *
+	 * @param results the result of each window, filled in when expected is null.
+	 * @param expected the results the query must give, or null.
+	 */
+	private static void run(String name, int windows, long[] results, long[] expected, Query query) {
+		long nanos = 0;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < windows; i++) {
+				long result = query.run(i);
+				if (expected == null) {
+					results[i] = result;
+				} else if (result != expected[i]) {
+					throw new IllegalStateException(name + " found other results in window " + i + ".");
+				}
+				sink += result;
+			}
+			nanos = System.nanoTime() - start;
+		}
+		System.out.printf("%-22s %10.2f us/window%n", name, nanos / 1e3 / windows);
+	}
+}
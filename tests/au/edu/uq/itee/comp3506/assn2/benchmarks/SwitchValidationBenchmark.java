@@ -0,0 +1,125 @@
+package au.edu.uq.itee.comp3506.assn2.benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import au.edu.uq.itee.comp3506.assn2.entities.CallRecordParser;
+import au.edu.uq.itee.comp3506.assn2.entities.CallRecordStore;
+import au.edu.uq.itee.comp3506.assn2.entities.SwitchAVLTree;
+import au.edu.uq.itee.comp3506.assn2.entities.SwitchRegistry;
+
+/**
+ * Compares checking the switches of records against the SwitchAVLTree, as CallRecordParser used to,
+ * with the SwitchRegistry bitmap, then measures whole lines parsed with the registry.
+ * The switches checked are every switch token of the records file, in file order, so corrupt
+ * switches are checked as often as the file holds them.
+ *
+ * Usage: SwitchValidationBenchmark [records file] [switches file] [rounds]
+ *
+ * @author Wayne
+ */
+public class SwitchValidationBenchmark {
+	private static final int WARMUP_ROUNDS = 20;
+
+	private static long sink; // Valid switches seen, so the checks cannot be optimised away.
+
+	public static void main(String[] args) throws IOException {
+		String recordsPath = args.length > 0 ? args[0] : "data/call-records-short.txt";
+		String switchesPath = args.length > 1 ? args[1] : "data/switches.txt";
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+		SwitchAVLTree<Integer> switchesTree = ParserBenchmark.readSwitches(switchesPath);
+		SwitchRegistry registry = SwitchRegistry.of(switchesTree);
+		List<String> lines = Files.readAllLines(Paths.get(recordsPath));
+		int[] checks = switchTokens(lines);
+		ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(Paths.get(recordsPath)));
+
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			treeRound(switchesTree, checks);
+			registryRound(registry, checks);
+			parserRound(registry, buf);
+		}
+
+		long treeAllocated = ParserBenchmark.allocatedBytes();
+		long start = System.nanoTime();
+		for (int i = 0; i < rounds; i++) {
+			treeRound(switchesTree, checks);
+		}
+		long treeTime = System.nanoTime() - start;
+		treeAllocated = ParserBenchmark.allocatedBytes() - treeAllocated;
+
+		long registryAllocated = ParserBenchmark.allocatedBytes();
+		start = System.nanoTime();
+		for (int i = 0; i < rounds; i++) {
+			registryRound(registry, checks);
+		}
+		long registryTime = System.nanoTime() - start;
+		registryAllocated = ParserBenchmark.allocatedBytes() - registryAllocated;
+
+		start = System.nanoTime();
+		for (int i = 0; i < rounds; i++) {
+			parserRound(registry, buf);
+		}
+		long parserTime = System.nanoTime() - start;
+
+		long total = (long) checks.length * rounds;
+		System.out.println("Switches: " + registry.size() + ", checks per round: " + checks.length
+				+ ", lines per round: " + lines.size() + ", rounds: " + rounds);
+		System.out.printf("SwitchAVLTree:  %8.2f ns/check %10.0f checks/s %6.2f bytes/check%n",
+				(double) treeTime / total, total / (treeTime / 1e9), (double) treeAllocated / total);
+		System.out.printf("SwitchRegistry: %8.2f ns/check %10.0f checks/s %6.2f bytes/check%n",
+				(double) registryTime / total, total / (registryTime / 1e9), (double) registryAllocated / total);
+		System.out.printf("Parser:         %8.1f ns/line %10.0f lines/s%n",
+				(double) parserTime / ((long) lines.size() * rounds), (long) lines.size() * rounds / (parserTime / 1e9));
+		System.out.println("(" + sink + ")");
+	}
+
+	/**
+	 * @return the switch tokens of every line which has at least the five fields of a record, as numbers.
+	 */
+	private static int[] switchTokens(List<String> lines) {
+		int[] checks = new int[16];
+		int n = 0;
+		for (String line: lines) {
+			String[] d = line.trim().split(" +");
+			if (d.length < 5) {
+				continue;
+			}
+			for (int i = 1; i < d.length - 2; i++) {
+				if (d[i].length() > 9 || !d[i].chars().allMatch(Character::isDigit)) {
+					continue;
+				}
+				if (n == checks.length) {
+					checks = Arrays.copyOf(checks, n * 2);
+				}
+				checks[n++] = Integer.parseInt(d[i]);
+			}
+		}
+		return Arrays.copyOf(checks, n);
+	}
+
+	private static void treeRound(SwitchAVLTree<Integer> switchesTree, int[] checks) {
+		for (int s: checks) {
+			if (switchesTree.search(s) != null) {
+				sink++;
+			}
+		}
+	}
+
+	private static void registryRound(SwitchRegistry registry, int[] checks) {
+		for (int s: checks) {
+			if (registry.contains(s)) {
+				sink++;
+			}
+		}
+	}
+
+	private static void parserRound(SwitchRegistry registry, ByteBuffer buf) {
+		CallRecordParser parser = new CallRecordParser(registry, new CallRecordStore());
+		parser.parseLines(buf, 0, buf.limit(), true, c -> sink++);
+	}
+}
@@ -0,0 +1,72 @@
+package au.edu.uq.itee.comp3506.assn2.benchmarks;
+
+import java.time.LocalDateTime;
+import java.util.Random;
+
+import au.edu.uq.itee.comp3506.assn2.entities.CallRecordStore;
+import au.edu.uq.itee.comp3506.assn2.entities.TimeAVLTree;
+import au.edu.uq.itee.comp3506.assn2.entities.TimeBPlusTree;
+
+/**
+ * Compares callsMade of TimeAVLTree with TimeBPlusTree for narrow and wide time windows.
+ * Records get random time stamps over 30 days.
+ * 
+ * Usage: TimeIndexBenchmark [records] [queries]
+ * 
+ * @author Wayne
+ */
+public class TimeIndexBenchmark {
+	private static final long START = CallRecordStore.toEpochMilli(LocalDateTime.parse("2017-09-01T00:00:00"));
+	private static final long PERIOD = 30L * 24 * 60 * 60 * 1000;
+	private static final long MINUTE = 60 * 1000;
+	private static final long DAY = 24 * 60 * MINUTE;
+	private static final int[] NO_PATH = new int[0];
+	
+	private static long sink; // Result sizes, so the queries cannot be optimised away.
+	
+	public static void main(String[] args) {
+		int records = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int queries = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+		
+		Random random = new Random(42);
+		CallRecordStore store = new CallRecordStore();
+		TimeAVLTree avl = new TimeAVLTree();
+		TimeBPlusTree bplus = new TimeBPlusTree(store);
+		for (int i = 0; i < records; i++) {
+			long time = START + (long) (random.nextDouble() * PERIOD);
+			int id = store.add(random.nextLong(), random.nextLong(), 0, 0, NO_PATH, 0, 0, time);
+			avl.insert(CallRecordStore.toLocalDateTime(time), store.get(id));
+			bplus.insert(time, id);
+		}
+		System.out.println("Records: " + records + ", AVL height: " + avl.height() + ", B+ tree height: " + bplus.height());
+		
+		run("narrow (1 minute)", avl, bplus, MINUTE, queries);
+		run("wide (1 day)", avl, bplus, DAY, Math.max(1, queries / 10));
+	}
+	
+	private static void run(String name, TimeAVLTree avl, TimeBPlusTree bplus, long width, int queries) {
+		long[] starts = new long[queries];
+		Random random = new Random(7);
+		for (int i = 0; i < queries; i++) {
+			starts[i] = START + (long) (random.nextDouble() * (PERIOD - width));
+		}
+		// Warm up both paths before measuring.
+		for (int round = 0; round < 2; round++) {
+			long avlTime = System.nanoTime();
+			for (long start: starts) {
+				sink += avl.callsMade(CallRecordStore.toLocalDateTime(start),
+						CallRecordStore.toLocalDateTime(start + width)).size();
+			}
+			avlTime = System.nanoTime() - avlTime;
+			long bplusTime = System.nanoTime();
+			for (long start: starts) {
+				sink += bplus.callsMade(start, start + width).size();
+			}
+			bplusTime = System.nanoTime() - bplusTime;
+			if (round == 1) {
+				System.out.printf("%-18s AVL %10.1f us/query, B+ tree %10.1f us/query (%d)%n", name,
+						avlTime / 1000.0 / queries, bplusTime / 1000.0 / queries, sink);
+			}
+		}
+	}
+}
@@ -0,0 +1,250 @@
+package au.edu.uq.itee.comp3506.assn2.benchmarks;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import au.edu.uq.itee.comp3506.assn2.entities.CallRecord;
+import au.edu.uq.itee.comp3506.assn2.entities.CallRecordStore;
+import au.edu.uq.itee.comp3506.assn2.entities.RecordAVLTree;
+import au.edu.uq.itee.comp3506.assn2.entities.TimeAVLTree;
+import au.edu.uq.itee.comp3506.assn2.entities.ValueList;
+
+/**
+ * Compares windowed queries on LocalDateTime time stamps, as TimeAVLTree and RecordAVLTree used to run them,
+ * with the same queries on epoch millisecond longs. For the time index, a copy of the tree keyed by LocalDateTime
+ * is kept here, and both trees report insert time, heap held and windowed callsMade time. For the record index,
+ * each dialler's records are filtered by LocalDateTime.compareTo, then by RecordAVLTree's windowed findReceiver.
+ *
+ * Usage: TimeStampBenchmark [records] [diallers] [windows] [window minutes]
+ *
+ * @author Wayne
+ */
+public class TimeStampBenchmark {
+	private static final LocalDateTime START = LocalDateTime.parse("2017-09-01T00:00:00");
+	private static final int[] NO_PATH = new int[0];
+	private static final int ROUNDS = 5;
+
+	private static long sink; // Number of records seen, so the work cannot be optimised away.
+
+	public static void main(String[] args) {
+		int records = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int diallers = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		int windows = args.length > 2 ? Integer.parseInt(args[2]) : 10000;
+		long minutes = args.length > 3 ? Long.parseLong(args[3]) : 60;
+
+		Random random = new Random(42);
+		CallRecordStore store = new CallRecordStore();
+		long first = CallRecordStore.toEpochMilli(START);
+		for (int i = 0; i < records; i++) {
+			// About two calls per second, so some share a time stamp.
+			store.add(random.nextInt(diallers), random.nextLong(), 0, 0, NO_PATH, 0, 0, first + i * 500L
+					+ random.nextInt(500) / 250 * 250);
+		}
+		CallRecord[] views = new CallRecord[records];
+		Map<Long, List<CallRecord>> byDialler = new HashMap<Long, List<CallRecord>>();
+		RecordAVLTree<Long> dialTree = new RecordAVLTree<Long>();
+		for (int id = 0; id < records; id++) {
+			views[id] = store.get(id);
+			byDialler.computeIfAbsent(views[id].getDialler(), d -> new ArrayList<CallRecord>()).add(views[id]);
+			dialTree.insert(views[id].getDialler(), views[id]);
+		}
+		long period = store.getTimeStamp(records - 1) - first;
+		LocalDateTime[] from = new LocalDateTime[windows];
+		LocalDateTime[] to = new LocalDateTime[windows];
+		long[] keys = new long[windows];
+		for (int i = 0; i < windows; i++) {
+			from[i] = CallRecordStore.toLocalDateTime(first + (long) (random.nextDouble() * period));
+			to[i] = from[i].plusMinutes(minutes);
+			keys[i] = random.nextInt(diallers);
+		}
+		System.out.println("Records: " + records + ", diallers: " + diallers + ", windows: " + windows + " of "
+				+ minutes + " minutes");
+
+		for (int round = 0; round < ROUNDS; round++) {
+			boolean report = round == ROUNDS - 1; // Earlier rounds warm up.
+
+			long heap = usedHeap();
+			long time = System.nanoTime();
+			LocalDateTimeTree before = new LocalDateTimeTree();
+			for (CallRecord cr: views) {
+				before.insert(cr.getTimeStamp(), cr);
+			}
+			long insertTime = System.nanoTime() - time;
+			long held = usedHeap() - heap;
+			time = System.nanoTime();
+			for (int i = 0; i < windows; i++) {
+				sink += before.callsMade(from[i], to[i]).size();
+			}
+			print(report, "LocalDateTime TimeAVLTree", insertTime, held, System.nanoTime() - time, windows);
+			before = null;
+
+			heap = usedHeap();
+			time = System.nanoTime();
+			TimeAVLTree after = new TimeAVLTree();
+			for (int id = 0; id < records; id++) {
+				after.insert(store.getTimeStamp(id), views[id]);
+			}
+			insertTime = System.nanoTime() - time;
+			held = usedHeap() - heap;
+			time = System.nanoTime();
+			for (int i = 0; i < windows; i++) {
+				sink += after.callsMade(from[i], to[i]).size();
+			}
+			print(report, "epoch millis TimeAVLTree", insertTime, held, System.nanoTime() - time, windows);
+			after = null;
+
+			time = System.nanoTime();
+			for (int i = 0; i < windows; i++) {
+				for (CallRecord t: byDialler.get(keys[i])) {
+					if (t.getTimeStamp().compareTo(from[i]) >= 0 && t.getTimeStamp().compareTo(to[i]) <= 0) {
+						sink += t.getReceiver();
+					}
+				}
+			}
+			long filterTime = System.nanoTime() - time;
+			if (report) {
+				System.out.printf("%-28s windowed findReceiver %8.2f us/window%n", "LocalDateTime filter",
+						filterTime / 1e3 / windows);
+			}
+			time = System.nanoTime();
+			for (int i = 0; i < windows; i++) {
+				sink += dialTree.findReceiver(keys[i], from[i], to[i]).size();
+			}
+			filterTime = System.nanoTime() - time;
+			if (report) {
+				System.out.printf("%-28s windowed findReceiver %8.2f us/window (%d)%n", "epoch millis RecordAVLTree",
+						filterTime / 1e3 / windows, sink);
+			}
+		}
+	}
+
+	private static void print(boolean report, String name, long insertTime, long held, long windowTime, int windows) {
+		if (report) {
+			System.out.printf("%-28s insert %8.1f ms, heap %7.1f MB, callsMade %8.2f us/window%n", name,
+					insertTime / 1e6, held / 1e6, windowTime / 1e3 / windows);
+		}
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * The time index as TimeAVLTree kept it before time stamps were longs: keyed by LocalDateTime,
+	 * compared with compareTo, with an iterative insert and in-order cursor.
+	 */
+	private static class LocalDateTimeTree {
+		private Node root;
+
+		private static class Node {
+			LocalDateTime key;
+			ValueList<CallRecord> record = new ValueList<CallRecord>();
+			int height;
+			Node left;
+			Node right;
+
+			Node(LocalDateTime key, CallRecord cr) {
+				this.key = key;
+				record.add(cr);
+				height = 1;
+			}
+		}
+
+		private static int height(Node tree) {
+			return tree != null ? tree.height : 0;
+		}
+
+		private static Node leftLeftRotation(Node k2) {
+			Node k1 = k2.left;
+			k2.left = k1.right;
+			k1.right = k2;
+			k2.height = Math.max(height(k2.left), height(k2.right)) + 1;
+			k1.height = Math.max(height(k1.left), k2.height) + 1;
+			return k1;
+		}
+
+		private static Node rightRightRotation(Node k1) {
+			Node k2 = k1.right;
+			k1.right = k2.left;
+			k2.left = k1;
+			k1.height = Math.max(height(k1.left), height(k1.right)) + 1;
+			k2.height = Math.max(height(k2.right), k1.height) + 1;
+			return k2;
+		}
+
+		void insert(LocalDateTime timeStamp, CallRecord cr) {
+			Deque<Node> path = new ArrayDeque<Node>();
+			Node x = root;
+			while (x != null) {
+				int cmp = timeStamp.compareTo(x.key);
+				if (cmp == 0) {
+					x.record.add(cr);
+					return;
+				}
+				path.push(x);
+				x = cmp < 0 ? x.left : x.right;
+			}
+			Node child = new Node(timeStamp, cr);
+			while (!path.isEmpty()) {
+				Node tree = path.pop();
+				if (timeStamp.compareTo(tree.key) < 0) {
+					tree.left = child;
+					if (height(tree.left) - height(tree.right) == 2) {
+						if (timeStamp.compareTo(tree.left.key) >= 0) {
+							tree.left = rightRightRotation(tree.left);
+						}
+						tree = leftLeftRotation(tree);
+					}
+				} else {
+					tree.right = child;
+					if (height(tree.right) - height(tree.left) == 2) {
+						if (timeStamp.compareTo(tree.right.key) <= 0) {
+							tree.right = leftLeftRotation(tree.right);
+						}
+						tree = rightRightRotation(tree);
+					}
+				}
+				tree.height = Math.max(height(tree.left), height(tree.right)) + 1;
+				child = tree;
+			}
+			root = child;
+		}
+
+		ValueList<CallRecord> callsMade(LocalDateTime startTime, LocalDateTime endTime) {
+			ValueList<CallRecord> calls = new ValueList<CallRecord>();
+			Deque<Node> stack = new ArrayDeque<Node>();
+			Node x = root;
+			while (true) {
+				while (x != null) {
+					if (x.key.compareTo(startTime) < 0) {
+						x = x.right;
+					} else {
+						stack.push(x);
+						x = x.left;
+					}
+				}
+				if (stack.isEmpty()) {
+					return calls;
+				}
+				x = stack.pop();
+				if (x.key.compareTo(endTime) > 0) {
+					return calls;
+				}
+				for (CallRecord c: x.record) {
+					calls.add(c);
+				}
+				x = x.right;
+			}
+		}
+	}
+}
@@ -0,0 +1,239 @@
+package au.edu.uq.itee.comp3506.assn2.benchmarks;
+
+import java.time.LocalDateTime;
+import java.util.Random;
+
+import au.edu.uq.itee.comp3506.assn2.entities.CallRecord;
+import au.edu.uq.itee.comp3506.assn2.entities.CallRecordStore;
+import au.edu.uq.itee.comp3506.assn2.entities.RecordAVLTree;
+import au.edu.uq.itee.comp3506.assn2.entities.TimeAVLTree;
+import au.edu.uq.itee.comp3506.assn2.entities.ValueList;
+
+/**
+ * Compares the recursive insert and callsMade which TimeAVLTree used to have
+ * with the iterative versions which keep the path on an explicit stack.
+ * Records are inserted in time order, the worst case for rebalancing, and each round
+ * runs callsMade over the whole period and over many short windows.
+ * Over the whole period both versions visit every node, so that figure compares recursion with the explicit stack;
+ * it is the best of several traversals, as a single one is mostly noise. The windows also differ in algorithm:
+ * the recursive callsMade visits every node before the start of a window, while the iterative cursor starts at it.
+ * Also reports the explicit stack traversal behind RecordAVLTree.maxConnections.
+ *
+ * Usage: TraversalBenchmark [records] [windows]
+ *
+ * @author Wayne
+ */
+public class TraversalBenchmark {
+	private static final LocalDateTime START = LocalDateTime.parse("2017-09-01T00:00:00");
+	private static final int SWITCHES = 100000;
+	private static final int[] NO_PATH = new int[0];
+	private static final int ROUNDS = 5;
+	private static final int TRAVERSALS = 20; // Whole period traversals per round, of which the fastest is reported.
+
+	private static long sink; // Number of records seen, so the work cannot be optimised away.
+
+	public static void main(String[] args) {
+		int records = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int windows = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+
+		Random random = new Random(42);
+		CallRecordStore store = new CallRecordStore();
+		long first = CallRecordStore.toEpochMilli(START);
+		for (int i = 0; i < records; i++) {
+			store.add(random.nextLong(), random.nextLong(), random.nextInt(SWITCHES), 0, NO_PATH, 0, 0, first + i * 1000L);
+		}
+		CallRecord[] views = new CallRecord[records];
+		for (int id = 0; id < records; id++) {
+			views[id] = store.get(id);
+		}
+		LocalDateTime end = views[records - 1].getTimeStamp();
+		LocalDateTime[] from = new LocalDateTime[windows];
+		for (int i = 0; i < windows; i++) {
+			from[i] = START.plusSeconds(random.nextInt(records));
+		}
+		System.out.println("Records: " + records + ", windows: " + windows);
+
+		for (int round = 0; round < ROUNDS; round++) {
+			boolean report = round == ROUNDS - 1; // Earlier rounds warm up.
+
+			long time = System.nanoTime();
+			RecursiveTimeTree recursive = new RecursiveTimeTree();
+			for (CallRecord cr: views) {
+				recursive.insert(cr.getTimeStamp(), cr);
+			}
+			long insertTime = System.nanoTime() - time;
+			long fullTime = Long.MAX_VALUE;
+			for (int i = 0; i < TRAVERSALS; i++) {
+				time = System.nanoTime();
+				sink += recursive.callsMade(START, end).size();
+				fullTime = Math.min(fullTime, System.nanoTime() - time);
+			}
+			time = System.nanoTime();
+			for (LocalDateTime t: from) {
+				sink += recursive.callsMade(t, t.plusMinutes(1)).size();
+			}
+			print(report, "recursive", insertTime, fullTime, System.nanoTime() - time);
+			recursive = null;
+
+			time = System.nanoTime();
+			TimeAVLTree iterative = new TimeAVLTree();
+			for (CallRecord cr: views) {
+				iterative.insert(cr.getTimeStamp(), cr);
+			}
+			insertTime = System.nanoTime() - time;
+			fullTime = Long.MAX_VALUE;
+			for (int i = 0; i < TRAVERSALS; i++) {
+				time = System.nanoTime();
+				sink += iterative.callsMade(START, end).size();
+				fullTime = Math.min(fullTime, System.nanoTime() - time);
+			}
+			time = System.nanoTime();
+			for (LocalDateTime t: from) {
+				sink += iterative.callsMade(t, t.plusMinutes(1)).size();
+			}
+			print(report, "iterative", insertTime, fullTime, System.nanoTime() - time);
+			iterative = null;
+
+			RecordAVLTree<Integer> switchTree = new RecordAVLTree<Integer>();
+			for (CallRecord cr: views) {
+				switchTree.insert(cr.getDiallerSwitch(), cr);
+			}
+			time = System.nanoTime();
+			sink += switchTree.maxConnections() + switchTree.minConnections();
+			if (report) {
+				System.out.printf("RecordAVLTree max + min connections %9.1f ms (%d)%n",
+						(System.nanoTime() - time) / 1e6, sink);
+			}
+		}
+	}
+
+	private static void print(boolean report, String name, long insertTime, long fullTime, long windowTime) {
+		if (report) {
+			System.out.printf("%-10s insert %9.1f ms, whole period %7.2f ms, windows %9.1f ms (%d)%n", name,
+					insertTime / 1e6, fullTime / 1e6, windowTime / 1e6, sink);
+		}
+	}
+
+	/**
+	 * The recursive insert and callsMade of TimeAVLTree, kept here for comparison.
+	 * callsMade visits every node before the start of the period.
+	 */
+	private static class RecursiveTimeTree {
+		private Node root;
+
+		private static class Node {
+			LocalDateTime key;
+			ValueList<CallRecord> record = new ValueList<CallRecord>();
+			int height;
+			Node left;
+			Node right;
+
+			Node(LocalDateTime key, CallRecord cr) {
+				this.key = key;
+				record.add(cr);
+			}
+		}
+
+		private int height(Node tree) {
+			return tree != null ? tree.height : 0;
+		}
+
+		private Node leftLeftRotation(Node k2) {
+			Node k1 = k2.left;
+			k2.left = k1.right;
+			k1.right = k2;
+			k2.height = Math.max(height(k2.left), height(k2.right)) + 1;
+			k1.height = Math.max(height(k1.left), k2.height) + 1;
+			return k1;
+		}
+
+		private Node rightRightRotation(Node k1) {
+			Node k2 = k1.right;
+			k1.right = k2.left;
+			k2.left = k1;
+			k1.height = Math.max(height(k1.left), height(k1.right)) + 1;
+			k2.height = Math.max(height(k2.right), k1.height) + 1;
+			return k2;
+		}
+
+		private Node insert(Node tree, LocalDateTime key, CallRecord cr) {
+			if (tree == null) {
+				tree = new Node(key, cr);
+			} else {
+				int cmp = key.compareTo(tree.key);
+				if (cmp < 0) {
+					tree.left = insert(tree.left, key, cr);
+					if (height(tree.left) - height(tree.right) == 2) {
+						if (key.compareTo(tree.left.key) >= 0) {
+							tree.left = rightRightRotation(tree.left);
+						}
+						tree = leftLeftRotation(tree);
+					}
+				} else if (cmp > 0) {
+					tree.right = insert(tree.right, key, cr);
+					if (height(tree.right) - height(tree.left) == 2) {
+						if (key.compareTo(tree.right.key) <= 0) {
+							tree.right = leftLeftRotation(tree.right);
+						}
+						tree = rightRightRotation(tree);
+					}
+				} else {
+					tree.record.add(cr);
+				}
+			}
+			tree.height = Math.max(height(tree.left), height(tree.right)) + 1;
+			return tree;
+		}
+
+		void insert(LocalDateTime timeStamp, CallRecord cr) {
+			root = insert(root, timeStamp, cr);
+		}
+
+		private Node searchClosestStartTime(Node x, LocalDateTime startTime, Node closestStart) {
+			if (x == null) {
+				return closestStart;
+			}
+			int cmp = startTime.compareTo(x.key);
+			if (cmp < 0) {
+				return searchClosestStartTime(x.left, startTime, x);
+			} else if (cmp > 0) {
+				return searchClosestStartTime(x.right, startTime, closestStart);
+			}
+			return x;
+		}
+
+		private Node searchClosestEndTime(Node x, LocalDateTime endTime, Node closestEnd) {
+			if (x == null) {
+				return closestEnd;
+			}
+			int cmp = endTime.compareTo(x.key);
+			if (cmp < 0) {
+				return searchClosestEndTime(x.left, endTime, closestEnd);
+			} else if (cmp > 0) {
+				return searchClosestEndTime(x.right, endTime, x);
+			}
+			return x;
+		}
+
+		private ValueList<CallRecord> callsMade(Node tree, Node start, Node end, ValueList<CallRecord> calls) {
+			if (tree != null && start != null && end != null) {
+				callsMade(tree.left, start, end, calls);
+				if (tree.key.compareTo(start.key) >= 0 && tree.key.compareTo(end.key) <= 0) {
+					for (CallRecord c: tree.record) {
+						calls.add(c);
+					}
+				} else if (tree.key.compareTo(end.key) > 0) {
+					return calls;
+				}
+				callsMade(tree.right, start, end, calls);
+			}
+			return calls;
+		}
+
+		ValueList<CallRecord> callsMade(LocalDateTime startTime, LocalDateTime endTime) {
+			Node start = searchClosestStartTime(root, startTime, null);
+			Node end = searchClosestEndTime(root, endTime, null);
+			return callsMade(root, start, end, new ValueList<CallRecord>());
+		}
+	}
+}
@@ -1,16 +1,26 @@
 package au.edu.uq.itee.comp3506.assn2.tests;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
 
 import au.edu.uq.itee.comp3506.assn2.api.TestAPI;
+import au.edu.uq.itee.comp3506.assn2.entities.CallBatch;
 import au.edu.uq.itee.comp3506.assn2.entities.CallRecord;
+import au.edu.uq.itee.comp3506.assn2.entities.CallRecordStore;
+import au.edu.uq.itee.comp3506.assn2.entities.FaultIndex;
+import au.edu.uq.itee.comp3506.assn2.entities.LongRecordIndex;
+import au.edu.uq.itee.comp3506.assn2.entities.QueryCache;
 import au.edu.uq.itee.comp3506.assn2.entities.ReadData;
-import au.edu.uq.itee.comp3506.assn2.entities.RecordAVLTree;
 import au.edu.uq.itee.comp3506.assn2.entities.SwitchAVLTree;
-import au.edu.uq.itee.comp3506.assn2.entities.TimeAVLTree;
-import au.edu.uq.itee.comp3506.assn2.entities.ValueList;
+import au.edu.uq.itee.comp3506.assn2.entities.SwitchConnectionCounter;
+import au.edu.uq.itee.comp3506.assn2.entities.SwitchConnectionCube;
+import au.edu.uq.itee.comp3506.assn2.entities.TimeBPlusTree;
 
 /**
  * Hook class used by automated testing tool.
@@ -25,29 +35,83 @@ public final class AutoTester implements TestAPI {
 	// TODO Provide any data members required for the methods below to work correctly with your application.
 	ReadData reader;
 	SwitchAVLTree<Integer> switchesTree;
-	RecordAVLTree<Long> dialTree;
-	RecordAVLTree<Long> receiveTree;
-	RecordAVLTree<Integer> connectTree;
-	TimeAVLTree timeTree;
+	LongRecordIndex dialIndex;
+	LongRecordIndex receiveIndex;
+	SwitchConnectionCounter connectCounter;
+	SwitchConnectionCube connectCube;
+	TimeBPlusTree timeIndex;
+	FaultIndex faultIndex;
+	CallRecordStore store;
+	QueryCache cache;
+	
+	static final int CACHE_ENTRIES = 10000;
+	static final long CACHE_ELEMENTS = 1 << 22;
+	// Snapshot file to load the records from, and write after reading them, if set; e.g. data/call-records.snapshot.
+	static final String SNAPSHOT = System.getProperty("assn2.snapshot");
 
 	/**
-	 * Runtime efficiency: O(1)
+	 * Read the data files. With -Dassn2.snapshot=file the records are loaded from that snapshot instead
+	 * when it is up to date, and the snapshot is written when it is not.
+	 * 
+	 * Runtime efficiency: O(n log n)
+	 * 
+	 * @throws UncheckedIOException if the records could not be read or the snapshot could not be written.
 	 */
 	public AutoTester() {
 		// TODO Create and initialize any objects required by the methods below.
-		reader = new ReadData();
-		reader.readAllRecords();
+		this(read());
+	}
+	
+	/**
+	 * Test against records which have already been read, such as a generated data set.
+	 * 
+	 * Runtime efficiency: O(1)
+	 * 
+	 * @param reader a reader whose records have been read.
+	 */
+	public AutoTester(ReadData reader) {
+		this(reader, new QueryCache(CACHE_ENTRIES, CACHE_ELEMENTS));
+	}
+	
+	/**
+	 * Test against records which have already been read, with a cache of the given bounds.
+	 * 
+	 * Runtime efficiency: O(1)
+	 * 
+	 * @param reader a reader whose records have been read.
+	 * @param cache the cache of query results; a cache of 0 entries runs every query.
+	 */
+	public AutoTester(ReadData reader, QueryCache cache) {
+		this.reader = reader;
 		switchesTree = reader.readSwitchesRecord();
-		dialTree = reader.readDialRecord();
-		receiveTree = reader.readReceiveRecord();
-		timeTree = reader.readTimeRecord();
-		connectTree = reader.readConnectRecord();
+		dialIndex = reader.readDialRecord();
+		receiveIndex = reader.readReceiveRecord();
+		timeIndex = reader.readTimeRecord();
+		connectCube = reader.readConnectRecord();
+		connectCounter = reader.readConnectCounter();
+		faultIndex = reader.readFaultRecord();
+		store = reader.readRecordStore();
+		this.cache = cache;
+	}
+	
+	private static ReadData read() {
+		ReadData reader = new ReadData();
+		if (SNAPSHOT == null) {
+			reader.readAllRecords();
+		} else {
+			try {
+				reader.readAllRecordsCached(SNAPSHOT);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Snapshot " + SNAPSHOT + " could not be written.", e);
+			}
+		}
+		return reader;
 	}
 	
 	/**
 	 * Tests search 1 from the assignment specification.
 	 * 
-	 * Runtime efficiency: O(n)
+	 * Runtime efficiency: O(k) if cached, k the size of the result; otherwise O(n)
 	 * 
 	 * @param dialler The phone number that initiated the calls.
 	 * @return List of all the phone numbers called by dialer.
@@ -56,18 +120,13 @@ public final class AutoTester implements TestAPI {
 	@Override
 	public List<Long> called(long dialler) {
 		// TODO Auto-generated method stub
-		List<Long> result = new ArrayList<Long>();
-		ValueList<Long> value = dialTree.findReceiver(dialler);
-		for (Long l: value) {
-			result.add(l);
-		}
-		return result;
+		return cache.get(QueryCache.CALLED, dialler, QueryCache.ALL_TIME_START, QueryCache.ALL_TIME_END, () -> dialIndex.findReceiver(dialler));
 	}
 
 	/**
 	 * Tests search 1 from the assignment specification.
 	 * 
-	 * Runtime efficiency: O(n)
+	 * Runtime efficiency: O(k) if cached, k the size of the result; otherwise O(log m + r), m records of the dialler, r records in the period.
 	 * 
 	 * @param dialler The phone number that initiated the calls.
 	 * @param startTime Start of time period.
@@ -78,18 +137,15 @@ public final class AutoTester implements TestAPI {
 	@Override
 	public List<Long> called(long dialler, LocalDateTime startTime, LocalDateTime endTime) {
 		// TODO Auto-generated method stub
-		List<Long> result = new ArrayList<Long>();
-		ValueList<Long> value = dialTree.findReceiver(dialler, startTime, endTime);
-		for (Long l: value) {
-			result.add(l);
-		}
-		return result;
+		long start = CallRecordStore.toEpochMilliCeil(startTime);
+		long end = CallRecordStore.toEpochMilli(endTime);
+		return cache.get(QueryCache.CALLED, dialler, start, end, () -> dialIndex.findReceiver(dialler, start, end));
 	}
 
 	/**
 	 * Tests search 2 from the assignment specification.
 	 * 
-	 * Runtime efficiency: O(n)
+	 * Runtime efficiency: O(k) if cached, k the size of the result; otherwise O(n)
 	 * 
 	 * @param receiver The phone number that received the calls.
 	 * @return List of all the phone numbers that called the receiver.
@@ -98,18 +154,13 @@ public final class AutoTester implements TestAPI {
 	@Override
 	public List<Long> callers(long receiver) {
 		// TODO Auto-generated method stub
-		List<Long> result = new ArrayList<Long>();
-		ValueList<Long> value = receiveTree.findDialler(receiver);
-		for (Long l: value) {
-			result.add(l);
-		}
-		return result;
+		return cache.get(QueryCache.CALLERS, receiver, QueryCache.ALL_TIME_START, QueryCache.ALL_TIME_END, () -> receiveIndex.findDialler(receiver));
 	}
 
 	/**
 	 * Tests search 2 from the assignment specification.
 	 * 
-	 * Runtime efficiency: O(n)
+	 * Runtime efficiency: O(k) if cached, k the size of the result; otherwise O(log m + r), m records of the receiver, r records in the period.
 	 * 
 	 * @param receiver The phone number that received the calls.
 	 * @param startTime Start of time period.
@@ -120,18 +171,15 @@ public final class AutoTester implements TestAPI {
 	@Override
 	public List<Long> callers(long receiver, LocalDateTime startTime, LocalDateTime endTime) {
 		// TODO Auto-generated method stub
-		List<Long> result = new ArrayList<Long>();
-		ValueList<Long> value = receiveTree.findDialler(receiver, startTime, endTime);
-		for (Long l: value) {
-			result.add(l);
-		}
-		return result;
+		long start = CallRecordStore.toEpochMilliCeil(startTime);
+		long end = CallRecordStore.toEpochMilli(endTime);
+		return cache.get(QueryCache.CALLERS, receiver, start, end, () -> receiveIndex.findDialler(receiver, start, end));
 	}
 
 	/**
 	 * Tests search 3 from the assignment specification.
 	 * 
-	 * Runtime efficiency: O(n)
+	 * Runtime efficiency: O(k) if cached, k the size of the result; otherwise O(f), f faulty calls of the dialler.
 	 * 
 	 * @param dialler The phone number that initiated the calls.
 	 * @return The list of identifiers of the faulty switches or an empty list if no fault was found.
@@ -139,18 +187,14 @@ public final class AutoTester implements TestAPI {
 	@Override
 	public List<Integer> findConnectionFault(long dialler) {
 		// TODO Auto-generated method stub
-		List<Integer> result = new ArrayList<Integer>();
-		ValueList<Integer> value = dialTree.findConnectionFault(dialler);
-		for (int l: value) {
-			result.add(l);
-		}
-		return result;
+		return cache.get(QueryCache.CONNECTION_FAULT, dialler, QueryCache.ALL_TIME_START, QueryCache.ALL_TIME_END,
+				() -> faultIndex.findConnectionFault(dialler));
 	}
 
 	/**
 	 * Tests search 3 from the assignment specification.
 	 * 
-	 * Runtime efficiency: O(n)
+	 * Runtime efficiency: O(k) if cached, k the size of the result; otherwise O(log f + r), f faulty calls of the dialler, r faulty calls in the period.
 	 * 
 	 * @param dialler The phone number that initiated the calls.
 	 * @param startTime Start of time period.
@@ -161,18 +205,16 @@ public final class AutoTester implements TestAPI {
 	@Override
 	public List<Integer> findConnectionFault(long dialler, LocalDateTime startTime, LocalDateTime endTime) {
 		// TODO Auto-generated method stub
-		List<Integer> result = new ArrayList<Integer>();
-		ValueList<Integer> value = dialTree.findConnectionFault(dialler, startTime, endTime);
-		for (int l: value) {
-			result.add(l);
-		}
-		return result;
+		long start = CallRecordStore.toEpochMilliCeil(startTime);
+		long end = CallRecordStore.toEpochMilli(endTime);
+		return cache.get(QueryCache.CONNECTION_FAULT, dialler, start, end,
+				() -> faultIndex.findConnectionFault(dialler, start, end));
 	}
 
 	/**
 	 * Tests search 3 from the assignment specification.
 	 * 
-	 * Runtime efficiency: O(n)
+	 * Runtime efficiency: O(k) if cached, k the size of the result; otherwise O(f), f faulty calls to the receiver.
 	 * 
 	 * @param reciever The phone number that should have received the calls.
 	 * @return The list of identifiers of the faulty switches or an empty list if no fault was found.
@@ -180,18 +222,14 @@ public final class AutoTester implements TestAPI {
 	@Override
 	public List<Integer> findReceivingFault(long reciever) {
 		// TODO Auto-generated method stub
-		List<Integer> result = new ArrayList<Integer>();
-		ValueList<Integer> value = receiveTree.findReceivingFault(reciever);
-		for (int l: value) {
-			result.add(l);
-		}
-		return result;
+		return cache.get(QueryCache.RECEIVING_FAULT, reciever, QueryCache.ALL_TIME_START, QueryCache.ALL_TIME_END,
+				() -> faultIndex.findReceivingFault(reciever));
 	}
 
 	/**
 	 * Tests search 3 from the assignment specification.
 	 * 
-	 * Runtime efficiency: O(n)
+	 * Runtime efficiency: O(k) if cached, k the size of the result; otherwise O(log f + r), f faulty calls to the receiver, r faulty calls in the period.
 	 * 
 	 * @param reciever The phone number that should have received the calls.
 	 * @param startTime Start of time period.
@@ -202,18 +240,16 @@ public final class AutoTester implements TestAPI {
 	@Override
 	public List<Integer> findReceivingFault(long reciever, LocalDateTime startTime, LocalDateTime endTime) {
 		// TODO Auto-generated method stub
-		List<Integer> result = new ArrayList<Integer>();
-		ValueList<Integer> value = receiveTree.findReceivingFault(reciever, startTime, endTime);
-		for (int l: value) {
-			result.add(l);
-		}
-		return result;
+		long start = CallRecordStore.toEpochMilliCeil(startTime);
+		long end = CallRecordStore.toEpochMilli(endTime);
+		return cache.get(QueryCache.RECEIVING_FAULT, reciever, start, end,
+				() -> faultIndex.findReceivingFault(reciever, start, end));
 	}
 
 	/**
 	 * Tests search 4 from the assignment specification.
 	 * 
-	 * Runtime efficiency: O(n)
+	 * Runtime efficiency: O(1)
 	 * 
 	 * @return The identifier of the switch that had the most connections.
 	 *         If multiple switches have the most connections, the smallest switch identifier is returned.
@@ -221,13 +257,13 @@ public final class AutoTester implements TestAPI {
 	@Override
 	public int maxConnections() {
 		// TODO Auto-generated method stub
-		return connectTree.maxConnections();
+		return connectCounter.maxConnections();
 	}
 
 	/**
 	 * Tests search 4 from the assignment specification.
 	 * 
-	 * Runtime efficiency: O(n)
+	 * Runtime efficiency: O(1) if cached, otherwise O(s log b + e), s switches, b time buckets, e records in partly covered buckets.
 	 * 
 	 * @param startTime Start of time period.
 	 * @param endTime End of time period.
@@ -237,13 +273,15 @@ public final class AutoTester implements TestAPI {
 	@Override
 	public int maxConnections(LocalDateTime startTime, LocalDateTime endTime) {
 		// TODO Auto-generated method stub
-		return connectTree.maxConnections(startTime, endTime);
+		long start = CallRecordStore.toEpochMilliCeil(startTime);
+		long end = CallRecordStore.toEpochMilli(endTime);
+		return cache.get(QueryCache.MAX_CONNECTIONS, 0, start, end, () -> connectCube.maxConnections(start, end));
 	}
 
 	/**
 	 * Tests search 5 from the assignment specification.
 	 * 
-	 * Runtime efficiency: O(n)
+	 * Runtime efficiency: O(1)
 	 * 
 	 * @return The identifier of the switch that had the fewest connections.
 	 *         If multiple switches have the fewest connections, the smallest switch identifier is returned.
@@ -251,13 +289,13 @@ public final class AutoTester implements TestAPI {
 	@Override
 	public int minConnections() {
 		// TODO Auto-generated method stub
-		return connectTree.minConnections();
+		return connectCounter.minConnections();
 	}
 
 	/**
 	 * Tests search 5 from the assignment specification.
 	 * 
-	 * Runtime efficiency: O(n)
+	 * Runtime efficiency: O(1) if cached, otherwise O(s log b + e), s switches, b time buckets, e records in partly covered buckets.
 	 * 
 	 * @param startTime Start of time period.
 	 * @param endTime End of time period.
@@ -267,13 +305,15 @@ public final class AutoTester implements TestAPI {
 	@Override
 	public int minConnections(LocalDateTime startTime, LocalDateTime endTime) {
 		// TODO Auto-generated method stub
-		return connectTree.minConnections(startTime, endTime);
+		long start = CallRecordStore.toEpochMilliCeil(startTime);
+		long end = CallRecordStore.toEpochMilli(endTime);
+		return cache.get(QueryCache.MIN_CONNECTIONS, 0, start, end, () -> connectCube.minConnections(start, end));
 	}
 
 	/**
 	 * Tests search 6 from the assignment specification.
 	 * 
-	 * Runtime efficiency: O(n^2)
+	 * Runtime efficiency: O(k) if cached, k the size of the result; otherwise O(log n + m), m is the number of calls in the period.
 	 * 
 	 * @param startTime Start of time period.
 	 * @param endTime End of time period.
@@ -282,12 +322,206 @@ public final class AutoTester implements TestAPI {
 	@Override
 	public List<CallRecord> callsMade(LocalDateTime startTime, LocalDateTime endTime) {
 		// TODO Auto-generated method stub		
-		List<CallRecord> result = new ArrayList<CallRecord>();
-		ValueList<CallRecord> value = timeTree.callsMade(startTime, endTime);
-		for (CallRecord l: value) {
-			result.add(l);
+		long start = CallRecordStore.toEpochMilliCeil(startTime);
+		long end = CallRecordStore.toEpochMilli(endTime);
+		return cache.get(QueryCache.CALLS_MADE, 0, start, end, () -> timeIndex.callsMade(start, end));
+	}
+	
+	/**
+	 * Lazy form of search 6: the calls are found as the iterator advances.
+	 * 
+	 * Runtime efficiency: O(log n) to create, O(1) amortised for each call.
+	 * 
+	 * @param startTime Start of time period.
+	 * @param endTime End of time period.
+	 * @return Iterator over all calls made between start and end time, in time order.
+	 */
+	public Iterator<CallRecord> callsMadeIterator(LocalDateTime startTime, LocalDateTime endTime) {
+		return timeIndex.iterator(CallRecordStore.toEpochMilliCeil(startTime), CallRecordStore.toEpochMilli(endTime));
+	}
+	
+	/**
+	 * Lazy form of search 6 as a stream, which supports limit and other short circuiting operations.
+	 * 
+	 * Runtime efficiency: O(log n) to create, O(1) amortised for each call.
+	 * 
+	 * @param startTime Start of time period.
+	 * @param endTime End of time period.
+	 * @return Stream of all calls made between start and end time, in time order.
+	 */
+	public Stream<CallRecord> callsMadeStream(LocalDateTime startTime, LocalDateTime endTime) {
+		return timeIndex.stream(CallRecordStore.toEpochMilliCeil(startTime), CallRecordStore.toEpochMilli(endTime));
+	}
+	
+	/**
+	 * Find every call which failed at a switch over a specified period of time.
+	 * 
+	 * Runtime efficiency: O(k) if cached, k the size of the result; otherwise O(log f + r), f faulty calls at the switch, r faulty calls in the period.
+	 * 
+	 * @param switchID The identifier of the switch.
+	 * @param startTime Start of time period.
+	 * @param endTime End of time period.
+	 * @return List of details of the calls which failed at the switch between start and end time, in time order.
+	 */
+	public List<CallRecord> faultsAtSwitch(int switchID, LocalDateTime startTime, LocalDateTime endTime) {
+		long start = CallRecordStore.toEpochMilliCeil(startTime);
+		long end = CallRecordStore.toEpochMilli(endTime);
+		return cache.get(QueryCache.FAULTS_AT_SWITCH, switchID, start, end,
+				() -> faultIndex.findFaultsAtSwitch(switchID, start, end));
+	}
+	
+	/**
+	 * Batch form of search 1 over all time.
+	 * 
+	 * Runtime efficiency: O(k log k + m), k diallers, m records of all the diallers.
+	 * 
+	 * @param diallers The phone numbers that initiated the calls.
+	 * @return The phone numbers called by each dialler, in the order of the diallers.
+	 */
+	public CallBatch called(long[] diallers) {
+		return dialIndex.findBatch(diallers, QueryCache.ALL_TIME_START, QueryCache.ALL_TIME_END,
+				LongRecordIndex.RECEIVER, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Batch form of search 1: the diallers are looked up together in parallel, bypassing the query cache.
+	 * 
+	 * Runtime efficiency: O(k log k + k log m + r), k diallers, m records of a dialler, r records in the period.
+	 * 
+	 * @param diallers The phone numbers that initiated the calls.
+	 * @param startTime Start of time period.
+	 * @param endTime End of time period.
+	 * @return The phone numbers called by each dialler between start and end time, in the order of the diallers.
+	 */
+	public CallBatch called(long[] diallers, LocalDateTime startTime, LocalDateTime endTime) {
+		return dialIndex.findBatch(diallers, CallRecordStore.toEpochMilliCeil(startTime),
+				CallRecordStore.toEpochMilli(endTime), LongRecordIndex.RECEIVER, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Batch form of search 2 over all time.
+	 * 
+	 * Runtime efficiency: O(k log k + m), k receivers, m records of all the receivers.
+	 * 
+	 * @param receivers The phone numbers that received the calls.
+	 * @return The phone numbers that called each receiver, in the order of the receivers.
+	 */
+	public CallBatch callers(long[] receivers) {
+		return receiveIndex.findBatch(receivers, QueryCache.ALL_TIME_START, QueryCache.ALL_TIME_END,
+				LongRecordIndex.DIALLER, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Batch form of search 2: the receivers are looked up together in parallel, bypassing the query cache.
+	 * 
+	 * Runtime efficiency: O(k log k + k log m + r), k receivers, m records of a receiver, r records in the period.
+	 * 
+	 * @param receivers The phone numbers that received the calls.
+	 * @param startTime Start of time period.
+	 * @param endTime End of time period.
+	 * @return The phone numbers that called each receiver between start and end time, in the order of the receivers.
+	 */
+	public CallBatch callers(long[] receivers, LocalDateTime startTime, LocalDateTime endTime) {
+		return receiveIndex.findBatch(receivers, CallRecordStore.toEpochMilliCeil(startTime),
+				CallRecordStore.toEpochMilli(endTime), LongRecordIndex.DIALLER, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Batch form of search 3 for diallers over all time.
+	 * 
+	 * Runtime efficiency: O(k log k + f), k diallers, f faulty calls of all the diallers.
+	 * 
+	 * @param diallers The phone numbers that initiated the calls.
+	 * @return The identifiers of the faulty switches of each dialler.
+	 */
+	public CallBatch findConnectionFault(long[] diallers) {
+		return faultIndex.findConnectionFaults(diallers, QueryCache.ALL_TIME_START, QueryCache.ALL_TIME_END,
+				ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Batch form of search 3 for diallers, looked up together in parallel, bypassing the query cache.
+	 * 
+	 * Runtime efficiency: O(k log k + k log f + r), k diallers, f faulty calls of a dialler, r faulty calls in the period.
+	 * 
+	 * @param diallers The phone numbers that initiated the calls.
+	 * @param startTime Start of time period.
+	 * @param endTime End of time period.
+	 * @return The identifiers of the faulty switches of each dialler between start and end time.
+	 */
+	public CallBatch findConnectionFault(long[] diallers, LocalDateTime startTime, LocalDateTime endTime) {
+		return faultIndex.findConnectionFaults(diallers, CallRecordStore.toEpochMilliCeil(startTime),
+				CallRecordStore.toEpochMilli(endTime), ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Batch form of search 3 for receivers over all time.
+	 * 
+	 * Runtime efficiency: O(k log k + f), k receivers, f faulty calls to all the receivers.
+	 * 
+	 * @param receivers The phone numbers that should have received the calls.
+	 * @return The identifiers of the faulty switches of each receiver.
+	 */
+	public CallBatch findReceivingFault(long[] receivers) {
+		return faultIndex.findReceivingFaults(receivers, QueryCache.ALL_TIME_START, QueryCache.ALL_TIME_END,
+				ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Batch form of search 3 for receivers, looked up together in parallel, bypassing the query cache.
+	 * 
+	 * Runtime efficiency: O(k log k + k log f + r), k receivers, f faulty calls to a receiver, r faulty calls in the period.
+	 * 
+	 * @param receivers The phone numbers that should have received the calls.
+	 * @param startTime Start of time period.
+	 * @param endTime End of time period.
+	 * @return The identifiers of the faulty switches of each receiver between start and end time.
+	 */
+	public CallBatch findReceivingFault(long[] receivers, LocalDateTime startTime, LocalDateTime endTime) {
+		return faultIndex.findReceivingFaults(receivers, CallRecordStore.toEpochMilliCeil(startTime),
+				CallRecordStore.toEpochMilli(endTime), ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Append a record and drop the cached results it changes.
+	 * Records must be appended through this class, not the reader, for the cached results to stay correct.
+	 * 
+	 * Runtime efficiency: O(log n + g), g cached results of the record's numbers and switch.
+	 * 
+	 * @param cr the record to be added, which may belong to another store.
+	 * @return the record in the store.
+	 */
+	public CallRecord append(CallRecord cr) {
+		CallRecord c = reader.append(cr);
+		cache.invalidate(store, store.size() - 1);
+		return c;
+	}
+	
+	/**
+	 * Read a further file of call records, append the valid ones and drop the cached results they change.
+	 * 
+	 * Runtime efficiency: O(m (log n + g)), m lines in the file.
+	 * 
+	 * @param path the file of call records.
+	 * @return the number of valid records added.
+	 * @throws IOException if the file could not be read; no record is added.
+	 */
+	public int appendRecords(Path path) throws IOException {
+		int before = store.size();
+		int added = reader.appendRecords(path);
+		for (int id = before; id < store.size(); id++) {
+			cache.invalidate(store, id);
 		}
-		return result;
+		return added;
+	}
+	
+	/**
+	 * Runtime efficiency: O(1)
+	 * 
+	 * @return the cache of query results, which counts its hits and misses.
+	 */
+	public QueryCache readQueryCache() {
+		return cache;
 	}
 	
 	public static void main(String[] args) {